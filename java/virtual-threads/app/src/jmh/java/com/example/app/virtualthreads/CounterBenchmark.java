@@ -0,0 +1,68 @@
+package com.example.app.virtualthreads;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Counter implementations of ThreadPinningExample under contention from virtual threads.
+ *
+ * Each invocation starts a batch of virtual threads that each increment the counter once,
+ * alongside as many virtual threads that only sleep for a millisecond and need a carrier to
+ * wake up on. Every increment holds the lock through a 10ms sleep, so the increments are
+ * serialised either way; what differs is whether the holder pins its carrier while it
+ * sleeps (synchronized) or unmounts (ReentrantLock), and with it how long the sleepers wait.
+ * The carriers are limited to two so that pinning shows. The lock-free strategies do not
+ * serialise the increments at all, so they mostly measure the sleep.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "-Djdk.virtualThreadScheduler.parallelism=2"})
+public class CounterBenchmark {
+    
+    private static final int INCREMENTS = 8;
+    
+    @Param({"synchronized", "reentrantLock", "stampedLock", "semaphore", "atomicCas", "longAdder", "sharded"})
+    public String counter;
+    
+    private ThreadPinningExample.Counter instance;
+    
+    @Setup
+    public void setUp() {
+        instance = ThreadPinningExample.newCounter(counter, ThreadPinningExample.CriticalSection.DEMO);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(INCREMENTS)
+    public long contendedIncrements() {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < INCREMENTS; i++) {
+                executor.submit(instance::increment);
+                executor.submit(() -> {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+        }
+        return instance.getCount();
+    }
+}
\ No newline at end of file
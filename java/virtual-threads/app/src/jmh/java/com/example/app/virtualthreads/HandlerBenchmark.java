@@ -0,0 +1,83 @@
+package com.example.app.virtualthreads;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the HttpServerExample handlers themselves, invoked directly with a
+ * {@link StubHttpExchange}: no socket, no parsing, no filters.
+ *
+ * /api/slow and /api/user/{id}/summary are left out, since they sleep to simulate I/O and
+ * would only measure the sleep. Run with the GC profiler to see what each response
+ * allocates: gradle jmh -PjmhArgs="HandlerBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class HandlerBenchmark {
+    
+    private final StripedCounter active = new StripedCounter();
+    private final StripedCounter total = new StripedCounter();
+    private final StripedCounter fast = new StripedCounter();
+    private final HttpServerExample.HelloHandler hello = new HttpServerExample.HelloHandler(active, total, fast);
+    private final StubHttpExchange helloExchange = new StubHttpExchange("GET", "/api/hello");
+    
+    private final HttpServerExample server = new HttpServerExample();
+    private HttpServerExample.StatsHandler stats;
+    private HttpServerExample.PrometheusHandler prometheus;
+    private final StubHttpExchange statsExchange = new StubHttpExchange("GET", "/api/stats");
+    private final StubHttpExchange metricsExchange = new StubHttpExchange("GET", "/metrics");
+    
+    /**
+     * Fills the server's histograms as a run of traffic would, so that the stats and
+     * Prometheus output has every line it would have in production.
+     */
+    @Setup
+    public void setUp() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (String path : new String[] {"/api/hello", "/api/slow", "/api/user/"}) {
+            LatencyMetrics.Endpoint endpoint = server.latencyMetrics().endpoint(path);
+            for (int i = 0; i < 10_000; i++) {
+                endpoint.record(random.nextInt(100) == 0 ? 503 : 200, random.nextLong(100_000, 50_000_000));
+            }
+        }
+        stats = server.new StatsHandler();
+        prometheus = server.new PrometheusHandler();
+    }
+    
+    @Benchmark
+    public long hello() throws IOException {
+        helloExchange.reset();
+        hello.handle(helloExchange);
+        return helloExchange.checksum();
+    }
+    
+    @Benchmark
+    public long stats() throws IOException {
+        statsExchange.reset();
+        stats.handle(statsExchange);
+        return statsExchange.checksum();
+    }
+    
+    @Benchmark
+    public long prometheus() throws IOException {
+        metricsExchange.reset();
+        prometheus.handle(metricsExchange);
+        return metricsExchange.checksum();
+    }
+}
\ No newline at end of file
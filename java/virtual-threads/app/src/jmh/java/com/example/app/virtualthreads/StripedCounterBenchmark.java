@@ -0,0 +1,111 @@
+package com.example.app.virtualthreads;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the request-path counter updates of HttpServerExample on shared AtomicIntegers
+ * against StripedCounters.
+ *
+ * Each operation does what one /api/hello request does: increment active, read it for the
+ * response body, increment total and fast, then decrement active. The read is a plain load
+ * for the AtomicInteger but adds up every cell for the StripedCounter, so
+ * stripedCounterWithoutSum measures the same updates without it and shows what the read
+ * costs. Run {@link #main} to sweep the thread count from 1 to 64.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class StripedCounterBenchmark {
+    
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+    
+    private final AtomicInteger atomicActive = new AtomicInteger();
+    private final AtomicInteger atomicTotal = new AtomicInteger();
+    private final AtomicInteger atomicFast = new AtomicInteger();
+    
+    private final StripedCounter stripedActive = new StripedCounter();
+    private final StripedCounter stripedTotal = new StripedCounter();
+    private final StripedCounter stripedFast = new StripedCounter();
+    
+    @Benchmark
+    public long atomicInteger() {
+        long active = atomicActive.incrementAndGet();
+        atomicTotal.incrementAndGet();
+        atomicFast.incrementAndGet();
+        atomicActive.decrementAndGet();
+        return active;
+    }
+    
+    @Benchmark
+    public long stripedCounter() {
+        stripedActive.increment();
+        long active = stripedActive.sum();
+        stripedTotal.increment();
+        stripedFast.increment();
+        stripedActive.decrement();
+        return active;
+    }
+    
+    @Benchmark
+    public void stripedCounterWithoutSum() {
+        stripedActive.increment();
+        stripedTotal.increment();
+        stripedFast.increment();
+        stripedActive.decrement();
+    }
+    
+    /**
+     * Runs the benchmarks at 1..64 threads and prints the throughput side by side, with the
+     * share of the StripedCounter's time spent in sum().
+     */
+    public static void main(String[] args) throws RunnerException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%n%8s %20s %20s %10s %20s %10s%n", "threads", "AtomicInteger ops/us",
+                "StripedCounter ops/us", "ratio", "without sum() ops/us", "sum() cost"));
+        
+        for (int threads : THREAD_COUNTS) {
+            Options options = new OptionsBuilder()
+                    .include(StripedCounterBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            Collection<RunResult> results = new Runner(options).run();
+            
+            double atomic = score(results, "atomicInteger");
+            double striped = score(results, "stripedCounter");
+            double withoutSum = score(results, "stripedCounterWithoutSum");
+            sb.append(String.format("%8d %20.2f %20.2f %9.2fx %20.2f %9.0f%%%n", threads, atomic, striped,
+                    striped / atomic, withoutSum, 100 * (1 - striped / withoutSum)));
+        }
+        
+        System.out.println(sb);
+    }
+    
+    private static double score(Collection<RunResult> results, String benchmark) {
+        for (RunResult result : results) {
+            if (result.getParams().getBenchmark().endsWith("." + benchmark)) {
+                return result.getPrimaryResult().getScore();
+            }
+        }
+        return Double.NaN;
+    }
+}
\ No newline at end of file
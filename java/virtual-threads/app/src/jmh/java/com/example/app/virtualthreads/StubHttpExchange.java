@@ -0,0 +1,136 @@
+package com.example.app.virtualthreads;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An HttpExchange without a connection, so that handlers can be benchmarked on their own.
+ *
+ * The response body goes to a stream that only counts and touches the bytes. One stub is
+ * reused across invocations; {@link #reset} clears what the previous response left.
+ */
+final class StubHttpExchange extends HttpExchange {
+    
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("localhost", 8080);
+    
+    private final URI uri;
+    private final String method;
+    private final Headers requestHeaders = new Headers();
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final ResponseTemplateBenchmark.CountingOutputStream body =
+            new ResponseTemplateBenchmark.CountingOutputStream();
+    private int responseCode = -1;
+    
+    StubHttpExchange(String method, String path) {
+        this.method = method;
+        this.uri = URI.create(path);
+    }
+    
+    void reset() {
+        responseHeaders.clear();
+        attributes.clear();
+        responseCode = -1;
+    }
+    
+    /**
+     * A value that depends on every response so far, for the benchmark to return.
+     */
+    long checksum() {
+        return body.count + responseCode;
+    }
+    
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+    
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+    
+    @Override
+    public URI getRequestURI() {
+        return uri;
+    }
+    
+    @Override
+    public String getRequestMethod() {
+        return method;
+    }
+    
+    @Override
+    public HttpContext getHttpContext() {
+        return null;
+    }
+    
+    @Override
+    public void close() {
+    }
+    
+    @Override
+    public InputStream getRequestBody() {
+        return new ByteArrayInputStream(new byte[0]);
+    }
+    
+    @Override
+    public OutputStream getResponseBody() {
+        return body;
+    }
+    
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) {
+        responseCode = rCode;
+    }
+    
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return ADDRESS;
+    }
+    
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+    
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return ADDRESS;
+    }
+    
+    @Override
+    public String getProtocol() {
+        return "HTTP/1.1";
+    }
+    
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+    
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+    
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        throw new UnsupportedOperationException();
+    }
+    
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+}
\ No newline at end of file
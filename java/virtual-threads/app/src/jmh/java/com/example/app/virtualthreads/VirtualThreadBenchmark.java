@@ -0,0 +1,178 @@
+package com.example.app.virtualthreads;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cost of the virtual-thread primitives the examples are built on: starting and joining a
+ * thread, submitting tasks to an executor, and handing control from one thread to another
+ * with park/unpark.
+ *
+ * The batch benchmarks report the time per task. Compare the virtual and platform variants
+ * of each, e.g. gradle jmh -PjmhArgs="VirtualThreadBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class VirtualThreadBenchmark {
+    
+    private static final int BATCH = 1000;
+    private static final int ROUND_TRIPS = 1000;
+    
+    private final LongAdder work = new LongAdder();
+    private final Runnable task = work::increment;
+    private ExecutorService platformPool;
+    private PingPong pingPong;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        platformPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        pingPong = new PingPong(Thread.currentThread());
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        platformPool.close();
+        pingPong.stop();
+    }
+    
+    @Benchmark
+    public long startJoinVirtual() throws InterruptedException {
+        Thread thread = Thread.ofVirtual().start(task);
+        thread.join();
+        return work.sum();
+    }
+    
+    @Benchmark
+    public long startJoinPlatform() throws InterruptedException {
+        Thread thread = Thread.ofPlatform().start(task);
+        thread.join();
+        return work.sum();
+    }
+    
+    /**
+     * Submits a batch to a new virtual-thread-per-task executor and waits for it by closing
+     * the executor, as the examples do.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long submitVirtualPerTask() {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < BATCH; i++) {
+                executor.submit(task);
+            }
+        }
+        return work.sum();
+    }
+    
+    /**
+     * Submits a batch to a long-lived pool of one platform thread per core and waits for
+     * every task.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long submitPlatformPool() throws ExecutionException, InterruptedException {
+        List<Future<?>> futures = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            futures.add(platformPool.submit(task));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return work.sum();
+    }
+    
+    /**
+     * One unpark of a parked virtual thread and the unpark back: the benchmark thread (a
+     * platform thread) wakes the partner and parks until the partner wakes it.
+     */
+    @Benchmark
+    public long parkUnparkRoundTrip() {
+        return pingPong.roundTrip();
+    }
+    
+    /**
+     * Round trips between two virtual threads, including starting them once per batch.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROUND_TRIPS)
+    public long parkUnparkBetweenVirtualThreads() throws InterruptedException {
+        long[] result = new long[1];
+        Thread driver = Thread.ofVirtual().unstarted(() -> {
+            PingPong partner = new PingPong(Thread.currentThread());
+            for (int i = 0; i < ROUND_TRIPS; i++) {
+                result[0] += partner.roundTrip();
+            }
+            partner.stop();
+        });
+        driver.start();
+        driver.join();
+        return result[0];
+    }
+    
+    /**
+     * A virtual thread that parks until its turn comes, then hands the turn back and unparks
+     * the caller.
+     */
+    static final class PingPong {
+        private final Thread caller;
+        private final Thread partner;
+        private volatile boolean partnersTurn;
+        private volatile boolean stopped;
+        private long trips;
+        
+        PingPong(Thread caller) {
+            this.caller = caller;
+            this.partner = Thread.ofVirtual().start(this::serve);
+        }
+        
+        private void serve() {
+            while (!stopped) {
+                if (partnersTurn) {
+                    partnersTurn = false;
+                    LockSupport.unpark(caller);
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        }
+        
+        long roundTrip() {
+            partnersTurn = true;
+            LockSupport.unpark(partner);
+            while (partnersTurn) {
+                LockSupport.park(this);
+            }
+            return ++trips;
+        }
+        
+        void stop() {
+            stopped = true;
+            LockSupport.unpark(partner);
+        }
+    }
+}
\ No newline at end of file
@@ -1,7 +1,10 @@
 package com.example.app;
 
 import com.example.app.virtualthreads.BasicVirtualThreadExample;
+import com.example.app.virtualthreads.BenchmarkComparison;
+import com.example.app.virtualthreads.ContentionMatrix;
 import com.example.app.virtualthreads.HttpServerExample;
+import com.example.app.virtualthreads.ScenarioRunner;
 import com.example.app.virtualthreads.ThreadPinningExample;
 import com.example.app.virtualthreads.HttpLoadTester;
 import com.example.app.virtualthreads.DatabaseOperationsExample;
@@ -9,6 +12,8 @@ import com.example.app.virtualthreads.DatabaseOperationsExample;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Scanner;
 
 /**
@@ -26,7 +31,7 @@ public class Application {
         
         // Check if any args are provided to run a specific example
         if (args.length > 0) {
-            runExample(args[0]);
+            runExample(args[0], Arrays.copyOfRange(args, 1, args.length));
             return;
         }
         
@@ -99,9 +104,10 @@ public class Application {
     }
     
     /**
-     * Run a specific example based on a command line argument.
+     * Run a specific example based on a command line argument; further arguments go to the
+     * load tester.
      */
-    private static void runExample(String arg) {
+    private static void runExample(String arg, String[] rest) {
         switch (arg) {
             case "basic":
             case "1":
@@ -117,12 +123,46 @@ public class Application {
                 break;
             case "loadtest":
             case "4":
-                runLoadTest();
+                if (rest.length > 0) {
+                    HttpLoadTester.main(rest);
+                } else {
+                    runLoadTest();
+                }
                 break;
             case "database":
             case "5":
                 DatabaseOperationsExample.runExample();
                 break;
+            case "fanout":
+                DatabaseOperationsExample.runFanOutBenchmark();
+                break;
+            case "compare":
+                try {
+                    // A non-zero exit status lets a build fail on a regression
+                    if (BenchmarkComparison.run(rest) > 0) {
+                        System.exit(1);
+                    }
+                } catch (IOException e) {
+                    logger.error("Could not read benchmark results", e);
+                    System.exit(2);
+                }
+                break;
+            case "contention":
+                ContentionMatrix.main(rest);
+                break;
+            case "scenarios":
+                try {
+                    // Each scenario in a JVM of its own, so scheduler flags take effect
+                    if (ScenarioRunner.run(Application.class, rest) > 0) {
+                        System.exit(1);
+                    }
+                } catch (IOException e) {
+                    logger.error("Could not run scenarios", e);
+                    System.exit(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                break;
             case "all":
                 logger.info("Running all examples");
                 BasicVirtualThreadExample.runAllExamples();
@@ -0,0 +1,197 @@
+package com.example.app.virtualthreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Filter that bounds the number of in-flight exchanges of a context with an adaptive limit,
+ * rejecting excess requests immediately with 503 instead of parking yet another virtual thread.
+ *
+ * The limit follows a gradient algorithm (as in Netflix's concurrency-limits "Gradient2"):
+ * every sample window it compares the window's average RTT with a slowly moving long-term
+ * RTT. While RTT stays near the baseline the gradient is 1 and the limit grows by a queue
+ * allowance of sqrt(limit); when RTT inflates (requests are queueing somewhere) the gradient
+ * drops below 1 and the limit shrinks proportionally, down to at most half per window.
+ *
+ * Admission is a CAS on the in-flight counter. RTT samples are accumulated lock-free and
+ * folded into the limit by whichever request closes the window, under a tryLock so request
+ * threads never wait for each other.
+ */
+public class AdaptiveConcurrencyLimitFilter extends Filter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimitFilter.class);
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final int MIN_WINDOW_SAMPLES = 10;
+    
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final double smoothing;
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder windowRttSum = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final LongAccumulator peakInFlight = new LongAccumulator(Math::max, 0);
+    private final ReentrantLock updateLock = new ReentrantLock();
+    private volatile double limit;
+    private volatile long windowStartNanos = System.nanoTime();
+    private double longTermRttNanos;
+    
+    /**
+     * Creates a limiter with a 2x RTT tolerance and 0.2 smoothing.
+     */
+    public AdaptiveConcurrencyLimitFilter(String name, int initialLimit, int minLimit, int maxLimit) {
+        this(name, initialLimit, minLimit, maxLimit, 2.0, 0.2);
+    }
+    
+    /**
+     * Creates a limiter.
+     *
+     * @param rttTolerance how much the short-term RTT may exceed the long-term RTT before the
+     *                     limit starts shrinking
+     * @param smoothing    weight (0-1] of each new limit estimate against the current limit
+     */
+    public AdaptiveConcurrencyLimitFilter(String name, int initialLimit, int minLimit, int maxLimit,
+            double rttTolerance, double smoothing) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Require 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        if (rttTolerance < 1.0 || smoothing <= 0.0 || smoothing > 1.0) {
+            throw new IllegalArgumentException("Require rttTolerance >= 1 and 0 < smoothing <= 1");
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.smoothing = smoothing;
+        this.limit = initialLimit;
+    }
+    
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if (!tryAcquire()) {
+            rejected.increment();
+            exchange.getResponseHeaders().add("Retry-After", "1");
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            inFlight.decrementAndGet();
+            onSample(System.nanoTime() - start);
+        }
+    }
+    
+    private boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        peakInFlight.accumulate(current + 1);
+        return true;
+    }
+    
+    private void onSample(long rttNanos) {
+        windowRttSum.add(rttNanos);
+        windowSamples.increment();
+        
+        long now = System.nanoTime();
+        if (now - windowStartNanos < WINDOW_NANOS || windowSamples.sum() < MIN_WINDOW_SAMPLES) {
+            return;
+        }
+        if (!updateLock.tryLock()) {
+            return;
+        }
+        try {
+            long samples = windowSamples.sumThenReset();
+            long rttSum = windowRttSum.sumThenReset();
+            windowStartNanos = now;
+            if (samples == 0) {
+                return;
+            }
+            updateLimit((double) rttSum / samples);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+    
+    /**
+     * Folds one window's average RTT into the limit; called under the update lock.
+     */
+    private void updateLimit(double shortRttNanos) {
+        if (longTermRttNanos == 0) {
+            longTermRttNanos = shortRttNanos;
+        } else {
+            // Exponential average over roughly 100 windows
+            longTermRttNanos = longTermRttNanos * 0.99 + shortRttNanos * 0.01;
+        }
+        // Once RTT has fallen well below the baseline (a long overload inflated it), pull the
+        // baseline down faster than the average would, so the limit can grow again
+        if (longTermRttNanos / shortRttNanos > 2) {
+            longTermRttNanos *= 0.95;
+        }
+        
+        double current = limit;
+        double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * longTermRttNanos / shortRttNanos));
+        if (gradient >= 1.0 && inFlight.get() < current / 2) {
+            // Demand is well below the limit; growing it would only let a later burst through
+            return;
+        }
+        double queueSize = Math.sqrt(current);
+        double estimate = current * gradient + queueSize;
+        double next = current * (1 - smoothing) + estimate * smoothing;
+        next = Math.max(minLimit, Math.min(maxLimit, next));
+        
+        if ((int) next != (int) current) {
+            logger.debug("{} limit {} -> {} (rtt {}ms, baseline {}ms)", name, (int) current, (int) next,
+                    String.format("%.1f", shortRttNanos / 1e6), String.format("%.1f", longTermRttNanos / 1e6));
+        }
+        limit = next;
+    }
+    
+    public int getLimit() {
+        return (int) limit;
+    }
+    
+    public int getInFlight() {
+        return inFlight.get();
+    }
+    
+    public long getRejected() {
+        return rejected.sum();
+    }
+    
+    /**
+     * Appends a one-line summary of the limiter's state to the builder.
+     */
+    public void appendTo(StringBuilder sb) {
+        sb.append(name).append(": limit ").append(getLimit())
+          .append(", in flight ").append(getInFlight())
+          .append(", peak ").append(peakInFlight.get())
+          .append(", rejected ").append(getRejected()).append("\n");
+    }
+    
+    @Override
+    public String description() {
+        return "Adaptive concurrency limit for " + name;
+    }
+}
\ No newline at end of file
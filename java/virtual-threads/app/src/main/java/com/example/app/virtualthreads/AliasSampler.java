@@ -0,0 +1,84 @@
+package com.example.app.virtualthreads;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Samples an index with probability proportional to its weight in constant time, using
+ * Vose's alias method.
+ *
+ * The weights are split into equal-probability columns, each holding at most two indexes.
+ * A sample draws one random double, picks the column from its integer part and the index
+ * within the column from its fraction, so it costs the same for two endpoints or two
+ * thousand, and allocates nothing.
+ */
+public class AliasSampler {
+    
+    private final double[] probability;
+    private final int[] alias;
+    
+    public AliasSampler(double[] weights) {
+        int n = weights.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("At least one weight is required");
+        }
+        double sum = 0;
+        for (double weight : weights) {
+            if (!(weight >= 0) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Weights must be finite and non-negative");
+            }
+            sum += weight;
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("At least one weight must be positive");
+        }
+        
+        probability = new double[n];
+        alias = new int[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / sum;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            // The large index fills the rest of the small one's column
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // Whatever is left is 1 up to rounding error
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1;
+        }
+    }
+    
+    /**
+     * Returns an index drawn from the weights.
+     */
+    public int sample(RandomGenerator random) {
+        double u = random.nextDouble() * probability.length;
+        int column = (int) u;
+        return u - column < probability[column] ? column : alias[column];
+    }
+    
+    public int size() {
+        return probability.length;
+    }
+}
\ No newline at end of file
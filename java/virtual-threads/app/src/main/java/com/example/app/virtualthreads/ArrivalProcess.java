@@ -0,0 +1,118 @@
+package com.example.app.virtualthreads;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The send times of an open-loop run, as offsets from its start.
+ *
+ * A constant rate is the easiest to reason about but the least like real traffic, where
+ * independent clients make arrivals random (Poisson) and campaigns, retries and cron jobs
+ * make them bursty. The same average rate can queue very differently under each. An
+ * instance is stateful and used by a single generator thread.
+ */
+public interface ArrivalProcess {
+    
+    /**
+     * Offset in nanoseconds from the start of the run at which the next request is due.
+     * Offsets never decrease.
+     */
+    long nextArrivalNanos();
+    
+    /**
+     * Evenly spaced arrivals: the n-th is due at n / rate.
+     */
+    static ArrivalProcess constant(double ratePerSecond) {
+        double intervalNanos = 1e9 / positive(ratePerSecond);
+        long[] n = {0};
+        return () -> (long) (n[0]++ * intervalNanos);
+    }
+    
+    /**
+     * Poisson arrivals: exponentially distributed gaps with a mean of 1 / rate.
+     */
+    static ArrivalProcess poisson(double ratePerSecond) {
+        double meanIntervalNanos = 1e9 / positive(ratePerSecond);
+        double[] offset = {0};
+        return () -> {
+            long next = (long) offset[0];
+            offset[0] += exponential() * meanIntervalNanos;
+            return next;
+        };
+    }
+    
+    /**
+     * Poisson arrivals whose rate switches between a burst and a quiet level every period,
+     * keeping the average rate. For burstFraction of each period the rate is burstFactor
+     * times the average; the rest of the period runs at whatever rate is left over.
+     *
+     * @param burstFactor   burst rate as a multiple of the average, at least 1
+     * @param burstFraction fraction of each period spent in the burst, at most 1 / burstFactor
+     */
+    static ArrivalProcess bursty(double ratePerSecond, double burstFactor, double burstFraction, long periodNanos) {
+        positive(ratePerSecond);
+        if (burstFactor < 1 || burstFraction <= 0 || burstFraction * burstFactor > 1 || periodNanos <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Bursts need factor >= 1, 0 < fraction <= 1/factor and a positive period; got factor %s, fraction %s",
+                    burstFactor, burstFraction));
+        }
+        double quietRate = burstFraction >= 1 ? 0
+                : ratePerSecond / 1e9 * (1 - burstFraction * burstFactor) / (1 - burstFraction);
+        return new Bursty(ratePerSecond / 1e9 * burstFactor, quietRate, burstFraction * periodNanos, periodNanos);
+    }
+    
+    private static double exponential() {
+        return -Math.log(1 - ThreadLocalRandom.current().nextDouble());
+    }
+    
+    private static double positive(double ratePerSecond) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        return ratePerSecond;
+    }
+    
+    /**
+     * Piecewise-constant rate: a burst segment then a quiet segment, every period.
+     */
+    final class Bursty implements ArrivalProcess {
+        private final double burstRate;
+        private final double quietRate;
+        private final double burstNanos;
+        private final double periodNanos;
+        private double offset;
+        private double periodStart;
+        private boolean inBurst = true;
+        
+        private Bursty(double burstRate, double quietRate, double burstNanos, double periodNanos) {
+            this.burstRate = burstRate;
+            this.quietRate = quietRate;
+            this.burstNanos = burstNanos;
+            this.periodNanos = periodNanos;
+        }
+        
+        @Override
+        public long nextArrivalNanos() {
+            long next = (long) offset;
+            // Spend one unit-rate exponential across the segments, which draws the next gap
+            // of a Poisson process whose rate changes at the segment boundaries
+            double remaining = exponential();
+            while (true) {
+                double segmentEnd = periodStart + (inBurst ? burstNanos : periodNanos);
+                double rate = inBurst ? burstRate : quietRate;
+                double capacity = rate * (segmentEnd - offset);
+                if (remaining <= capacity) {
+                    offset += remaining / rate;
+                    return next;
+                }
+                remaining -= capacity;
+                offset = segmentEnd;
+                if (inBurst) {
+                    inBurst = false;
+                } else {
+                    periodStart += periodNanos;
+                    inBurst = true;
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
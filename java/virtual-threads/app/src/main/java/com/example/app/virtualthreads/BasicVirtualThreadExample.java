@@ -3,8 +3,6 @@ package com.example.app.virtualthreads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.Duration;
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -85,20 +83,30 @@ public class BasicVirtualThreadExample {
     private static void compareVirtualAndPlatformThreads() {
         logger.info("---- Comparing Virtual Threads vs Platform Threads ----");
         
-        // Run with virtual threads
-        Instant start = Instant.now();
-        runWithVirtualThreads();
-        Duration virtualThreadDuration = Duration.between(start, Instant.now());
-        
-        // Run with platform threads
-        start = Instant.now();
-        runWithPlatformThreads();
-        Duration platformThreadDuration = Duration.between(start, Instant.now());
-        
-        logger.info("Performance comparison:");
-        logger.info("  Virtual Threads: {} tasks in {}ms", NUM_TASKS, virtualThreadDuration.toMillis());
-        logger.info("  Platform Threads: {} tasks in {}ms", NUM_TASKS, platformThreadDuration.toMillis());
-        logger.info("  Speedup factor: {}x", (double) platformThreadDuration.toMillis() / virtualThreadDuration.toMillis());
+        // Alternate the variants over several warm rounds, sampling allocation, GC and carrier use alongside
+        JvmTelemetry telemetry = JvmTelemetry.start();
+        MeasurementHarness harness = MeasurementHarness.fromSystemProperties()
+                .variant("virtual", BasicVirtualThreadExample::runWithVirtualThreads)
+                .variant("platform", BasicVirtualThreadExample::runWithPlatformThreads);
+        MeasurementHarness.Result result = harness.run();
+        telemetry.close();
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append("Performance comparison, ").append(NUM_TASKS).append(" tasks per run:\n");
+        result.appendTo(sb);
+        result.appendRatio(sb, "platform", "virtual");
+        JvmTelemetry.appendTo(sb, "JVM", telemetry.samples());
+        sb.toString().lines().forEach(logger::info);
+        
+        BenchmarkReport report = new BenchmarkReport("basic-threads")
+                .parameter("tasks", NUM_TASKS)
+                .parameter("taskDurationMs", TASK_DURATION_MS)
+                .parameter("warmupIterations", harness.warmupIterations())
+                .parameter("iterations", harness.iterations())
+                .value("speedup", "x", false, result.ratio("platform", "virtual")[0]);
+        result.addTo(report, "");
+        JvmTelemetry.addTo(report, "", telemetry.samples());
+        report.write();
     }
     
     /**
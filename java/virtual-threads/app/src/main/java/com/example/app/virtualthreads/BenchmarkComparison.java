@@ -0,0 +1,270 @@
+package com.example.app.virtualthreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compares a run against a stored baseline, metric by metric, and flags regressions.
+ *
+ * A difference counts only if it is both statistically significant and large enough to
+ * matter. Metrics with a spread (several samples, or the per-request latencies behind a
+ * mean) are tested with Welch's t-test, which does not assume equal variances, and must
+ * have p below alpha and a relative change of at least minChange. Single values (a p99, a
+ * throughput) cannot be tested for significance and must change by at least threshold.
+ */
+public class BenchmarkComparison {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BenchmarkComparison.class);
+    
+    public enum Verdict { REGRESSION, IMPROVEMENT, UNCHANGED, NEW, MISSING }
+    
+    private final double alpha;
+    private final double minChange;
+    private final double threshold;
+    
+    /**
+     * Creates a comparison.
+     *
+     * @param alpha     significance level for the t-test, e.g. 0.05
+     * @param minChange smallest relative change of a tested metric that is reported, e.g. 0.02
+     * @param threshold smallest relative change of a single value that is reported, e.g. 0.10
+     */
+    public BenchmarkComparison(double alpha, double minChange, double threshold) {
+        this.alpha = alpha;
+        this.minChange = minChange;
+        this.threshold = threshold;
+    }
+    
+    /**
+     * Compares every metric of either report.
+     */
+    public List<Row> compare(BenchmarkReport baseline, BenchmarkReport current) {
+        List<Row> rows = new ArrayList<>();
+        for (BenchmarkReport.Metric before : baseline.metrics().values()) {
+            BenchmarkReport.Metric after = current.metrics().get(before.name);
+            rows.add(after == null ? new Row(before.name, before, null, Double.NaN, Verdict.MISSING)
+                    : compare(before, after));
+        }
+        for (BenchmarkReport.Metric after : current.metrics().values()) {
+            if (!baseline.metrics().containsKey(after.name)) {
+                rows.add(new Row(after.name, null, after, Double.NaN, Verdict.NEW));
+            }
+        }
+        return rows;
+    }
+    
+    private Row compare(BenchmarkReport.Metric before, BenchmarkReport.Metric after) {
+        double change = before.mean == 0 ? (after.mean == 0 ? 0 : Double.POSITIVE_INFINITY)
+                : (after.mean - before.mean) / Math.abs(before.mean);
+        boolean worse = before.lowerIsBetter ? change > 0 : change < 0;
+        double pValue = Double.NaN;
+        boolean significant;
+        if (before.count > 1 && after.count > 1 && (before.stddev > 0 || after.stddev > 0)) {
+            pValue = welchPValue(before.mean, before.stddev, before.count, after.mean, after.stddev, after.count);
+            significant = pValue < alpha && Math.abs(change) >= minChange;
+        } else {
+            significant = Math.abs(change) >= threshold;
+        }
+        Verdict verdict = !significant ? Verdict.UNCHANGED : worse ? Verdict.REGRESSION : Verdict.IMPROVEMENT;
+        return new Row(before.name, before, after, pValue, verdict);
+    }
+    
+    /**
+     * Two-sided p-value of Welch's t-test for the difference of two means.
+     */
+    static double welchPValue(double mean1, double stddev1, long n1, double mean2, double stddev2, long n2) {
+        double v1 = stddev1 * stddev1 / n1;
+        double v2 = stddev2 * stddev2 / n2;
+        double t = (mean1 - mean2) / Math.sqrt(v1 + v2);
+        // Welch-Satterthwaite approximation of the degrees of freedom
+        double df = (v1 + v2) * (v1 + v2) / (v1 * v1 / (n1 - 1) + v2 * v2 / (n2 - 1));
+        return studentTwoSidedP(t, df);
+    }
+    
+    /**
+     * P(|T| >= |t|) for Student's t distribution with df degrees of freedom.
+     */
+    static double studentTwoSidedP(double t, double df) {
+        if (Double.isNaN(t)) {
+            return 1.0;
+        }
+        if (Double.isInfinite(t)) {
+            return 0.0;
+        }
+        return regularizedIncompleteBeta(df / (df + t * t), df / 2, 0.5);
+    }
+    
+    /**
+     * I_x(a, b), evaluated with the continued fraction of Numerical Recipes (betacf).
+     */
+    static double regularizedIncompleteBeta(double x, double a, double b) {
+        if (x <= 0) {
+            return 0.0;
+        }
+        if (x >= 1) {
+            return 1.0;
+        }
+        double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log(1 - x));
+        // The continued fraction converges quickly only below (a + 1) / (a + b + 2)
+        if (x < (a + 1) / (a + b + 2)) {
+            return front * betaContinuedFraction(x, a, b) / a;
+        }
+        return 1 - front * betaContinuedFraction(1 - x, b, a) / b;
+    }
+    
+    private static double betaContinuedFraction(double x, double a, double b) {
+        final double tiny = 1e-300;
+        double c = 1;
+        double d = 1 - (a + b) * x / (a + 1);
+        d = 1 / (Math.abs(d) < tiny ? tiny : d);
+        double h = d;
+        for (int m = 1; m <= 300; m++) {
+            int m2 = 2 * m;
+            double aa = m * (b - m) * x / ((a + m2 - 1) * (a + m2));
+            d = 1 + aa * d;
+            d = 1 / (Math.abs(d) < tiny ? tiny : d);
+            c = 1 + aa / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            h *= d * c;
+            aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1));
+            d = 1 + aa * d;
+            d = 1 / (Math.abs(d) < tiny ? tiny : d);
+            c = 1 + aa / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1) < 1e-12) {
+                break;
+            }
+        }
+        return h;
+    }
+    
+    /**
+     * ln(Gamma(x)) by the Lanczos approximation (g = 7, n = 9).
+     */
+    static double logGamma(double x) {
+        if (x < 0.5) {
+            // Reflection formula
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - logGamma(1 - x);
+        }
+        double[] coefficients = {0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+                -176.61502916214059, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6,
+                1.5056327351493116e-7};
+        x -= 1;
+        double sum = coefficients[0];
+        for (int i = 1; i < coefficients.length; i++) {
+            sum += coefficients[i] / (x + i);
+        }
+        double t = x + 7.5;
+        return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+    }
+    
+    /**
+     * Appends a table of the rows, regressions first, and the environment differences.
+     */
+    public static void appendTo(StringBuilder sb, BenchmarkReport baseline, BenchmarkReport current, List<Row> rows) {
+        sb.append(String.format("%n=== %s: %s vs baseline %s ===%n", current.scenario(), current.timestamp(),
+                baseline.timestamp()));
+        appendDifferences(sb, "environment", baseline.environment(), current.environment());
+        appendDifferences(sb, "parameter", baseline.parameters(), current.parameters());
+        sb.append(String.format("%-40s %14s %14s %9s %9s  %s%n", "metric", "baseline", "current", "change",
+                "p", "verdict"));
+        for (Verdict verdict : Verdict.values()) {
+            for (Row row : rows) {
+                if (row.verdict == verdict) {
+                    row.appendTo(sb);
+                }
+            }
+        }
+    }
+    
+    private static void appendDifferences(StringBuilder sb, String kind, Map<String, String> before,
+            Map<String, String> after) {
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            String now = after.get(entry.getKey());
+            if (!Objects.equals(entry.getValue(), now) && !entry.getKey().equals("host")) {
+                sb.append(String.format("%s differs: %s was '%s', now '%s'%n", kind, entry.getKey(),
+                        entry.getValue(), now));
+            }
+        }
+    }
+    
+    /**
+     * Command line: compare &lt;baseline.json&gt; &lt;current.json&gt; [alpha=0.05]
+     * [minChange=0.02] [threshold=0.10].
+     *
+     * @return the number of regressions
+     */
+    public static int run(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: compare <baseline.json> <current.json> [alpha=0.05] "
+                    + "[minChange=0.02] [threshold=0.10]");
+        }
+        LoadOptions options = LoadOptions.parse(args, 2);
+        BenchmarkReport baseline = BenchmarkReport.read(Path.of(args[0]));
+        BenchmarkReport current = BenchmarkReport.read(Path.of(args[1]));
+        if (!baseline.scenario().equals(current.scenario())) {
+            logger.warn("Comparing different scenarios: {} and {}", baseline.scenario(), current.scenario());
+        }
+        BenchmarkComparison comparison = new BenchmarkComparison(options.getDouble("alpha", 0.05),
+                options.getDouble("minChange", 0.02), options.getDouble("threshold", 0.10));
+        List<Row> rows = comparison.compare(baseline, current);
+        
+        StringBuilder sb = new StringBuilder();
+        appendTo(sb, baseline, current, rows);
+        int regressions = (int) rows.stream().filter(row -> row.verdict == Verdict.REGRESSION).count();
+        sb.append(regressions == 0 ? "No significant regressions\n" : regressions + " significant regression(s)\n");
+        logger.info(sb.toString());
+        return regressions;
+    }
+    
+    /**
+     * The outcome for one metric.
+     */
+    public static class Row {
+        final String name;
+        final BenchmarkReport.Metric baseline;
+        final BenchmarkReport.Metric current;
+        final double pValue;
+        final Verdict verdict;
+        
+        Row(String name, BenchmarkReport.Metric baseline, BenchmarkReport.Metric current, double pValue,
+                Verdict verdict) {
+            this.name = name;
+            this.baseline = baseline;
+            this.current = current;
+            this.pValue = pValue;
+            this.verdict = verdict;
+        }
+        
+        public String name() {
+            return name;
+        }
+        
+        public Verdict verdict() {
+            return verdict;
+        }
+        
+        void appendTo(StringBuilder sb) {
+            String unit = baseline != null ? baseline.unit : current.unit;
+            String change = baseline == null || current == null || baseline.mean == 0 ? "" : String.format(Locale.ROOT,
+                    "%+.1f%%", (current.mean - baseline.mean) * 100 / Math.abs(baseline.mean));
+            sb.append(String.format(Locale.ROOT, "%-40s %14s %14s %9s %9s  %s%n", name, format(baseline, unit),
+                    format(current, unit), change, Double.isNaN(pValue) ? "" : String.format(Locale.ROOT, "%.3g", pValue),
+                    verdict));
+        }
+        
+        private static String format(BenchmarkReport.Metric metric, String unit) {
+            return metric == null ? "-" : String.format(Locale.ROOT, "%.2f %s", metric.mean, unit);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,324 @@
+package com.example.app.virtualthreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Machine-readable result of one scenario run: named metrics plus the environment they were
+ * measured in, written as a JSON file so runs can be tracked across builds and compared
+ * with {@link BenchmarkComparison}.
+ *
+ * A metric keeps its samples (one per repetition) or, for latencies, the count, mean and
+ * standard deviation of every recorded request, which is what a significance test needs.
+ * Files go to the directory named by the bench.results.dir system property (default
+ * build/bench-results), as &lt;scenario&gt;-&lt;UTC timestamp&gt;.json.
+ */
+public class BenchmarkReport {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BenchmarkReport.class);
+    public static final String RESULTS_DIR_PROPERTY = "bench.results.dir";
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")
+            .withZone(ZoneOffset.UTC);
+    
+    private final String scenario;
+    private final Instant timestamp;
+    private final Map<String, String> environment;
+    private final Map<String, String> parameters = new LinkedHashMap<>();
+    private final Map<String, Metric> metrics = new LinkedHashMap<>();
+    
+    public BenchmarkReport(String scenario) {
+        this(scenario, Instant.now(), captureEnvironment());
+    }
+    
+    BenchmarkReport(String scenario, Instant timestamp, Map<String, String> environment) {
+        this.scenario = scenario;
+        this.timestamp = timestamp;
+        this.environment = environment;
+    }
+    
+    /**
+     * Records a setting of the run, such as a rate or a user count, so that comparisons can
+     * tell when two runs did not do the same thing.
+     */
+    public BenchmarkReport parameter(String name, Object value) {
+        parameters.put(name, String.valueOf(value));
+        return this;
+    }
+    
+    /**
+     * Records every key=value option of a load mode as a parameter.
+     */
+    public BenchmarkReport parameters(LoadOptions options) {
+        for (String argument : options.toArguments()) {
+            int eq = argument.indexOf('=');
+            parameter(argument.substring(0, eq), argument.substring(eq + 1));
+        }
+        return this;
+    }
+    
+    /**
+     * Adds a metric measured once per repetition.
+     *
+     * @param lowerIsBetter true for times and latencies, false for throughput
+     */
+    public BenchmarkReport samples(String name, String unit, boolean lowerIsBetter, double... samples) {
+        double mean = 0;
+        for (double sample : samples) {
+            mean += sample;
+        }
+        mean /= Math.max(1, samples.length);
+        double squares = 0;
+        for (double sample : samples) {
+            squares += (sample - mean) * (sample - mean);
+        }
+        double stddev = samples.length > 1 ? Math.sqrt(squares / (samples.length - 1)) : 0;
+        metrics.put(name, new Metric(name, unit, lowerIsBetter, samples.length, mean, stddev, samples.clone()));
+        return this;
+    }
+    
+    /**
+     * Adds a metric measured once.
+     */
+    public BenchmarkReport value(String name, String unit, boolean lowerIsBetter, double value) {
+        return samples(name, unit, lowerIsBetter, value);
+    }
+    
+    /**
+     * Adds the mean latency of a histogram, with its spread for significance tests, and its
+     * p50, p99, p99.9 and max as single values. Everything is in milliseconds.
+     */
+    public BenchmarkReport latency(String name, LatencyHistogram histogram) {
+        long count = histogram.totalCount();
+        if (count == 0) {
+            return this;
+        }
+        metrics.put(name + ".mean", new Metric(name + ".mean", "ms", true, count, histogram.meanNanos() / 1e6,
+                histogram.stdDevNanos() / 1e6, new double[0]));
+        value(name + ".p50", "ms", true, histogram.valueAtPercentile(50) / 1e6);
+        value(name + ".p99", "ms", true, histogram.valueAtPercentile(99) / 1e6);
+        value(name + ".p99.9", "ms", true, histogram.valueAtPercentile(99.9) / 1e6);
+        return value(name + ".max", "ms", true, histogram.maxNanos() / 1e6);
+    }
+    
+    /**
+     * Adds another report's metric under a new name, e.g. to collect the runs of a sweep.
+     */
+    public BenchmarkReport metric(String name, Metric metric) {
+        metrics.put(name, new Metric(name, metric.unit, metric.lowerIsBetter, metric.count, metric.mean,
+                metric.stddev, metric.samples));
+        return this;
+    }
+    
+    public String scenario() {
+        return scenario;
+    }
+    
+    public Instant timestamp() {
+        return timestamp;
+    }
+    
+    public Map<String, String> environment() {
+        return environment;
+    }
+    
+    public Map<String, String> parameters() {
+        return parameters;
+    }
+    
+    public Map<String, Metric> metrics() {
+        return metrics;
+    }
+    
+    /**
+     * Writes the report to the results directory and logs where.
+     *
+     * @return the file, or null if it could not be written (logged, not thrown, so that a
+     *         read-only directory does not fail the scenario)
+     */
+    public Path write() {
+        Path file = resultsFile(scenario, timestamp, ".json");
+        try {
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, toJson(), StandardCharsets.UTF_8);
+            logger.info("Wrote {} results to {}", scenario, file.toAbsolutePath());
+            return file;
+        } catch (IOException e) {
+            logger.warn("Could not write {} results to {}: {}", scenario, file, e.toString());
+            return null;
+        }
+    }
+    
+    /**
+     * The file in the results directory for output of the named scenario started at the
+     * given time.
+     */
+    static Path resultsFile(String name, Instant timestamp, String extension) {
+        Path dir = Path.of(System.getProperty(RESULTS_DIR_PROPERTY, "build/bench-results"));
+        return dir.resolve(name + "-" + FILE_TIMESTAMP.format(timestamp) + extension);
+    }
+    
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\n  \"scenario\": ");
+        Json.quote(sb, scenario).append(",\n  \"timestamp\": ");
+        Json.quote(sb, timestamp.toString()).append(",\n  \"environment\": {");
+        appendMap(sb, environment);
+        sb.append("\n  },\n  \"parameters\": {");
+        appendMap(sb, parameters);
+        sb.append("\n  },\n  \"metrics\": [");
+        String separator = "\n";
+        for (Metric metric : metrics.values()) {
+            sb.append(separator).append("    {\"name\": ");
+            Json.quote(sb, metric.name).append(", \"unit\": ");
+            Json.quote(sb, metric.unit).append(", \"better\": \"").append(metric.lowerIsBetter ? "lower" : "higher");
+            sb.append("\", \"n\": ").append(metric.count).append(", \"mean\": ");
+            Json.number(sb, metric.mean).append(", \"stddev\": ");
+            Json.number(sb, metric.stddev).append(", \"samples\": [");
+            for (int i = 0; i < metric.samples.length; i++) {
+                Json.number(sb.append(i == 0 ? "" : ", "), metric.samples[i]);
+            }
+            sb.append("]}");
+            separator = ",\n";
+        }
+        return sb.append("\n  ]\n}\n").toString();
+    }
+    
+    private static void appendMap(StringBuilder sb, Map<String, String> map) {
+        String separator = "\n";
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            Json.quote(sb.append(separator).append("    "), entry.getKey()).append(": ");
+            Json.quote(sb, entry.getValue());
+            separator = ",\n";
+        }
+    }
+    
+    public static BenchmarkReport read(Path file) throws IOException {
+        return fromJson(Files.readString(file, StandardCharsets.UTF_8));
+    }
+    
+    @SuppressWarnings("unchecked")
+    public static BenchmarkReport fromJson(String json) {
+        Map<String, Object> root = (Map<String, Object>) Json.parse(json);
+        Map<String, String> environment = new LinkedHashMap<>();
+        ((Map<String, Object>) root.getOrDefault("environment", Map.of()))
+                .forEach((key, value) -> environment.put(key, String.valueOf(value)));
+        BenchmarkReport report = new BenchmarkReport((String) root.get("scenario"),
+                Instant.parse((String) root.get("timestamp")), environment);
+        ((Map<String, Object>) root.getOrDefault("parameters", Map.of()))
+                .forEach((key, value) -> report.parameter(key, value));
+        for (Object element : (List<Object>) root.getOrDefault("metrics", List.of())) {
+            Map<String, Object> metric = (Map<String, Object>) element;
+            List<Object> samples = (List<Object>) metric.getOrDefault("samples", List.of());
+            double[] values = new double[samples.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = samples.get(i) == null ? Double.NaN : (Double) samples.get(i);
+            }
+            String name = (String) metric.get("name");
+            report.metrics.put(name, new Metric(name, (String) metric.get("unit"), "lower".equals(metric.get("better")),
+                    ((Double) metric.get("n")).longValue(), number(metric.get("mean")), number(metric.get("stddev")),
+                    values));
+        }
+        return report;
+    }
+    
+    private static double number(Object value) {
+        return value == null ? Double.NaN : (Double) value;
+    }
+    
+    /**
+     * JVM, OS and hardware facts that make two runs comparable or not.
+     */
+    static Map<String, String> captureEnvironment() {
+        Map<String, String> env = new LinkedHashMap<>();
+        for (String property : List.of("java.version", "java.vendor", "java.vm.name", "os.name", "os.arch",
+                "os.version")) {
+            env.put(property, System.getProperty(property));
+        }
+        env.put("cpus", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        env.put("maxHeapMb", String.valueOf(Runtime.getRuntime().maxMemory() / (1024 * 1024)));
+        StringJoiner collectors = new StringJoiner(",");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collectors.add(gc.getName());
+        }
+        env.put("gc", collectors.toString());
+        env.put("jvmArgs", String.join(" ", ManagementFactory.getRuntimeMXBean().getInputArguments()));
+        for (String property : List.of("jdk.virtualThreadScheduler.parallelism",
+                "jdk.virtualThreadScheduler.maxPoolSize")) {
+            if (System.getProperty(property) != null) {
+                env.put(property, System.getProperty(property));
+            }
+        }
+        try {
+            env.put("host", InetAddress.getLocalHost().getHostName());
+        } catch (IOException e) {
+            env.put("host", "unknown");
+        }
+        // Set by most CI systems, or by hand: GIT_COMMIT=$(git rev-parse HEAD)
+        if (System.getenv("GIT_COMMIT") != null) {
+            env.put("gitCommit", System.getenv("GIT_COMMIT"));
+        }
+        return env;
+    }
+    
+    /**
+     * One measured quantity.
+     */
+    public static class Metric {
+        final String name;
+        final String unit;
+        final boolean lowerIsBetter;
+        final long count;
+        final double mean;
+        final double stddev;
+        final double[] samples;
+        
+        Metric(String name, String unit, boolean lowerIsBetter, long count, double mean, double stddev,
+                double[] samples) {
+            this.name = name;
+            this.unit = unit;
+            this.lowerIsBetter = lowerIsBetter;
+            this.count = count;
+            this.mean = mean;
+            this.stddev = stddev;
+            this.samples = samples;
+        }
+        
+        public String name() {
+            return name;
+        }
+        
+        public String unit() {
+            return unit;
+        }
+        
+        public boolean lowerIsBetter() {
+            return lowerIsBetter;
+        }
+        
+        public long count() {
+            return count;
+        }
+        
+        public double mean() {
+            return mean;
+        }
+        
+        public double stddev() {
+            return stddev;
+        }
+    }
+}
\ No newline at end of file
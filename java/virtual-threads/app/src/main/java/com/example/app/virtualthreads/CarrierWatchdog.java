@@ -0,0 +1,177 @@
+package com.example.app.virtualthreads;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Notices when virtual threads cannot get a carrier thread, which otherwise stalls the
+ * application without a trace.
+ *
+ * A platform thread of its own starts a probe virtual thread every period and measures how
+ * long it takes to run; normally a few microseconds. When every carrier is pinned (a
+ * synchronized section that sleeps, a long native call) or busy with CPU-bound work, the
+ * probe waits with everything else. Once it has waited longer than the threshold, the
+ * watchdog logs a warning and writes a JSON thread dump of all threads, virtual ones
+ * included, through HotSpotDiagnosticMXBean.dumpThreads, so that the stacks of the threads
+ * holding the carriers are on record. It then waits for the probe to finish to record the
+ * full delay. At most maxDumps dumps are written, to keep a long stall from filling the disk.
+ */
+public class CarrierWatchdog implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CarrierWatchdog.class);
+    
+    private final Duration period;
+    private final Duration threshold;
+    private final int maxDumps;
+    private final LatencyHistogram delays = new LatencyHistogram();
+    private final AtomicLong stalls = new AtomicLong();
+    private final AtomicLong stalledNanos = new AtomicLong();
+    private final List<Path> dumps = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean stalled;
+    
+    /**
+     * Starts probing.
+     *
+     * @param period    time between probes
+     * @param threshold scheduling delay at which a stall is reported and threads are dumped
+     * @param maxDumps  number of thread dumps to write at most
+     */
+    public CarrierWatchdog(Duration period, Duration threshold, int maxDumps) {
+        this.period = period;
+        this.threshold = threshold;
+        this.maxDumps = maxDumps;
+        this.thread = Thread.ofPlatform().name("carrier-watchdog").daemon().start(this::probeLoop);
+    }
+    
+    /**
+     * Starts a watchdog that probes every 100ms and reports delays of 200ms or more, or the
+     * threshold given as the watchdog.threshold system property.
+     */
+    public static CarrierWatchdog start() {
+        return new CarrierWatchdog(Duration.ofMillis(100),
+                LoadOptions.parseDuration(System.getProperty("watchdog.threshold", "200ms")), 3);
+    }
+    
+    private void probeLoop() {
+        try {
+            while (running) {
+                AtomicLong ranAt = new AtomicLong();
+                long submitted = System.nanoTime();
+                Thread probe = Thread.ofVirtual().name("carrier-probe").start(() -> ranAt.set(System.nanoTime()));
+                if (!probe.join(threshold)) {
+                    stalled = true;
+                    stalls.incrementAndGet();
+                    logger.warn("No carrier thread has run a virtual thread for {} ms; all carriers are pinned or busy",
+                            threshold.toMillis());
+                    dumpThreads();
+                    probe.join();
+                }
+                long delay = ranAt.get() - submitted;
+                delays.record(delay);
+                if (stalled) {
+                    stalled = false;
+                    stalledNanos.addAndGet(delay);
+                    logger.warn("Carriers available again after {} ms", TimeUnit.NANOSECONDS.toMillis(delay));
+                }
+                Thread.sleep(period);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+    
+    private void dumpThreads() {
+        if (dumps.size() >= maxDumps) {
+            return;
+        }
+        Path file = BenchmarkReport.resultsFile("carrier-stall-threads", Instant.now(), ".json").toAbsolutePath();
+        try {
+            Files.createDirectories(file.getParent());
+            ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class)
+                    .dumpThreads(file.toString(), HotSpotDiagnosticMXBean.ThreadDumpFormat.JSON);
+            dumps.add(file);
+            logger.warn("Wrote thread dump to {}", file);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not write thread dump to {}: {}", file, e.toString());
+        }
+    }
+    
+    /**
+     * True while a probe has been waiting for a carrier for longer than the threshold.
+     */
+    public boolean isStalled() {
+        return stalled;
+    }
+    
+    public long stalls() {
+        return stalls.get();
+    }
+    
+    public List<Path> dumps() {
+        return List.copyOf(dumps);
+    }
+    
+    /**
+     * The scheduling delays of the probes so far.
+     */
+    public LatencyHistogram delays() {
+        return delays;
+    }
+    
+    /**
+     * Adds the probes' scheduling delay and the number and total length of stalls.
+     */
+    public void addTo(BenchmarkReport report, String prefix) {
+        report.latency(prefix + "watchdog.schedulingDelay", delays);
+        report.value(prefix + "watchdog.stalls", "stalls", true, stalls());
+        report.value(prefix + "watchdog.stalled", "ms", true, stalledNanos.get() / 1e6);
+    }
+    
+    public void appendTo(StringBuilder sb) {
+        sb.append(String.format("Carrier watchdog: %d probes, scheduling delay p50 %.3f ms, p99 %.3f ms, max %.1f ms; "
+                + "%d stalls over %d ms (%s)%n", delays.totalCount(), delays.valueAtPercentile(50) / 1e6,
+                delays.valueAtPercentile(99) / 1e6, delays.maxNanos() / 1e6, stalls(),
+                TimeUnit.NANOSECONDS.toMillis(stalledNanos.get()), stalled ? "stalled now" : "not stalled"));
+        for (Path dump : dumps) {
+            sb.append("  thread dump: ").append(dump).append('\n');
+        }
+    }
+    
+    public void appendPrometheus(StringBuilder sb) {
+        sb.append("# HELP carrier_watchdog_stalls_total Times a probe virtual thread waited longer than ")
+          .append(threshold.toMillis()).append("ms for a carrier.\n");
+        sb.append("# TYPE carrier_watchdog_stalls_total counter\n");
+        sb.append("carrier_watchdog_stalls_total ").append(stalls()).append('\n');
+        sb.append("# HELP carrier_watchdog_stalled 1 while a probe is waiting beyond the threshold.\n");
+        sb.append("# TYPE carrier_watchdog_stalled gauge\n");
+        sb.append("carrier_watchdog_stalled ").append(stalled ? 1 : 0).append('\n');
+        sb.append("# HELP carrier_watchdog_scheduling_delay_seconds_max Longest time a probe waited for a carrier.\n");
+        sb.append("# TYPE carrier_watchdog_scheduling_delay_seconds_max gauge\n");
+        sb.append("carrier_watchdog_scheduling_delay_seconds_max ").append(delays.maxNanos() / 1e9).append('\n');
+    }
+    
+    @Override
+    public void close() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.example.app.virtualthreads;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Launches a main class of this project in a separate JVM: the same java executable and
+ * class path as the current process, with --enable-preview, plus the given JVM options and
+ * program arguments.
+ *
+ * Useful whenever a measurement must not share GC, JIT or scheduler state with the process
+ * that takes it. Standard error goes to this process's standard error; standard output is
+ * left to the caller, which typically reads it for results.
+ */
+public class ChildJvm {
+    
+    private final String mainClass;
+    private final List<String> jvmOptions = new ArrayList<>();
+    private final List<String> arguments = new ArrayList<>();
+    
+    public ChildJvm(Class<?> mainClass) {
+        this.mainClass = mainClass.getName();
+    }
+    
+    /**
+     * Adds a JVM option such as -Xmx512m or -Djdk.virtualThreadScheduler.parallelism=2.
+     */
+    public ChildJvm jvmOption(String option) {
+        jvmOptions.add(option);
+        return this;
+    }
+    
+    /**
+     * Adds a program argument.
+     */
+    public ChildJvm argument(String argument) {
+        arguments.add(argument);
+        return this;
+    }
+    
+    /**
+     * The full command line that {@link #start} runs.
+     */
+    public List<String> command() {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("--enable-preview");
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass);
+        command.addAll(arguments);
+        return command;
+    }
+    
+    public Process start() throws IOException {
+        return new ProcessBuilder(command())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,312 @@
+package com.example.app.virtualthreads;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Reads just enough of a class file for {@link PinningRiskScanner}: the class hierarchy,
+ * and per method its flags, the calls it makes and where it enters and exits monitors,
+ * with line numbers.
+ *
+ * The format is the one of JVMS chapter 4: a constant pool, then the class, its fields and
+ * its methods, each with attributes. Of the attributes only Code and, inside it,
+ * LineNumberTable are read; everything else is skipped by its length. The bytecode is walked
+ * instruction by instruction, which needs the length of every opcode but nothing else.
+ */
+final class ClassFileReader {
+    
+    static final int ACC_SYNCHRONIZED = 0x0020;
+    static final int ACC_INTERFACE = 0x0200;
+    
+    static final int MONITORENTER = 0xc2;
+    static final int MONITOREXIT = 0xc3;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int INVOKEDYNAMIC = 0xba;
+    private static final int TABLESWITCH = 0xaa;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int WIDE = 0xc4;
+    private static final int IINC = 0x84;
+    
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    
+    /**
+     * Lengths of the fixed-length opcodes, including the opcode byte; 0 for the variable ones
+     * (tableswitch, lookupswitch, wide) and for opcodes that do not exist.
+     */
+    private static final int[] LENGTHS = new int[256];
+    
+    static {
+        Arrays.fill(LENGTHS, 0x00, 0xaa, 1); // nop .. ret: mostly no operands
+        LENGTHS[0x10] = 2; // bipush
+        LENGTHS[0x11] = 3; // sipush
+        LENGTHS[0x12] = 2; // ldc
+        Arrays.fill(LENGTHS, 0x13, 0x15, 3); // ldc_w, ldc2_w
+        Arrays.fill(LENGTHS, 0x15, 0x1a, 2); // iload .. aload
+        Arrays.fill(LENGTHS, 0x36, 0x3b, 2); // istore .. astore
+        LENGTHS[IINC] = 3;
+        Arrays.fill(LENGTHS, 0x99, 0xa9, 3); // if<cond>, if_<cmp>, goto, jsr
+        LENGTHS[0xa9] = 2; // ret
+        Arrays.fill(LENGTHS, 0xac, 0xb2, 1); // ireturn .. return
+        Arrays.fill(LENGTHS, 0xb2, 0xb9, 3); // getstatic .. invokestatic
+        Arrays.fill(LENGTHS, 0xb9, 0xbb, 5); // invokeinterface, invokedynamic
+        LENGTHS[0xbb] = 3; // new
+        LENGTHS[0xbc] = 2; // newarray
+        LENGTHS[0xbd] = 3; // anewarray
+        Arrays.fill(LENGTHS, 0xbe, 0xc0, 1); // arraylength, athrow
+        Arrays.fill(LENGTHS, 0xc0, 0xc2, 3); // checkcast, instanceof
+        Arrays.fill(LENGTHS, 0xc2, 0xc4, 1); // monitorenter, monitorexit
+        LENGTHS[0xc5] = 4; // multianewarray
+        Arrays.fill(LENGTHS, 0xc6, 0xc8, 3); // ifnull, ifnonnull
+        Arrays.fill(LENGTHS, 0xc8, 0xca, 5); // goto_w, jsr_w
+    }
+    
+    private ClassFileReader() {
+    }
+    
+    /**
+     * Parses a class file.
+     *
+     * @throws IOException if it is not a class file or is truncated
+     */
+    static ClassInfo read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+        
+        int count = in.readUnsignedShort();
+        Object[] pool = new Object[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8 -> pool[i] = in.readUTF();
+                case 3, 4 -> in.readInt(); // Integer, Float
+                case CONSTANT_LONG, CONSTANT_DOUBLE -> {
+                    in.readLong();
+                    i++; // takes two entries
+                }
+                case CONSTANT_CLASS, 8, 16, 19, 20 -> pool[i] = new int[] {tag, in.readUnsignedShort()};
+                case 9, CONSTANT_METHODREF, CONSTANT_INTERFACE_METHODREF, CONSTANT_NAME_AND_TYPE, 17, 18 ->
+                        pool[i] = new int[] {tag, in.readUnsignedShort(), in.readUnsignedShort()};
+                case 15 -> {
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                }
+                default -> throw new IOException("Unknown constant pool tag " + tag + " at " + i);
+            }
+        }
+        
+        int access = in.readUnsignedShort();
+        String name = className(pool, in.readUnsignedShort());
+        int superIndex = in.readUnsignedShort();
+        String superName = superIndex == 0 ? null : className(pool, superIndex);
+        List<String> interfaces = new ArrayList<>();
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            interfaces.add(className(pool, in.readUnsignedShort()));
+        }
+        
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            in.readUnsignedShort(); // access
+            in.readUnsignedShort(); // name
+            in.readUnsignedShort(); // descriptor
+            skipAttributes(in);
+        }
+        
+        List<MethodInfo> methods = new ArrayList<>();
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            int methodAccess = in.readUnsignedShort();
+            String methodName = (String) pool[in.readUnsignedShort()];
+            String descriptor = (String) pool[in.readUnsignedShort()];
+            MethodInfo method = new MethodInfo(name, methodName, descriptor, methodAccess);
+            for (int j = in.readUnsignedShort(); j > 0; j--) {
+                String attribute = (String) pool[in.readUnsignedShort()];
+                int length = in.readInt();
+                if (attribute.equals("Code")) {
+                    readCode(in, pool, method);
+                } else {
+                    in.skipNBytes(length);
+                }
+            }
+            methods.add(method);
+        }
+        return new ClassInfo(name, superName, interfaces, (access & ACC_INTERFACE) != 0, methods);
+    }
+    
+    private static void readCode(DataInputStream in, Object[] pool, MethodInfo method) throws IOException {
+        in.readUnsignedShort(); // max stack
+        in.readUnsignedShort(); // max locals
+        byte[] code = in.readNBytes(in.readInt());
+        in.skipNBytes(in.readUnsignedShort() * 8L); // exception table
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            String attribute = (String) pool[in.readUnsignedShort()];
+            int length = in.readInt();
+            if (attribute.equals("LineNumberTable")) {
+                for (int j = in.readUnsignedShort(); j > 0; j--) {
+                    method.lines.put(in.readUnsignedShort(), in.readUnsignedShort());
+                }
+            } else {
+                in.skipNBytes(length);
+            }
+        }
+        
+        int pc = 0;
+        while (pc < code.length) {
+            int opcode = code[pc] & 0xff;
+            int length = LENGTHS[opcode];
+            if (opcode >= INVOKEVIRTUAL && opcode < INVOKEDYNAMIC) {
+                int[] ref = (int[]) pool[u2(code, pc + 1)];
+                int[] nameAndType = (int[]) pool[ref[2]];
+                method.instructions.add(new Instruction(pc, opcode, className(pool, ref[1]),
+                        (String) pool[nameAndType[1]], (String) pool[nameAndType[2]]));
+            } else if (opcode == MONITORENTER || opcode == MONITOREXIT) {
+                method.instructions.add(new Instruction(pc, opcode, null, null, null));
+            } else if (opcode == TABLESWITCH) {
+                int operands = (pc + 4) & ~3;
+                int low = s4(code, operands + 4);
+                int high = s4(code, operands + 8);
+                length = operands + 12 + (high - low + 1) * 4 - pc;
+            } else if (opcode == LOOKUPSWITCH) {
+                int operands = (pc + 4) & ~3;
+                length = operands + 8 + s4(code, operands + 4) * 8 - pc;
+            } else if (opcode == WIDE) {
+                length = (code[pc + 1] & 0xff) == IINC ? 6 : 4;
+            }
+            if (length == 0) {
+                throw new IOException("Unknown opcode " + opcode + " at " + pc + " in " + method);
+            }
+            pc += length;
+        }
+    }
+    
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            in.readUnsignedShort();
+            in.skipNBytes(in.readInt() & 0xffffffffL);
+        }
+    }
+    
+    private static String className(Object[] pool, int index) {
+        return (String) pool[((int[]) pool[index])[1]];
+    }
+    
+    private static int u2(byte[] code, int at) {
+        return ((code[at] & 0xff) << 8) | (code[at + 1] & 0xff);
+    }
+    
+    private static int s4(byte[] code, int at) {
+        return (code[at] << 24) | ((code[at + 1] & 0xff) << 16) | ((code[at + 2] & 0xff) << 8) | (code[at + 3] & 0xff);
+    }
+    
+    static ClassInfo read(byte[] bytes) throws IOException {
+        return read(new ByteArrayInputStream(bytes));
+    }
+    
+    /**
+     * A class or interface, by its internal name (e.g. java/lang/Thread).
+     */
+    static final class ClassInfo {
+        final String name;
+        final String superName;
+        final List<String> interfaces;
+        final boolean isInterface;
+        final List<MethodInfo> methods;
+        
+        ClassInfo(String name, String superName, List<String> interfaces, boolean isInterface,
+                List<MethodInfo> methods) {
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.isInterface = isInterface;
+            this.methods = methods;
+        }
+    }
+    
+    /**
+     * A method with the instructions the scanner cares about, in bytecode order.
+     */
+    static final class MethodInfo {
+        final String owner;
+        final String name;
+        final String descriptor;
+        final int access;
+        final List<Instruction> instructions = new ArrayList<>();
+        /** Bytecode offset to source line, from the LineNumberTable. */
+        final TreeMap<Integer, Integer> lines = new TreeMap<>();
+        
+        MethodInfo(String owner, String name, String descriptor, int access) {
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.access = access;
+        }
+        
+        boolean isSynchronized() {
+            return (access & ACC_SYNCHRONIZED) != 0;
+        }
+        
+        /**
+         * The source line of a bytecode offset, or 0 if the class has no line numbers.
+         */
+        int line(int pc) {
+            var entry = lines.floorEntry(pc);
+            return entry == null ? 0 : entry.getValue();
+        }
+        
+        String key() {
+            return owner + "." + name + descriptor;
+        }
+        
+        @Override
+        public String toString() {
+            return owner.replace('/', '.') + "." + name;
+        }
+    }
+    
+    /**
+     * A method call (invokevirtual, invokespecial, invokestatic, invokeinterface) or a
+     * monitorenter or monitorexit, which have no owner.
+     */
+    static final class Instruction {
+        final int pc;
+        final int opcode;
+        final String owner;
+        final String name;
+        final String descriptor;
+        
+        Instruction(int pc, int opcode, String owner, String name, String descriptor) {
+            this.pc = pc;
+            this.opcode = opcode;
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+        
+        boolean isCall() {
+            return owner != null;
+        }
+        
+        boolean isVirtual() {
+            return opcode == INVOKEVIRTUAL || opcode == INVOKEINTERFACE;
+        }
+        
+        @Override
+        public String toString() {
+            return owner.replace('/', '.') + "." + name + descriptor;
+        }
+    }
+}
\ No newline at end of file
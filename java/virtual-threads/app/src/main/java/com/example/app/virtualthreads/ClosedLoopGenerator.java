@@ -0,0 +1,152 @@
+package com.example.app.virtualthreads;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load generator: exactly N users, each on its own thread, send a request, wait
+ * for the response, optionally think, and repeat. Each request is drawn from a
+ * {@link WorkloadProfile}, and the think time after it is the request's own if the profile
+ * sets one, otherwise the generator's.
+ *
+ * Concurrency is bounded by the user count, so runs with virtual-thread and platform-thread
+ * users are directly comparable, and sweeping the user count traces the throughput/latency
+ * curve of the server (Little's law: throughput = users / (response time + think time)).
+ * Unlike {@link OpenLoopGenerator}, the offered load drops when the server slows down, so
+ * latencies here describe a server that is never pushed past what the users can keep busy.
+ *
+ * Latency is recorded for requests sent within the measured period, throughput counts the
+ * responses that arrived within it.
+ *
+ * A user waits at most the request timeout (plus a second's grace for the client's own
+ * timeout to fire first) for a response, so a client that never completes a request counts
+ * it as an error instead of stalling the user.
+ */
+public class ClosedLoopGenerator {
+    
+    private static final long TIMEOUT_GRACE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    
+    private final LoadClient client;
+    private final int users;
+    private final Duration duration;
+    private final Duration warmup;
+    private final Duration thinkTime;
+    private final ThreadFactory threadFactory;
+    private final String threadType;
+    private final long responseWaitNanos;
+    private IntervalRecorder intervals;
+    
+    /**
+     * Creates a generator.
+     *
+     * @param threadFactory creates the user threads
+     * @param threadType    label of the thread kind in the report, e.g. "virtual"
+     * @param timeout       the client's request timeout
+     */
+    public ClosedLoopGenerator(LoadClient client, int users, Duration duration, Duration warmup, Duration thinkTime,
+            ThreadFactory threadFactory, String threadType, Duration timeout) {
+        if (users < 1) {
+            throw new IllegalArgumentException("users must be positive");
+        }
+        this.client = client;
+        this.users = users;
+        this.duration = duration;
+        this.warmup = warmup;
+        this.thinkTime = thinkTime;
+        this.threadFactory = threadFactory;
+        this.threadType = threadType;
+        this.responseWaitNanos = timeout.toNanos() + TIMEOUT_GRACE_NANOS;
+    }
+    
+    /**
+     * Also records every request, warmup included, into the recorder, for a time series of
+     * the run (see {@link IntervalReporter}).
+     */
+    public void setIntervalRecorder(IntervalRecorder intervals) {
+        this.intervals = intervals;
+    }
+    
+    /**
+     * Runs all users through the warmup and the measured period and waits for them to stop.
+     *
+     * @param workload the request mix; its arrival process does not apply to a closed loop
+     */
+    public LoadResult run(WorkloadProfile workload) throws InterruptedException {
+        LoadResult result = new LoadResult(String.format("closed loop %d %s users (%s client)",
+                users, threadType, client.name()));
+        LongAdder completed = new LongAdder();
+        CountDownLatch ready = new CountDownLatch(users);
+        CountDownLatch go = new CountDownLatch(1);
+        long[] window = new long[2];
+        
+        List<Thread> threads = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            Thread thread = threadFactory.newThread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                    runUser(result, workload, completed, window[0], window[1]);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        
+        ready.await();
+        window[0] = System.nanoTime() + warmup.toNanos();
+        window[1] = window[0] + duration.toNanos();
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        result.setElapsedNanos(duration.toNanos());
+        result.setCompletedInPeriod(completed.sum());
+        return result;
+    }
+    
+    private void runUser(LoadResult result, WorkloadProfile workload, LongAdder completed, long measureStart,
+            long end) throws InterruptedException {
+        while (true) {
+            long sent = System.nanoTime();
+            if (sent >= end) {
+                return;
+            }
+            LoadRequest request = workload.next();
+            boolean success;
+            CompletableFuture<Integer> response = client.send(request);
+            try {
+                success = response.get(responseWaitNanos, TimeUnit.NANOSECONDS) == 200;
+            } catch (ExecutionException e) {
+                success = false;
+            } catch (TimeoutException e) {
+                response.cancel(false);
+                success = false;
+            }
+            long done = System.nanoTime();
+            if (intervals != null) {
+                intervals.record(done - sent, success);
+            }
+            if (done >= measureStart && done <= end) {
+                completed.increment();
+            }
+            if (sent >= measureStart) {
+                // Closed loop: a request is sent the moment it is due, so intended == sent
+                result.endpoint(request.name()).record(sent, sent, done, success);
+            }
+            long think = request.thinkNanos(thinkTime.toNanos());
+            if (think > 0) {
+                TimeUnit.NANOSECONDS.sleep(Math.min(think, end - System.nanoTime()));
+            }
+        }
+    }
+}
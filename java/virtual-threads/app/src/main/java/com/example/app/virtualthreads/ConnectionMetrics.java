@@ -0,0 +1,75 @@
+package com.example.app.virtualthreads;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection-level metrics for the NIO server engine.
+ *
+ * Engine-wide totals are kept in LongAdders so the selector loops never contend on them;
+ * per-connection numbers live on the connections themselves and are read when reporting.
+ */
+public class ConnectionMetrics {
+    
+    final LongAdder accepted = new LongAdder();
+    final LongAdder closed = new LongAdder();
+    final LongAdder requests = new LongAdder();
+    final LongAdder reusedRequests = new LongAdder();
+    final LongAdder pipelinedRequests = new LongAdder();
+    final LongAdder responses = new LongAdder();
+    final LongAdder flushes = new LongAdder();
+    final LongAdder bytesRead = new LongAdder();
+    final LongAdder bytesWritten = new LongAdder();
+    final LongAccumulator maxPipelineDepth = new LongAccumulator(Math::max, 0);
+    private final Set<NioConnection> openConnections = ConcurrentHashMap.newKeySet();
+    
+    void opened(NioConnection connection) {
+        accepted.increment();
+        openConnections.add(connection);
+    }
+    
+    void closed(NioConnection connection) {
+        if (openConnections.remove(connection)) {
+            closed.increment();
+        }
+    }
+    
+    /**
+     * Appends a plain-text summary, including the busiest open connections, to the builder.
+     */
+    public void appendTo(StringBuilder sb, int topConnections) {
+        long acceptedCount = accepted.sum();
+        long requestCount = requests.sum();
+        long flushCount = flushes.sum();
+        
+        sb.append("Open connections: ").append(openConnections.size()).append("\n");
+        sb.append("Accepted connections: ").append(acceptedCount).append("\n");
+        sb.append("Requests per connection: ")
+          .append(String.format("%.2f", acceptedCount == 0 ? 0.0 : (double) requestCount / acceptedCount))
+          .append("\n");
+        sb.append("Keep-alive reused requests: ").append(reusedRequests.sum()).append("\n");
+        sb.append("Pipelined requests: ").append(pipelinedRequests.sum()).append("\n");
+        sb.append("Max pipeline depth: ").append(maxPipelineDepth.get()).append("\n");
+        sb.append("Responses per flush: ")
+          .append(String.format("%.2f", flushCount == 0 ? 0.0 : (double) responses.sum() / flushCount))
+          .append("\n");
+        sb.append("Bytes read/written: ").append(bytesRead.sum()).append(" / ")
+          .append(bytesWritten.sum()).append("\n");
+        
+        List<NioConnection> busiest = openConnections.stream()
+                .sorted(Comparator.comparingLong(NioConnection::requestsServed).reversed())
+                .limit(topConnections)
+                .toList();
+        for (NioConnection connection : busiest) {
+            sb.append("  ").append(connection.remoteAddress())
+              .append(": ").append(connection.requestsServed()).append(" requests, ")
+              .append(connection.outstanding()).append(" in flight, ")
+              .append(connection.bytesRead()).append("B in, ")
+              .append(connection.bytesWritten()).append("B out\n");
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,192 @@
+package com.example.app.virtualthreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Runs every Counter strategy of {@link ThreadPinningExample} over a grid of contention
+ * settings and reports increments per second and pinned time for each cell, to help pick
+ * the primitive for a piece of hot shared state.
+ *
+ * Each task sleeps for the think time outside the counter and then increments it, a number
+ * of times. The critical section either sleeps (blocking inside the lock, which pins a
+ * synchronized holder) or spins for the same length. Pinned time comes from a
+ * {@link PinningMonitor}, flushed after every cell. The carrier count is fixed for the life
+ * of the JVM, so the parallelism axis comes from the scenario runner:
+ * scenarios contention parallelism=1,2,4.
+ *
+ * Usage: contention [counters=synchronized,reentrantLock,...] [section=0,1ms]
+ * [blocking=false,true] [tasks=10,100] [increments=10] [think=1ms]
+ */
+public class ContentionMatrix {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ContentionMatrix.class);
+    
+    private final List<String> counters;
+    private final List<Duration> sections;
+    private final List<Boolean> blocking;
+    private final List<Integer> tasks;
+    private final int increments;
+    private final Duration think;
+    
+    public ContentionMatrix(LoadOptions options) {
+        this.counters = list(options.get("counters", String.join(",", ThreadPinningExample.COUNTERS)));
+        this.sections = list(options.get("section", "0,1ms")).stream().map(LoadOptions::parseDuration).toList();
+        this.blocking = list(options.get("blocking", "false,true")).stream().map(Boolean::parseBoolean).toList();
+        this.tasks = list(options.get("tasks", "10,100")).stream().map(Integer::parseInt).toList();
+        this.increments = options.getInt("increments", 10);
+        this.think = options.getDuration("think", Duration.ofMillis(1));
+        for (String counter : counters) {
+            if (!ThreadPinningExample.COUNTERS.contains(counter)) {
+                throw new IllegalArgumentException("Unknown counter '" + counter + "', expected one of "
+                        + ThreadPinningExample.COUNTERS);
+            }
+        }
+    }
+    
+    private static List<String> list(String value) {
+        return Stream.of(value.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+    
+    /**
+     * Runs the grid and writes it as contention-matrix.
+     */
+    public List<Cell> run() {
+        int carriers = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                Runtime.getRuntime().availableProcessors());
+        logger.info("Contention matrix on {} carrier threads: {} counters x sections {} x blocking {} x tasks {}",
+                carriers, counters.size(), sections, blocking, tasks);
+        
+        // One short run of every counter, so that none of them is measured while still interpreted
+        for (String counter : counters) {
+            runCell(counter, ThreadPinningExample.CriticalSection.of(Duration.ZERO, false), 10);
+        }
+        
+        List<Cell> cells = new ArrayList<>();
+        // Every pin counts here, however short the section
+        try (PinningMonitor pinning = new PinningMonitor(Duration.ZERO, 5)) {
+            for (Duration section : sections) {
+                for (boolean block : blocking) {
+                    if (section.isZero() && block) {
+                        continue; // an empty section has nothing to block in
+                    }
+                    for (int taskCount : tasks) {
+                        for (String counter : counters) {
+                            pinning.flush();
+                            long pinnedBefore = pinning.pinnedNanos();
+                            double seconds = runCell(counter, ThreadPinningExample.CriticalSection.of(section, block),
+                                    taskCount);
+                            pinning.flush();
+                            Cell cell = new Cell(counter, section, block, taskCount,
+                                    (double) taskCount * increments / seconds, (pinning.pinnedNanos() - pinnedBefore) / 1e6);
+                            logger.info("{}", cell);
+                            cells.add(cell);
+                        }
+                    }
+                }
+            }
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-14s %8s %6s %6s %14s %12s%n", "counter", "section", "mode", "tasks", "incr/s",
+                "pinned ms"));
+        BenchmarkReport report = new BenchmarkReport("contention-matrix")
+                .parameter("carrierThreads", carriers)
+                .parameter("increments", increments)
+                .parameter("thinkMs", think.toMillis());
+        for (Cell cell : cells) {
+            cell.appendTo(sb);
+            report.value(cell.key() + ".throughput", "ops/s", false, cell.throughput());
+            report.value(cell.key() + ".pinned", "ms", true, cell.pinnedMillis());
+        }
+        sb.toString().lines().forEach(logger::info);
+        report.write();
+        return cells;
+    }
+    
+    /**
+     * Runs one cell and returns its duration in seconds.
+     */
+    private double runCell(String counterName, ThreadPinningExample.CriticalSection section, int taskCount) {
+        ThreadPinningExample.Counter counter = ThreadPinningExample.newCounter(counterName, section);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < taskCount; i++) {
+                executor.submit(() -> {
+                    for (int j = 0; j < increments; j++) {
+                        try {
+                            Thread.sleep(think);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        counter.increment();
+                    }
+                });
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (counter.getCount() != (long) taskCount * increments) {
+            logger.warn("{} counted {} of {} increments", counterName, counter.getCount(), (long) taskCount * increments);
+        }
+        return seconds;
+    }
+    
+    public static void main(String[] args) {
+        new ContentionMatrix(LoadOptions.parse(args, 0)).run();
+    }
+    
+    /**
+     * The outcome of one combination of counter, critical section and task count.
+     */
+    public static class Cell {
+        private final String counter;
+        private final Duration section;
+        private final boolean blocking;
+        private final int tasks;
+        private final double throughput;
+        private final double pinnedMillis;
+        
+        Cell(String counter, Duration section, boolean blocking, int tasks, double throughput, double pinnedMillis) {
+            this.counter = counter;
+            this.section = section;
+            this.blocking = blocking;
+            this.tasks = tasks;
+            this.throughput = throughput;
+            this.pinnedMillis = pinnedMillis;
+        }
+        
+        public double throughput() {
+            return throughput;
+        }
+        
+        public double pinnedMillis() {
+            return pinnedMillis;
+        }
+        
+        /**
+         * The metric name prefix, e.g. synchronized.1000us.block.100t.
+         */
+        String key() {
+            return counter + "." + section.toNanos() / 1000 + "us." + (blocking ? "block" : "spin") + "." + tasks + "t";
+        }
+        
+        void appendTo(StringBuilder sb) {
+            sb.append(String.format("%-14s %6dus %6s %6d %14.1f %12.1f%n", counter, section.toNanos() / 1000,
+                    blocking ? "block" : "spin", tasks, throughput, pinnedMillis));
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%s section=%dus %s tasks=%d: %.1f incr/s, %.1f ms pinned", counter,
+                    section.toNanos() / 1000, blocking ? "block" : "spin", tasks, throughput, pinnedMillis);
+        }
+    }
+}
\ No newline at end of file
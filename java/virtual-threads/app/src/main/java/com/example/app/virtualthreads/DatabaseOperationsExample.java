@@ -7,11 +7,16 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -22,6 +27,7 @@ public class DatabaseOperationsExample {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseOperationsExample.class);
     private static final int NUM_OPERATIONS = 1000;
     private static final int PLATFORM_THREAD_POOL_SIZE = 50;
+    private static final int[] FAN_OUT_CONCURRENCY = {1_000, 10_000, 100_000};
     
     // In-memory database simulation
     private static final ConcurrentHashMap<String, User> userDatabase = new ConcurrentHashMap<>();
@@ -36,22 +42,138 @@ public class DatabaseOperationsExample {
         // Initialize our simulated database with sample data
         initializeDatabase();
         
-        // Compare platform threads vs virtual threads
-        performWithPlatformThreads();
-        performWithVirtualThreads();
+        // Compare platform threads vs virtual threads, alternating them over several warm rounds
+        MeasurementHarness harness = MeasurementHarness.fromSystemProperties()
+                .variant("platform", DatabaseOperationsExample::performWithPlatformThreads)
+                .variant("virtual", DatabaseOperationsExample::performWithVirtualThreads);
+        MeasurementHarness.Result result = harness.run();
+        
+        StringBuilder sb = new StringBuilder();
+        result.appendTo(sb);
+        result.appendRatio(sb, "platform", "virtual");
+        sb.toString().lines().forEach(logger::info);
+        
+        BenchmarkReport report = new BenchmarkReport("database-operations")
+                .parameter("operations", NUM_OPERATIONS)
+                .parameter("platformPoolSize", PLATFORM_THREAD_POOL_SIZE)
+                .parameter("warmupIterations", harness.warmupIterations())
+                .parameter("iterations", harness.iterations());
+        result.addTo(report, "");
+        report.write();
         
         logger.info("=== End of Database Operations Example ===");
     }
     
     /**
-     * Initializes the simulated database with sample data.
+     * Runs the fan-out benchmark: the user and order lookups of one operation run one after
+     * the other versus forked into a StructuredTaskScope, at 1k to 100k concurrent operations.
+     */
+    public static void runFanOutBenchmark() {
+        logger.info("=== Sequential vs Structured Fan-Out Benchmark ===");
+        
+        initializeDatabase();
+        List<String> userIds = new ArrayList<>(userDatabase.keySet());
+        
+        // Warm up both paths so class loading and JIT compilation stay out of the first row
+        runFanOut(userIds, FAN_OUT_CONCURRENCY[0], false);
+        runFanOut(userIds, FAN_OUT_CONCURRENCY[0], true);
+        
+        BenchmarkReport report = new BenchmarkReport("fanout");
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%n%-12s %12s %10s %10s %10s %10s %8s%n",
+                "mode", "concurrency", "wall ms", "mean ms", "p50 ms", "p99 ms", "failed"));
+        for (int concurrency : FAN_OUT_CONCURRENCY) {
+            for (boolean forked : new boolean[] {false, true}) {
+                FanOutResult result = runFanOut(userIds, concurrency, forked);
+                LatencyHistogram latencies = result.latencies;
+                sb.append(String.format("%-12s %12d %10d %10.1f %10.1f %10.1f %8d%n",
+                        forked ? "forked" : "sequential", concurrency, result.wallMillis,
+                        latencies.meanNanos() / 1e6, latencies.valueAtPercentile(50) / 1e6,
+                        latencies.valueAtPercentile(99) / 1e6, result.failed));
+                String prefix = (forked ? "forked." : "sequential.") + concurrency + ".";
+                report.latency(prefix + "latency", latencies);
+                report.value(prefix + "wallMs", "ms", true, result.wallMillis);
+                report.value(prefix + "failed", "operations", true, result.failed);
+            }
+        }
+        logger.info("Fan-out results:{}", sb);
+        report.write();
+        
+        logger.info("=== End of Fan-Out Benchmark ===");
+    }
+    
+    /**
+     * Starts all operations at once, each on its own virtual thread, and waits for them.
+     */
+    private static FanOutResult runFanOut(List<String> userIds, int concurrency, boolean forked) {
+        LatencyHistogram latencies = new LatencyHistogram();
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.nanoTime();
+        
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                executor.submit(() -> {
+                    String userId = userIds.get(ThreadLocalRandom.current().nextInt(userIds.size()));
+                    long opStart = System.nanoTime();
+                    try {
+                        if (forked) {
+                            fetchUserSummary(userId, Instant.now().plusSeconds(30));
+                        } else {
+                            new UserSummary(readUserFromDb(userId), readOrdersFromDb(userId));
+                        }
+                        latencies.record(System.nanoTime() - opStart);
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                    }
+                });
+            }
+        }
+        
+        return new FanOutResult(latencies, failed.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+    
+    /**
+     * Loads a user and their orders concurrently, each lookup in its own forked subtask.
+     *
+     * The operation takes as long as the slower lookup rather than the sum of both. If either
+     * lookup fails, ShutdownOnFailure interrupts the other one and the failure is rethrown;
+     * the same happens when the deadline passes or the calling thread is interrupted.
+     *
+     * @throws ExecutionException   if a lookup failed; an unknown user fails with
+     *                              NoSuchElementException as the cause
+     * @throws TimeoutException     if the lookups did not finish before the deadline
+     * @throws InterruptedException if the calling thread was interrupted while waiting
+     */
+    static UserSummary fetchUserSummary(String userId, Instant deadline)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+            StructuredTaskScope.Subtask<User> user = scope.fork(() -> {
+                User found = readUserFromDb(userId);
+                if (found == null) {
+                    throw new NoSuchElementException("Unknown user " + userId);
+                }
+                return found;
+            });
+            StructuredTaskScope.Subtask<List<Order>> orders = scope.fork(() -> readOrdersFromDb(userId));
+            
+            scope.joinUntil(deadline);
+            scope.throwIfFailed();
+            return new UserSummary(user.get(), orders.get());
+        }
+    }
+    
+    /**
+     * Initializes the simulated database with sample data, once.
      */
-    private static void initializeDatabase() {
+    static synchronized void initializeDatabase() {
+        if (!userDatabase.isEmpty()) {
+            return;
+        }
         logger.info("Initializing simulated database...");
         
         // Create 100 users with 10 orders each
         for (int i = 0; i < 100; i++) {
-            String userId = "user-" + UUID.randomUUID();
+            String userId = "user-" + i;
             userDatabase.put(userId, new User(userId, "User " + i, "user" + i + "@example.com"));
             
             List<Order> userOrders = new ArrayList<>();
@@ -148,7 +270,7 @@ public class DatabaseOperationsExample {
     /**
      * Simulates reading a user from the database with network latency.
      */
-    private static User readUserFromDb(String userId) {
+    static User readUserFromDb(String userId) {
         simulateDatabaseLatency();
         return userDatabase.get(userId);
     }
@@ -156,7 +278,7 @@ public class DatabaseOperationsExample {
     /**
      * Simulates reading orders from the database with network latency.
      */
-    private static List<Order> readOrdersFromDb(String userId) {
+    static List<Order> readOrdersFromDb(String userId) {
         simulateDatabaseLatency();
         return orderDatabase.getOrDefault(userId, new ArrayList<>());
     }
@@ -182,6 +304,42 @@ public class DatabaseOperationsExample {
         }
     }
     
+    /**
+     * A user together with their orders.
+     */
+    static class UserSummary {
+        final User user;
+        final List<Order> orders;
+        
+        UserSummary(User user, List<Order> orders) {
+            this.user = user;
+            this.orders = orders;
+        }
+        
+        double orderTotal() {
+            double total = 0;
+            for (Order order : orders) {
+                total += order.amount;
+            }
+            return total;
+        }
+    }
+    
+    /**
+     * Latencies, failures and wall-clock time of one fan-out benchmark run.
+     */
+    private static class FanOutResult {
+        final LatencyHistogram latencies;
+        final int failed;
+        final long wallMillis;
+        
+        FanOutResult(LatencyHistogram latencies, int failed, long wallMillis) {
+            this.latencies = latencies;
+            this.failed = failed;
+            this.wallMillis = wallMillis;
+        }
+    }
+    
     /**
      * Simple User class for the example.
      */
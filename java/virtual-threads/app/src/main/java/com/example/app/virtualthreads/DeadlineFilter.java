@@ -0,0 +1,153 @@
+package com.example.app.virtualthreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Filter that gives every exchange a {@link RequestDeadline} and cancels the handling virtual
+ * thread once the deadline passes or the client goes away.
+ *
+ * The deadline is the context's default timeout, shortened by an X-Request-Timeout-Ms header
+ * if the client sends a smaller one. A single platform timer thread fires the deadlines;
+ * client disconnects are reported by engines that can detect them (the NIO engine) through
+ * the {@link #PEER_CLOSED_ATTRIBUTE} future. A request cancelled before it responded gets
+ * 504 on deadline, or 499 (nginx's "client closed request") when the peer is gone.
+ */
+public class DeadlineFilter extends Filter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DeadlineFilter.class);
+    
+    /**
+     * Request header carrying the client's timeout in milliseconds.
+     */
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+    
+    /**
+     * Exchange attribute holding a CompletableFuture that an engine completes when the peer
+     * closes the connection while the exchange is in flight.
+     */
+    public static final String PEER_CLOSED_ATTRIBUTE = DeadlineFilter.class.getName() + ".peerClosed";
+    
+    static final int CLIENT_CLOSED_STATUS = 499;
+    
+    private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+    
+    private final String name;
+    private final long defaultTimeoutNanos;
+    private final LongAdder deadlineExceeded = new LongAdder();
+    private final LongAdder clientClosed = new LongAdder();
+    
+    public DeadlineFilter(String name, long defaultTimeoutMillis) {
+        if (defaultTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("defaultTimeoutMillis must be positive");
+        }
+        this.name = name;
+        this.defaultTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(defaultTimeoutMillis);
+    }
+    
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                Thread.ofPlatform().name("request-deadline-timer").daemon().factory());
+        // Most requests finish well before their deadline; drop their timers from the queue
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+    
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long timeoutNanos = timeoutNanos(exchange);
+        if (timeoutNanos <= 0) {
+            deadlineExceeded.increment();
+            exchange.sendResponseHeaders(504, -1);
+            exchange.close();
+            return;
+        }
+        
+        RequestDeadline deadline = new RequestDeadline(System.nanoTime() + timeoutNanos, Thread.currentThread());
+        exchange.setAttribute(RequestDeadline.ATTRIBUTE, deadline);
+        ScheduledFuture<?> timer = TIMER.schedule(
+                () -> deadline.cancel(RequestDeadline.CancelReason.DEADLINE_EXCEEDED),
+                timeoutNanos, TimeUnit.NANOSECONDS);
+        if (exchange.getAttribute(PEER_CLOSED_ATTRIBUTE) instanceof CompletableFuture<?> peerClosed) {
+            peerClosed.thenRun(() -> deadline.cancel(RequestDeadline.CancelReason.CLIENT_CLOSED));
+        }
+        
+        try {
+            chain.doFilter(exchange);
+        } catch (IOException | RuntimeException e) {
+            if (!deadline.isCancelled()) {
+                throw e;
+            }
+            // Interrupted blocking I/O surfaces as an exception; the cancellation explains it
+            logger.debug("{} request cancelled ({}): {}", name, deadline.reason(), e.toString());
+        } finally {
+            timer.cancel(false);
+            if (!deadline.complete()) {
+                // Cancelled: clear the interrupt so it does not leak past this request
+                Thread.interrupted();
+                onCancelled(exchange, deadline.reason());
+            }
+        }
+    }
+    
+    private long timeoutNanos(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst(TIMEOUT_HEADER);
+        if (header == null) {
+            return defaultTimeoutNanos;
+        }
+        try {
+            return Math.min(defaultTimeoutNanos, TimeUnit.MILLISECONDS.toNanos(Long.parseLong(header.trim())));
+        } catch (NumberFormatException e) {
+            return defaultTimeoutNanos;
+        }
+    }
+    
+    private void onCancelled(HttpExchange exchange, RequestDeadline.CancelReason reason) throws IOException {
+        boolean exceeded = reason == RequestDeadline.CancelReason.DEADLINE_EXCEEDED;
+        if (exceeded) {
+            deadlineExceeded.increment();
+        } else {
+            clientClosed.increment();
+        }
+        if (exchange.getResponseCode() == -1) {
+            try {
+                exchange.sendResponseHeaders(exceeded ? 504 : CLIENT_CLOSED_STATUS, -1);
+            } catch (IOException e) {
+                logger.debug("{} could not send cancellation response: {}", name, e.toString());
+            }
+        }
+        exchange.close();
+    }
+    
+    public long getDeadlineExceeded() {
+        return deadlineExceeded.sum();
+    }
+    
+    public long getClientClosed() {
+        return clientClosed.sum();
+    }
+    
+    /**
+     * Appends a one-line summary of the cancelled requests to the builder.
+     */
+    public void appendTo(StringBuilder sb) {
+        sb.append(name).append(": timeout ").append(TimeUnit.NANOSECONDS.toMillis(defaultTimeoutNanos))
+          .append("ms, deadline exceeded ").append(getDeadlineExceeded())
+          .append(", client closed ").append(getClientClosed()).append("\n");
+    }
+    
+    @Override
+    public String description() {
+        return "Request deadline and cancellation for " + name;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,89 @@
+package com.example.app.virtualthreads;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Filter that tracks the requests in flight across every context it is added to, so that
+ * a shutdown can wait for them instead of cutting them off.
+ *
+ * Once draining has started, requests that still arrive (pipelined or on a keep-alive
+ * connection the engine has not closed yet) are turned away with 503, Retry-After and
+ * Connection: close, which a load balancer retries against another instance.
+ */
+public class DrainFilter extends Filter {
+    
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder completedWhileDraining = new LongAdder();
+    private final LongAdder rejectedWhileDraining = new LongAdder();
+    private volatile boolean draining;
+    
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        // Count first, then check, so a drain starting in between still waits for this request
+        inFlight.increment();
+        try {
+            if (draining) {
+                rejectedWhileDraining.increment();
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.getResponseHeaders().add("Connection", "close");
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            chain.doFilter(exchange);
+            if (draining) {
+                completedWhileDraining.increment();
+            }
+        } finally {
+            inFlight.decrement();
+        }
+    }
+    
+    /**
+     * Stops admitting requests; returns the number in flight at that moment.
+     */
+    public long startDraining() {
+        draining = true;
+        return inFlight.sum();
+    }
+    
+    public boolean isDraining() {
+        return draining;
+    }
+    
+    /**
+     * Waits until no request is in flight or the deadline (a System.nanoTime value) passes.
+     *
+     * @return true if all requests finished
+     */
+    public boolean awaitIdle(long deadlineNanos) throws InterruptedException {
+        while (inFlight.sum() > 0) {
+            if (System.nanoTime() - deadlineNanos >= 0) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+    
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+    
+    public long getCompletedWhileDraining() {
+        return completedWhileDraining.sum();
+    }
+    
+    public long getRejectedWhileDraining() {
+        return rejectedWhileDraining.sum();
+    }
+    
+    @Override
+    public String description() {
+        return "Tracks in-flight requests for graceful shutdown";
+    }
+}
\ No newline at end of file
@@ -11,10 +11,13 @@ import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -36,13 +39,46 @@ public class HttpLoadTester {
         final int successCount;
         final int errorCount;
         final double requestsPerSecond;
+        final double p50Ms;
+        final double p99Ms;
+        final LatencyHistogram latencies = new LatencyHistogram();
+        IntervalReporter intervals;
 
-        TestResult(String clientType, long durationMs, int successCount, int errorCount) {
+        TestResult(String clientType, long durationMs, int successCount, int errorCount,
+                long[] latenciesNanos) {
             this.clientType = clientType;
             this.durationMs = durationMs;
             this.successCount = successCount;
             this.errorCount = errorCount;
             this.requestsPerSecond = (successCount + errorCount) / (durationMs / 1000.0);
+            
+            long[] sorted = latenciesNanos.clone();
+            Arrays.sort(sorted);
+            this.p50Ms = percentile(sorted, 50.0) / 1_000_000.0;
+            this.p99Ms = percentile(sorted, 99.0) / 1_000_000.0;
+            for (long latency : latenciesNanos) {
+                latencies.record(latency);
+            }
+        }
+        
+        /**
+         * Adds throughput, latency and errors to the report under the given prefix.
+         */
+        void addTo(BenchmarkReport report, String prefix) {
+            report.value(prefix + "throughput", "req/s", false, requestsPerSecond);
+            report.latency(prefix + "latency", latencies);
+            report.value(prefix + "errors", "requests", true, errorCount);
+            if (intervals != null) {
+                intervals.addTo(report, prefix);
+            }
+        }
+        
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
         }
     }
 
@@ -64,40 +100,70 @@ public class HttpLoadTester {
                 .connectTimeout(Duration.ofSeconds(10))
                 .build();
         
-        // Run tests
-        TestResult virtualThreadResult = runTestWithClient("Virtual Threads", virtualThreadClient, requestCount);
+        // Run tests with the same concurrency bound, so both measure the same thing
+        long virtualStartMillis = System.currentTimeMillis();
+        TestResult virtualThreadResult = runTestWithClient("Virtual Threads", virtualThreadClient, requestCount,
+                connectionCount, "http-loadtest-virtual");
+        List<JvmTelemetry.Sample> virtualTelemetry = fetchServerTelemetry(BASE_URL, virtualStartMillis);
         sleepSeconds(2);
-        TestResult platformThreadResult = runTestWithClient("Platform Threads", platformThreadClient, requestCount);
+        long platformStartMillis = System.currentTimeMillis();
+        TestResult platformThreadResult = runTestWithClient("Platform Threads", platformThreadClient, requestCount,
+                connectionCount, "http-loadtest-platform");
+        List<JvmTelemetry.Sample> platformTelemetry = fetchServerTelemetry(BASE_URL, platformStartMillis);
         
         // Display comparison
         printComparisonResults(virtualThreadResult, platformThreadResult);
+        
+        BenchmarkReport report = new BenchmarkReport("http-loadtest");
+        report.parameter("connections", connectionCount).parameter("requests", requestCount);
+        virtualThreadResult.addTo(report, "virtual.");
+        platformThreadResult.addTo(report, "platform.");
+        JvmTelemetry.addTo(report, "virtual.server.", virtualTelemetry);
+        JvmTelemetry.addTo(report, "platform.server.", platformTelemetry);
+        StringBuilder sb = new StringBuilder();
+        JvmTelemetry.appendTo(sb, "Server JVM during the virtual-thread run", virtualTelemetry);
+        JvmTelemetry.appendTo(sb, "Server JVM during the platform-thread run", platformTelemetry);
+        logger.info(sb.toString());
+        report.write();
     }
     
     /**
-     * Runs the test with the specified client.
+     * Runs the test with the specified client, with at most maxConcurrent requests in flight,
+     * reporting each second as it goes under the given name.
      */
-    private static TestResult runTestWithClient(String clientType, HttpClient client, int requestCount) {
+    private static TestResult runTestWithClient(String clientType, HttpClient client, int requestCount,
+            int maxConcurrent, String intervalsName) {
         logger.info("Running test with {}", clientType);
         
+        Semaphore permits = new Semaphore(maxConcurrent);
         AtomicInteger successCounter = new AtomicInteger(0);
         AtomicInteger errorCounter = new AtomicInteger(0);
+        long[] latencies = new long[requestCount];
+        IntervalReporter intervals = new IntervalReporter(intervalsName, new IntervalRecorder(), Duration.ofSeconds(1),
+                Duration.ZERO);
+        IntervalRecorder recorder = intervals.recorder();
         
         // Record start time
         Instant start = Instant.now();
         
         // Send requests concurrently
+        WorkloadProfile workload = WorkloadProfile.defaultMix();
         List<CompletableFuture<Void>> futures = new ArrayList<>();
         for (int i = 0; i < requestCount; i++) {
-            String endpoint = i % 3 == 0 ? "/api/slow" : "/api/hello";
-            URI uri = URI.create(BASE_URL + endpoint);
+            URI uri = URI.create(BASE_URL + workload.next().path());
             
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(uri)
                     .GET()
                     .build();
             
-            CompletableFuture<Void> future = client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+            int index = i;
+            permits.acquireUninterruptibly();
+            long sentAt = System.nanoTime();
+            CompletableFuture<Void> future = client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
                     .thenApply(response -> {
+                        latencies[index] = System.nanoTime() - sentAt;
+                        recorder.record(latencies[index], response.statusCode() == 200);
                         if (response.statusCode() == 200) {
                             successCounter.incrementAndGet();
                         } else {
@@ -109,9 +175,12 @@ public class HttpLoadTester {
                         // Process completed - nothing to do here
                     })
                     .exceptionally(e -> {
+                        latencies[index] = System.nanoTime() - sentAt;
+                        recorder.record(latencies[index], false);
                         errorCounter.incrementAndGet();
                         return null;
-                    });
+                    })
+                    .whenComplete((ignored, e) -> permits.release());
             
             futures.add(future);
         }
@@ -129,15 +198,325 @@ public class HttpLoadTester {
         // Calculate results
         Duration duration = Duration.between(start, Instant.now());
         long durationMs = duration.toMillis();
+        intervals.close();
         
         logger.info("{} test completed in {} ms", clientType, durationMs);
         
-        return new TestResult(
+        TestResult result = new TestResult(
                 clientType,
                 durationMs,
                 successCounter.get(),
-                errorCounter.get()
+                errorCounter.get(),
+                latencies
         );
+        result.intervals = intervals;
+        return result;
+    }
+    
+    /**
+     * The workload of a key=value mode: the profile file or bundled profile named by
+     * workload=..., every request a GET of path=..., or else the default mix. arrival=...
+     * (with burstFactor, burstFraction and burstPeriod for bursty) overrides the profile's
+     * arrival process.
+     */
+    static WorkloadProfile workloadFor(LoadOptions options) {
+        WorkloadProfile workload;
+        if (options.has("workload")) {
+            workload = WorkloadProfile.load(options.get("workload", null));
+        } else if (options.has("path")) {
+            workload = WorkloadProfile.singlePath(options.get("path", null));
+        } else {
+            workload = WorkloadProfile.defaultMix();
+        }
+        if (options.has("arrival")) {
+            workload = workload.withArrival(options.get("arrival", null), options.getDouble("burstFactor", 4),
+                    options.getDouble("burstFraction", 0.1), options.getDuration("burstPeriod", Duration.ofSeconds(1)));
+        }
+        logger.info("Workload {}", workload.describe());
+        return workload;
+    }
+    
+    /**
+     * Runs the open-loop generator against the server at the base URL.
+     *
+     * Options: rate (req/s, default 200), duration (default 30s), warmup (default 5s),
+     * maxInFlight (default 10000), client (jdk or nio, default jdk; see
+     * {@link LoadClient#create}), workload, path and arrival (see {@link #workloadFor}), and
+     * interval (see {@link #startIntervals}).
+     */
+    public static LoadResult runOpenLoop(String baseUrl, LoadOptions options) {
+        double rate = options.getDouble("rate", 200);
+        Duration duration = options.getDuration("duration", Duration.ofSeconds(30));
+        Duration warmup = options.getDuration("warmup", Duration.ofSeconds(5));
+        logger.info("Open-loop test against {}: {} req/s for {}s after {}s warmup", baseUrl, rate,
+                duration.toSeconds(), warmup.toSeconds());
+        
+        LoadResult result;
+        long measureStartMillis = System.currentTimeMillis() + warmup.toMillis();
+        JvmTelemetry telemetry = options.has("url") ? JvmTelemetry.start() : null;
+        IntervalReporter intervals = startIntervals("loadtest-open", options, warmup);
+        try (LoadClient client = LoadClient.create(options.get("client", "jdk"), baseUrl, options)) {
+            OpenLoopGenerator generator = new OpenLoopGenerator(client, rate, duration, warmup,
+                    options.getInt("maxInFlight", 10_000));
+            generator.setIntervalRecorder(intervals == null ? null : intervals.recorder());
+            result = generator.run(workloadFor(options));
+        } finally {
+            if (intervals != null) {
+                intervals.close();
+            }
+            if (telemetry != null) {
+                telemetry.close();
+            }
+        }
+        
+        BenchmarkReport report = new BenchmarkReport("loadtest-open").parameters(options);
+        StringBuilder sb = new StringBuilder();
+        result.appendTo(sb);
+        sb.append("Latency is measured from each request's scheduled send time; "
+                + "'svc p99' is measured from the actual send time.\n");
+        addTelemetry(report, "", baseUrl, measureStartMillis, telemetry, sb);
+        logger.info(sb.toString());
+        
+        result.addTo(report, "");
+        if (intervals != null) {
+            intervals.addTo(report, "");
+        }
+        report.write();
+        return result;
+    }
+    
+    /**
+     * Adds the JVM telemetry of a run's measured period to the report and the summary: the
+     * server's, from its /api/telemetry, and, when the generator runs in a JVM of its own
+     * (url=...), the generator's under "client.".
+     */
+    private static void addTelemetry(BenchmarkReport report, String prefix, String baseUrl, long sinceMillis,
+            JvmTelemetry generator, StringBuilder sb) {
+        List<JvmTelemetry.Sample> server = fetchServerTelemetry(baseUrl, sinceMillis);
+        JvmTelemetry.addTo(report, prefix + "server.", server);
+        JvmTelemetry.appendTo(sb, generator == null ? "JVM (server and load generator)" : "Server JVM", server);
+        if (generator != null) {
+            List<JvmTelemetry.Sample> client = generator.samplesSince(sinceMillis);
+            JvmTelemetry.addTo(report, prefix + "client.", client);
+            JvmTelemetry.appendTo(sb, "Load generator JVM", client);
+        }
+    }
+    
+    /**
+     * The server's telemetry samples taken since the given epoch milliseconds, or none if the
+     * server does not answer /api/telemetry (logged, so that the run still counts).
+     */
+    static List<JvmTelemetry.Sample> fetchServerTelemetry(String baseUrl, long sinceMillis) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/telemetry?since=" + sinceMillis))
+                .timeout(Duration.ofSeconds(5))
+                .build();
+        try {
+            HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                return JvmTelemetry.fromJson(response.body());
+            }
+            logger.warn("Server telemetry unavailable: {} returned {}", request.uri(), response.statusCode());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Server telemetry unavailable: {}", e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return List.of();
+    }
+    
+    /**
+     * Starts reporting a run's throughput, error rate and latency per interval (option
+     * interval, default 1s; interval=0 turns it off), or returns null when it is off.
+     */
+    private static IntervalReporter startIntervals(String name, LoadOptions options, Duration warmup) {
+        Duration period = options.getDuration("interval", Duration.ofSeconds(1));
+        return period.isZero() ? null : new IntervalReporter(name, new IntervalRecorder(), period, warmup);
+    }
+    
+    /**
+     * Runs the closed-loop generator for every combination of user count and thread kind.
+     *
+     * Options: users (comma-separated counts to sweep, default 10,100,1000), threads
+     * (virtual, platform or both; default both), think (think time, default 0, unless the
+     * workload sets one per endpoint), workload and path, client and interval (see
+     * {@link #runOpenLoop}), duration (per run, default 10s) and warmup (per run, default 2s).
+     */
+    public static List<LoadResult> runClosedLoop(String baseUrl, LoadOptions options) throws InterruptedException {
+        Duration duration = options.getDuration("duration", Duration.ofSeconds(10));
+        Duration warmup = options.getDuration("warmup", Duration.ofSeconds(2));
+        Duration think = options.getDuration("think", Duration.ZERO);
+        String threads = options.get("threads", "both");
+        List<String> threadTypes = threads.equals("both") ? List.of("virtual", "platform") : List.of(threads);
+        
+        WorkloadProfile workload = workloadFor(options);
+        List<LoadResult> results = new ArrayList<>();
+        BenchmarkReport report = new BenchmarkReport("loadtest-closed").parameters(options);
+        StringBuilder summary = new StringBuilder(String.format("%n=== CLOSED-LOOP SWEEP (think %dms) ===%n%-9s %7s %10s %10s %10s %10s %8s%n",
+                think.toMillis(), "threads", "users", "req/s", "p50 ms", "p99 ms", "max ms", "errors"));
+        for (String usersValue : options.get("users", "10,100,1000").split(",")) {
+            int users = Integer.parseInt(usersValue.trim());
+            for (String threadType : threadTypes) {
+                String prefix = threadType + "." + users + "users.";
+                long measureStartMillis = System.currentTimeMillis() + warmup.toMillis();
+                JvmTelemetry telemetry = options.has("url") ? JvmTelemetry.start() : null;
+                IntervalReporter intervals = startIntervals("loadtest-closed-" + threadType + "-" + users + "users",
+                        options, warmup);
+                LoadResult result;
+                try {
+                    result = runClosedLoop(baseUrl, users, threadType, duration, warmup, think, workload, options,
+                            intervals == null ? null : intervals.recorder());
+                } finally {
+                    if (intervals != null) {
+                        intervals.close();
+                    }
+                    if (telemetry != null) {
+                        telemetry.close();
+                    }
+                }
+                results.add(result);
+                result.addTo(report, prefix);
+                if (intervals != null) {
+                    intervals.addTo(report, prefix);
+                }
+                
+                StringBuilder sb = new StringBuilder();
+                result.appendTo(sb);
+                addTelemetry(report, prefix, baseUrl, measureStartMillis, telemetry, sb);
+                logger.info(sb.toString());
+                LoadResult.Endpoint total = result.total();
+                summary.append(String.format("%-9s %7d %10.1f %10.2f %10.2f %10.2f %8d%n",
+                        threadType, users, result.throughput(),
+                        total.responseTime().valueAtPercentile(50) / 1e6,
+                        total.responseTime().valueAtPercentile(99) / 1e6,
+                        total.responseTime().maxNanos() / 1e6, total.errors()));
+            }
+        }
+        logger.info(summary.toString());
+        report.write();
+        return results;
+    }
+    
+    private static LoadResult runClosedLoop(String baseUrl, int users, String threadType, Duration duration,
+            Duration warmup, Duration think, WorkloadProfile workload, LoadOptions options, IntervalRecorder intervals)
+            throws InterruptedException {
+        String clientName = options.get("client", "jdk");
+        ThreadFactory userThreads;
+        LoadClient client;
+        switch (threadType) {
+            case "virtual":
+                userThreads = Thread.ofVirtual().name("user-", 0).factory();
+                client = LoadClient.create(clientName, baseUrl, options);
+                break;
+            case "platform":
+                userThreads = Thread.ofPlatform().name("user-", 0).factory();
+                // Mirror runLoadTest: the platform JDK client also runs on a pool of one thread per user
+                client = clientName.equals("jdk")
+                        ? new JdkLoadClient(baseUrl, "jdk-platform", Executors.newFixedThreadPool(users),
+                                LoadClient.requestTimeout(options))
+                        : LoadClient.create(clientName, baseUrl, options);
+                break;
+            default:
+                throw new IllegalArgumentException("threads must be virtual, platform or both: " + threadType);
+        }
+        try (client) {
+            ClosedLoopGenerator generator = new ClosedLoopGenerator(client, users, duration, warmup, think,
+                    userThreads, threadType, LoadClient.requestTimeout(options));
+            generator.setIntervalRecorder(intervals);
+            return generator.run(workload);
+        }
+    }
+    
+    /**
+     * Ramps the load up step by step and reports the knee and the maximum sustainable load.
+     *
+     * Options: by (rate or users, default rate), start, max, step or factor (the levels;
+     * defaults 50, 2000, 50 for rates and 10, 1000, 10 for users), hold (per step, default
+     * 10s), warmup (per step, default 2s), slo (p99 target, default 2500ms, above the 2s of
+     * /api/slow), maxErrors (error-rate budget, default 0.01), think, and workload, path and arrival.
+     */
+    public static KneeFinder runRamp(String baseUrl, LoadOptions options) {
+        boolean byRate = options.get("by", "rate").equals("rate");
+        double[] levels = KneeFinder.levels(
+                options.getDouble("start", byRate ? 50 : 10),
+                options.getDouble("max", byRate ? 2000 : 1000),
+                options.getDouble("step", byRate ? 50 : 10),
+                options.getDouble("factor", 0));
+        Duration hold = options.getDuration("hold", Duration.ofSeconds(10));
+        Duration warmup = options.getDuration("warmup", Duration.ofSeconds(2));
+        Duration think = options.getDuration("think", Duration.ZERO);
+        WorkloadProfile workload = workloadFor(options);
+        
+        KneeFinder finder = new KneeFinder(byRate, options.getDuration("slo", Duration.ofMillis(2500)),
+                options.getDouble("maxErrors", 0.01));
+        finder.ramp(levels, level -> {
+            if (byRate) {
+                try (LoadClient client = LoadClient.create(options.get("client", "jdk"), baseUrl, options)) {
+                    return new OpenLoopGenerator(client, level, hold, warmup, options.getInt("maxInFlight", 10_000))
+                            .run(workload);
+                }
+            }
+            try {
+                return runClosedLoop(baseUrl, (int) level, options.get("threads", "virtual"), hold, warmup, think,
+                        workload, options, null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted during ramp", e);
+            }
+        });
+        
+        StringBuilder sb = new StringBuilder();
+        finder.appendTo(sb);
+        logger.info(sb.toString());
+        
+        BenchmarkReport report = new BenchmarkReport("loadtest-ramp").parameters(options);
+        KneeFinder.Step max = finder.maxSustainable();
+        KneeFinder.Step knee = finder.knee();
+        report.value("maxSustainable.level", byRate ? "req/s" : "users", false, max == null ? 0 : max.level);
+        report.value("maxSustainable.goodput", "req/s", false, max == null ? 0 : max.throughput);
+        if (knee != null) {
+            report.value("knee.level", byRate ? "req/s" : "users", false, knee.level);
+        }
+        report.write();
+        return finder;
+    }
+    
+    /**
+     * Runs a key=value load generator mode, against url=... if given, otherwise against an
+     * in-process HttpServerExample.
+     */
+    private static void runMode(String mode, LoadOptions options) {
+        HttpServerExample server = null;
+        String baseUrl = options.get("url", BASE_URL);
+        try {
+            if (!options.has("url")) {
+                server = new HttpServerExample();
+                server.startServer();
+            }
+            switch (mode) {
+                case "open":
+                    runOpenLoop(baseUrl, options);
+                    break;
+                case "closed":
+                    runClosedLoop(baseUrl, options);
+                    break;
+                case "ramp":
+                    runRamp(baseUrl, options);
+                    break;
+                case "coordinate":
+                    new LoadCoordinator(baseUrl, options.getInt("workers", 2), options).run();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown load test mode: " + mode);
+            }
+        } catch (IOException e) {
+            logger.error("Error starting server", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (server != null) {
+                server.stopServer();
+            }
+        }
     }
     
     /**
@@ -150,17 +529,59 @@ public class HttpLoadTester {
         sb.append("\n=== HTTP LOAD TEST RESULTS ===\n");
         sb.append("Virtual Threads: ").append(virtualThreadResult.successCount)
           .append(" successful requests in ").append(virtualThreadResult.durationMs).append("ms ")
-          .append("(").append(String.format("%.2f", virtualThreadResult.requestsPerSecond)).append(" req/sec)\n");
+          .append("(").append(String.format("%.2f", virtualThreadResult.requestsPerSecond)).append(" req/sec, ")
+          .append(String.format("p99 %.1fms", virtualThreadResult.p99Ms)).append(")\n");
         
         sb.append("Platform Threads: ").append(platformThreadResult.successCount)
           .append(" successful requests in ").append(platformThreadResult.durationMs).append("ms ")
-          .append("(").append(String.format("%.2f", platformThreadResult.requestsPerSecond)).append(" req/sec)\n");
+          .append("(").append(String.format("%.2f", platformThreadResult.requestsPerSecond)).append(" req/sec, ")
+          .append(String.format("p99 %.1fms", platformThreadResult.p99Ms)).append(")\n");
         
         sb.append("\nVirtual threads were ").append(String.format("%.2fx", speedupFactor)).append(" faster\n");
         
         logger.info(sb.toString());
     }
     
+    /**
+     * Runs the virtual-thread client against each server engine in turn and prints
+     * throughput and latency side by side.
+     */
+    public static void compareEngines(int requestCount) {
+        List<TestResult> results = new ArrayList<>();
+        for (String engineName : List.of("jdk", "nio")) {
+            HttpServerExample server = new HttpServerExample(ServerEngine.create(engineName));
+            HttpClient client = HttpClient.newBuilder()
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .build();
+            try {
+                server.startServer();
+                results.add(runTestWithClient(engineName + " engine", client, requestCount, requestCount,
+                        "engine-comparison-" + engineName));
+            } catch (IOException e) {
+                logger.error("Error starting {} engine", engineName, e);
+            } finally {
+                server.stopServer();
+            }
+            sleepSeconds(2);
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n=== SERVER ENGINE COMPARISON ===\n");
+        for (TestResult result : results) {
+            sb.append(String.format("%-12s %6d ok %6d errors %10.2f req/sec  p50 %8.1fms  p99 %8.1fms%n",
+                    result.clientType, result.successCount, result.errorCount,
+                    result.requestsPerSecond, result.p50Ms, result.p99Ms));
+        }
+        logger.info(sb.toString());
+        
+        BenchmarkReport report = new BenchmarkReport("engine-comparison").parameter("requests", requestCount);
+        for (TestResult result : results) {
+            result.addTo(report, result.clientType.replace(" engine", "") + ".");
+        }
+        report.write();
+    }
+    
     /**
      * Sleep for the specified number of seconds.
      */
@@ -176,6 +597,24 @@ public class HttpLoadTester {
      * Main method to run the load tester.
      */
     public static void main(String[] args) {
+        if (args.length >= 1 && args[0].equals("engines")) {
+            compareEngines(args.length >= 2 ? Integer.parseInt(args[1]) : DEFAULT_REQUEST_COUNT);
+            return;
+        }
+        if (args.length >= 1 && args[0].equals("worker")) {
+            try {
+                LoadCoordinator.runWorker(LoadOptions.parse(args, 1));
+            } catch (IOException e) {
+                logger.error("Load worker failed", e);
+                System.exit(1);
+            }
+            return;
+        }
+        if (args.length >= 1 && List.of("open", "closed", "ramp", "coordinate").contains(args[0])) {
+            runMode(args[0], LoadOptions.parse(args, 1));
+            return;
+        }
+        
         HttpServerExample server = new HttpServerExample();
         
         try {
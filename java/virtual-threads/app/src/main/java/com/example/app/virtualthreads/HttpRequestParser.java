@@ -0,0 +1,155 @@
+package com.example.app.virtualthreads;
+
+import com.sun.net.httpserver.Headers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal HTTP/1.1 request parser used by the NIO server engine.
+ *
+ * Parses one request (request line, headers and a Content-Length body) from a read buffer
+ * without blocking. Chunked request bodies are not supported.
+ */
+final class HttpRequestParser {
+    
+    static final int MAX_HEADER_BYTES = 8 * 1024;
+    static final int MAX_BODY_BYTES = 1024 * 1024;
+    private static final byte[] NO_BODY = new byte[0];
+    
+    private HttpRequestParser() {
+    }
+    
+    /**
+     * A fully received request.
+     */
+    static final class Request {
+        final String method;
+        final URI uri;
+        final String protocol;
+        final Headers headers;
+        final byte[] body;
+        
+        Request(String method, URI uri, String protocol, Headers headers, byte[] body) {
+            this.method = method;
+            this.uri = uri;
+            this.protocol = protocol;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+    
+    /**
+     * Thrown for requests that cannot be served; carries the status code to answer with.
+     */
+    static final class HttpParseException extends IOException {
+        private static final long serialVersionUID = 1L;
+        
+        final int statusCode;
+        
+        HttpParseException(int statusCode, String message) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+    }
+    
+    /**
+     * Parses one request starting at the buffer's position.
+     *
+     * Returns null and leaves the position untouched if the request is not complete yet;
+     * otherwise advances the position past the request.
+     */
+    static Request parse(ByteBuffer buffer) throws HttpParseException {
+        int start = buffer.position();
+        int headerEnd = findHeaderEnd(buffer, start, buffer.limit());
+        if (headerEnd < 0) {
+            if (buffer.remaining() > MAX_HEADER_BYTES) {
+                throw new HttpParseException(431, "Request header section too large");
+            }
+            return null;
+        }
+        
+        String head = decode(buffer, start, headerEnd - start);
+        String[] lines = head.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3) {
+            throw new HttpParseException(400, "Malformed request line: " + lines[0]);
+        }
+        
+        Headers headers = new Headers();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                throw new HttpParseException(400, "Malformed header: " + lines[i]);
+            }
+            headers.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+        }
+        
+        if (headers.containsKey("Transfer-Encoding")) {
+            throw new HttpParseException(501, "Transfer-Encoding is not supported");
+        }
+        
+        int contentLength = parseContentLength(headers.getFirst("Content-Length"));
+        int bodyStart = headerEnd + 4;
+        if (buffer.limit() - bodyStart < contentLength) {
+            return null;
+        }
+        
+        byte[] body = NO_BODY;
+        if (contentLength > 0) {
+            body = new byte[contentLength];
+            buffer.get(bodyStart, body);
+        }
+        buffer.position(bodyStart + contentLength);
+        
+        return new Request(requestLine[0], parseUri(requestLine[1]), requestLine[2], headers, body);
+    }
+    
+    /**
+     * Returns the index of the CRLFCRLF that terminates the header section, or -1.
+     */
+    private static int findHeaderEnd(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i + 3 < to; i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n'
+                    && buffer.get(i + 2) == '\r' && buffer.get(i + 3) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static String decode(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+    
+    private static int parseContentLength(String value) throws HttpParseException {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            int length = Integer.parseInt(value);
+            if (length < 0) {
+                throw new HttpParseException(400, "Negative Content-Length");
+            }
+            if (length > MAX_BODY_BYTES) {
+                throw new HttpParseException(413, "Request body too large");
+            }
+            return length;
+        } catch (NumberFormatException e) {
+            throw new HttpParseException(400, "Invalid Content-Length: " + value);
+        }
+    }
+    
+    private static URI parseUri(String target) throws HttpParseException {
+        try {
+            return new URI(target);
+        } catch (URISyntaxException e) {
+            throw new HttpParseException(400, "Invalid request target: " + target);
+        }
+    }
+}
\ No newline at end of file
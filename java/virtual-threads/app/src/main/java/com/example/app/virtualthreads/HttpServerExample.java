@@ -3,18 +3,25 @@ package com.example.app.virtualthreads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
-import com.sun.net.httpserver.HttpServer;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Demonstrates the use of virtual threads in a simple HTTP server.
@@ -23,41 +30,215 @@ public class HttpServerExample {
 
     private static final Logger logger = LoggerFactory.getLogger(HttpServerExample.class);
     private static final int PORT = 8080;
-    private HttpServer server;
-    private final AtomicInteger activeRequests = new AtomicInteger(0);
-    private final AtomicInteger totalRequests = new AtomicInteger(0);
-    private final AtomicInteger slowRequests = new AtomicInteger(0);
-    private final AtomicInteger fastRequests = new AtomicInteger(0);
+    private static final Duration DEFAULT_DRAIN_BUDGET = Duration.ofSeconds(Long.getLong("server.drain.seconds", 10));
+    private final ServerEngine engine;
+    private final StripedCounter activeRequests = new StripedCounter();
+    private final StripedCounter totalRequests = new StripedCounter();
+    private final StripedCounter slowRequests = new StripedCounter();
+    private final StripedCounter fastRequests = new StripedCounter();
+    private final LatencyMetrics latencyMetrics = new LatencyMetrics();
+    private final List<AdaptiveConcurrencyLimitFilter> concurrencyLimits = new CopyOnWriteArrayList<>();
+    private final List<DeadlineFilter> deadlines = new CopyOnWriteArrayList<>();
+    private final DrainFilter drainFilter = new DrainFilter();
+    private ExecutorService executor;
+    private JvmTelemetry telemetry;
+    private PinningMonitor pinning;
+    private CarrierWatchdog watchdog;
+    private boolean started;
+
+    /**
+     * Creates a server using the engine selected by the "server.engine" system property.
+     */
+    public HttpServerExample() {
+        this(ServerEngine.fromSystemProperties());
+    }
+
+    /**
+     * Creates a server running on the given engine.
+     */
+    public HttpServerExample(ServerEngine engine) {
+        this.engine = engine;
+    }
 
     /**
      * Starts the HTTP server with virtual threads handling incoming requests.
      */
     public void startServer() throws IOException {
-        server = HttpServer.create(new InetSocketAddress(PORT), 0);
-        
         // Register endpoints
-        server.createContext("/api/hello", new HelloHandler(activeRequests, totalRequests, fastRequests));
-        server.createContext("/api/slow", new SlowHandler(activeRequests, totalRequests, slowRequests));
-        server.createContext("/api/stats", new StatsHandler());
+        HttpContext helloContext = registerEndpoint("/api/hello",
+                new HelloHandler(activeRequests, totalRequests, fastRequests));
+        addDeadline(helloContext, 1_000);
+        HttpContext slowContext = registerEndpoint("/api/slow",
+                new SlowHandler(activeRequests, totalRequests, slowRequests));
+        // The 2s sleep does not slow down with load, so the RTT never inflates and the limit
+        // here only grows toward its maximum; a real backend would push it back down
+        addConcurrencyLimit(slowContext, 100, 10, 5_000);
+        addDeadline(slowContext, 5_000);
+        DatabaseOperationsExample.initializeDatabase();
+        HttpContext userContext = registerEndpoint("/api/user/", new UserSummaryHandler());
+        addDeadline(userContext, 1_000);
+        registerEndpoint("/api/stats", new StatsHandler());
+        registerEndpoint("/metrics", new PrometheusHandler());
+        registerEndpoint("/api/telemetry", new TelemetryHandler());
+        telemetry = JvmTelemetry.start();
+        registerEndpoint("/api/pinning", new PinningHandler());
+        pinning = PinningMonitor.start();
+        watchdog = CarrierWatchdog.start();
         
         // Set the executor to use virtual threads - one per request
-        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
-        server.setExecutor(executor);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            engine.start(new InetSocketAddress(PORT), executor);
+        } catch (IOException | RuntimeException e) {
+            // stopServer() does nothing until started, so release the monitors here
+            executor.close();
+            telemetry.close();
+            pinning.close();
+            watchdog.close();
+            throw e;
+        }
+        started = true;
         
-        server.start();
+        logger.info("HTTP Server started on port {} using virtual threads ({} engine)", PORT, engine.name());
+        logger.info("Available endpoints: /api/hello, /api/slow, /api/user/{id}/summary, /api/stats, /metrics, "
+                + "/api/telemetry, /api/pinning");
+    }
+    
+    /**
+     * Registers a handler with drain tracking and latency recording wrapped around it.
+     */
+    private HttpContext registerEndpoint(String path, HttpHandler handler) {
+        HttpContext context = engine.createContext(path, handler);
+        context.getFilters().add(drainFilter);
+        context.getFilters().add(new LatencyRecordingFilter(latencyMetrics.endpoint(path)));
+        return context;
+    }
+    
+    /**
+     * The per-endpoint latency histograms behind /api/stats and /metrics.
+     */
+    LatencyMetrics latencyMetrics() {
+        return latencyMetrics;
+    }
+    
+    /**
+     * Bounds the context's in-flight requests with an adaptive limit.
+     *
+     * The limits can be overridden per context with a system property named after its path,
+     * e.g. -Dserver.limit.api.slow=initial,min,max for /api/slow.
+     */
+    private void addConcurrencyLimit(HttpContext context, int initialLimit, int minLimit, int maxLimit) {
+        String property = "server.limit" + context.getPath().replace('/', '.');
+        String override = System.getProperty(property);
+        if (override != null) {
+            String[] values = override.split(",");
+            if (values.length != 3) {
+                throw new IllegalArgumentException(property + " must be initial,min,max but was " + override);
+            }
+            initialLimit = Integer.parseInt(values[0].trim());
+            minLimit = Integer.parseInt(values[1].trim());
+            maxLimit = Integer.parseInt(values[2].trim());
+        }
         
-        logger.info("HTTP Server started on port {} using virtual threads", PORT);
-        logger.info("Available endpoints: /api/hello, /api/slow, /api/stats");
+        AdaptiveConcurrencyLimitFilter limiter = new AdaptiveConcurrencyLimitFilter(
+                context.getPath(), initialLimit, minLimit, maxLimit);
+        context.getFilters().add(limiter);
+        concurrencyLimits.add(limiter);
+    }
+    
+    /**
+     * Cancels the context's requests once their deadline passes or the client disconnects.
+     *
+     * Clients can shorten the deadline with an X-Request-Timeout-Ms header; the default can be
+     * overridden per context, e.g. -Dserver.deadline.api.slow=500 for /api/slow.
+     */
+    private void addDeadline(HttpContext context, long defaultTimeoutMillis) {
+        String property = "server.deadline" + context.getPath().replace('/', '.');
+        long timeoutMillis = Long.getLong(property, defaultTimeoutMillis);
+        
+        DeadlineFilter deadline = new DeadlineFilter(context.getPath(), timeoutMillis);
+        context.getFilters().add(deadline);
+        deadlines.add(deadline);
     }
 
     /**
-     * Stops the HTTP server.
+     * Stops the HTTP server, draining in-flight requests for up to "server.drain.seconds"
+     * (10 by default).
      */
     public void stopServer() {
-        if (server != null) {
-            server.stop(0);
-            logger.info("HTTP Server stopped");
-            printStatistics();
+        drain(DEFAULT_DRAIN_BUDGET);
+    }
+    
+    /**
+     * Stops the server gracefully: rejects new requests, lets in-flight requests finish within
+     * the budget, stops the engine and then closes the executor, interrupting whatever is
+     * still running.
+     *
+     * @return what happened to the requests in flight, or null if the server was not running
+     */
+    public synchronized DrainResult drain(Duration budget) {
+        if (!started) {
+            return null;
+        }
+        started = false;
+        long start = System.nanoTime();
+        long pending = drainFilter.startDraining();
+        logger.info("Draining {} in-flight requests (budget {}ms)", pending, budget.toMillis());
+        
+        // Turn new requests away with 503 and Connection: close while the in-flight ones finish;
+        // engine.stop only takes whole seconds and closes every connection when it returns
+        try {
+            drainFilter.awaitIdle(start + budget.toNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long completed = drainFilter.getCompletedWhileDraining();
+        long dropped = drainFilter.getInFlight();
+        // If everything finished, give the engine up to a second to write the last responses
+        engine.stop(dropped == 0 ? 1 : 0);
+        
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                logger.warn("Executor still has running tasks after shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        telemetry.close();
+        pinning.close();
+        watchdog.close();
+        
+        DrainResult result = new DrainResult(pending, completed, dropped,
+                drainFilter.getRejectedWhileDraining(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        logger.info("HTTP Server stopped: {}", result);
+        printStatistics();
+        return result;
+    }
+    
+    /**
+     * The outcome of a {@link #drain(Duration)}.
+     */
+    public static class DrainResult {
+        public final long inFlightAtStart;
+        public final long completed;
+        public final long dropped;
+        public final long rejected;
+        public final long elapsedMillis;
+        
+        DrainResult(long inFlightAtStart, long completed, long dropped, long rejected, long elapsedMillis) {
+            this.inFlightAtStart = inFlightAtStart;
+            this.completed = completed;
+            this.dropped = dropped;
+            this.rejected = rejected;
+            this.elapsedMillis = elapsedMillis;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%d in flight at start, %d completed, %d dropped, %d rejected while draining, %dms",
+                    inFlightAtStart, completed, dropped, rejected, elapsedMillis);
         }
     }
     
@@ -66,19 +247,21 @@ public class HttpServerExample {
      */
     public void printStatistics() {
         logger.info("Server Statistics: {} total requests ({} fast, {} slow), {} active", 
-                totalRequests.get(), fastRequests.get(), slowRequests.get(), activeRequests.get());
+                totalRequests.sum(), fastRequests.sum(), slowRequests.sum(), activeRequests.sum());
     }
 
     /**
      * A simple handler that responds immediately.
      */
     static class HelloHandler implements HttpHandler {
-        private final AtomicInteger activeRequests;
-        private final AtomicInteger totalRequests;
-        private final AtomicInteger fastRequests;
+        private static final ResponseTemplate RESPONSE =
+                new ResponseTemplate("Hello from Virtual Thread! Active requests: ", "");
+        private final StripedCounter activeRequests;
+        private final StripedCounter totalRequests;
+        private final StripedCounter fastRequests;
         
-        public HelloHandler(AtomicInteger activeRequests, AtomicInteger totalRequests, 
-                AtomicInteger fastRequests) {
+        public HelloHandler(StripedCounter activeRequests, StripedCounter totalRequests, 
+                StripedCounter fastRequests) {
             this.activeRequests = activeRequests;
             this.totalRequests = totalRequests;
             this.fastRequests = fastRequests;
@@ -86,19 +269,15 @@ public class HttpServerExample {
         
         @Override
         public void handle(HttpExchange exchange) throws IOException {
-            int active = activeRequests.incrementAndGet();
+            activeRequests.increment();
+            long active = activeRequests.sum();
             try {
-                String response = "Hello from Virtual Thread! Active requests: " + active;
-                exchange.sendResponseHeaders(200, response.length());
-                
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(response.getBytes());
-                }
+                RESPONSE.send(exchange, 200, active);
                 
-                totalRequests.incrementAndGet();
-                fastRequests.incrementAndGet();
+                totalRequests.increment();
+                fastRequests.increment();
             } finally {
-                activeRequests.decrementAndGet();
+                activeRequests.decrement();
             }
         }
     }
@@ -107,12 +286,14 @@ public class HttpServerExample {
      * A handler that simulates a slow processing operation.
      */
     static class SlowHandler implements HttpHandler {
-        private final AtomicInteger activeRequests;
-        private final AtomicInteger totalRequests;
-        private final AtomicInteger slowRequests;
+        private static final ResponseTemplate RESPONSE =
+                new ResponseTemplate("Slow response from Virtual Thread after 2 seconds! Active: ", "");
+        private final StripedCounter activeRequests;
+        private final StripedCounter totalRequests;
+        private final StripedCounter slowRequests;
         
-        public SlowHandler(AtomicInteger activeRequests, AtomicInteger totalRequests,
-                AtomicInteger slowRequests) {
+        public SlowHandler(StripedCounter activeRequests, StripedCounter totalRequests,
+                StripedCounter slowRequests) {
             this.activeRequests = activeRequests;
             this.totalRequests = totalRequests;
             this.slowRequests = slowRequests;
@@ -120,26 +301,79 @@ public class HttpServerExample {
         
         @Override
         public void handle(HttpExchange exchange) throws IOException {
-            int active = activeRequests.incrementAndGet();
+            activeRequests.increment();
+            long active = activeRequests.sum();
             try {
                 // Simulate a slow database query or external API call
                 try {
                     Thread.sleep(Duration.ofSeconds(2));
                 } catch (InterruptedException e) {
+                    // Cancelled by the request deadline; the DeadlineFilter answers for us
                     Thread.currentThread().interrupt();
+                    return;
                 }
                 
-                String response = "Slow response from Virtual Thread after 2 seconds! Active: " + active;
-                exchange.sendResponseHeaders(200, response.length());
+                RESPONSE.send(exchange, 200, active);
                 
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(response.getBytes());
-                }
-                
-                totalRequests.incrementAndGet();
-                slowRequests.incrementAndGet();
+                totalRequests.increment();
+                slowRequests.increment();
             } finally {
-                activeRequests.decrementAndGet();
+                activeRequests.decrement();
+            }
+        }
+    }
+    
+    /**
+     * A handler for /api/user/{id}/summary that looks up the user and their orders concurrently.
+     *
+     * The lookups run in a StructuredTaskScope bounded by the request deadline: an unknown
+     * user answers 404, a failed lookup 502 and a missed deadline 504. If the DeadlineFilter
+     * interrupts the handler, leaving the scope cancels both lookups.
+     */
+    static class UserSummaryHandler implements HttpHandler {
+        private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(1);
+        
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String[] segments = exchange.getRequestURI().getPath().split("/");
+            // "", "api", "user", id, "summary"
+            if (segments.length != 5 || !"summary".equals(segments[4]) || segments[3].isEmpty()) {
+                sendText(exchange, 404, "Not found");
+                return;
+            }
+            String userId = segments[3];
+            
+            RequestDeadline deadline = RequestDeadline.of(exchange);
+            Instant until = deadline != null ? deadline.toInstant() : Instant.now().plus(DEFAULT_TIMEOUT);
+            try {
+                DatabaseOperationsExample.UserSummary summary =
+                        DatabaseOperationsExample.fetchUserSummary(userId, until);
+                String response = String.format(Locale.ROOT,
+                        "{\"id\":\"%s\",\"name\":\"%s\",\"email\":\"%s\",\"orders\":%d,\"total\":%.2f}",
+                        summary.user.id, summary.user.name, summary.user.email,
+                        summary.orders.size(), summary.orderTotal());
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                sendText(exchange, 200, response);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof NoSuchElementException) {
+                    sendText(exchange, 404, e.getCause().getMessage());
+                } else {
+                    logger.warn("User summary lookup for {} failed", userId, e.getCause());
+                    sendText(exchange, 502, "Lookup failed");
+                }
+            } catch (TimeoutException e) {
+                sendText(exchange, 504, "Lookup timed out");
+            } catch (InterruptedException e) {
+                // Cancelled by the request deadline; the DeadlineFilter answers for us
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+            byte[] body = text.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
             }
         }
     }
@@ -152,16 +386,112 @@ public class HttpServerExample {
         public void handle(HttpExchange exchange) throws IOException {
             StringBuilder response = new StringBuilder();
             response.append("Server Statistics:\n\n");
-            response.append("Total requests: ").append(totalRequests.get()).append("\n");
-            response.append("Fast requests: ").append(fastRequests.get()).append("\n");
-            response.append("Slow requests: ").append(slowRequests.get()).append("\n");
-            response.append("Active requests: ").append(activeRequests.get()).append("\n");
+            response.append("Total requests: ").append(totalRequests.sum()).append("\n");
+            response.append("Fast requests: ").append(fastRequests.sum()).append("\n");
+            response.append("Slow requests: ").append(slowRequests.sum()).append("\n");
+            response.append("Active requests: ").append(activeRequests.sum()).append("\n");
+            if (!concurrencyLimits.isEmpty()) {
+                response.append("\nConcurrency limits:\n");
+                concurrencyLimits.forEach(limiter -> limiter.appendTo(response));
+            }
+            if (!deadlines.isEmpty()) {
+                response.append("\nCancelled requests:\n");
+                deadlines.forEach(deadline -> deadline.appendTo(response));
+            }
+            response.append("\nLatency by endpoint and status:\n");
+            latencyMetrics.appendTo(response);
+            response.append('\n');
+            watchdog.appendTo(response);
+            engine.connectionMetrics().ifPresent(metrics -> {
+                response.append("\nConnections (").append(engine.name()).append(" engine):\n");
+                metrics.appendTo(response, 5);
+            });
             
-            exchange.getResponseHeaders().add("Content-Type", "text/plain");
-            exchange.sendResponseHeaders(200, response.length());
+            byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
             
             try (OutputStream os = exchange.getResponseBody()) {
-                os.write(response.toString().getBytes());
+                os.write(body);
+            }
+        }
+    }
+
+    /**
+     * A handler that returns the sites where virtual threads were pinned since the server
+     * started, as JSON ranked by total pinned time; ?top=N limits the list (default 10).
+     */
+    class PinningHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            int top = 10;
+            String query = exchange.getRequestURI().getQuery();
+            if (query != null && query.startsWith("top=")) {
+                try {
+                    top = Integer.parseInt(query.substring("top=".length()));
+                } catch (NumberFormatException e) {
+                    exchange.sendResponseHeaders(400, -1);
+                    exchange.close();
+                    return;
+                }
+            }
+            
+            byte[] body = pinning.toJson(top).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    /**
+     * A handler that returns the server JVM's telemetry samples as JSON, all of them or, with
+     * ?since=&lt;epoch millis&gt;, those taken since then, so a load generator in another
+     * process can attach them to its results.
+     */
+    class TelemetryHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long since = 0;
+            String query = exchange.getRequestURI().getQuery();
+            if (query != null && query.startsWith("since=")) {
+                try {
+                    since = Long.parseLong(query.substring("since=".length()));
+                } catch (NumberFormatException e) {
+                    exchange.sendResponseHeaders(400, -1);
+                    exchange.close();
+                    return;
+                }
+            }
+            
+            byte[] body = JvmTelemetry.toJson(telemetry.samplesSince(since)).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    /**
+     * A handler that exposes the latency histograms in Prometheus text format.
+     */
+    class PrometheusHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            StringBuilder response = new StringBuilder();
+            latencyMetrics.appendPrometheus(response);
+            watchdog.appendPrometheus(response);
+            byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+            
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, body.length);
+            
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
             }
         }
     }
@@ -173,6 +503,9 @@ public class HttpServerExample {
         logger.info("=== HTTP Server with Virtual Threads Example ===");
         
         HttpServerExample example = new HttpServerExample();
+        // Drain on SIGTERM too, so a rolling restart does not cut off in-flight requests
+        Thread drainHook = new Thread(example::stopServer, "http-server-drain");
+        Runtime.getRuntime().addShutdownHook(drainHook);
         
         try {
             example.startServer();
@@ -186,10 +519,16 @@ public class HttpServerExample {
                 Thread.currentThread().interrupt();
             }
             
-            example.stopServer();
-            
         } catch (IOException e) {
             logger.error("Error running HTTP server", e);
+        } finally {
+            example.stopServer();
+            // Each run from the menu registers a hook; drop it so stopped servers are not kept around
+            try {
+                Runtime.getRuntime().removeShutdownHook(drainHook);
+            } catch (IllegalStateException e) {
+                // The JVM is already shutting down and the hook is running
+            }
         }
         
         logger.info("=== End of HTTP Server Example ===");
@@ -0,0 +1,99 @@
+package com.example.app.virtualthreads;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records response times and outcomes into the current interval, and hands a reader the
+ * finished interval without ever blocking the writers.
+ *
+ * Two sets of counters take turns: writers record into the active one while the reader
+ * owns the other. To close an interval the reader swaps them and then waits until every
+ * writer that might still be using the old set has left it, using the writer-reader phaser
+ * scheme of HdrHistogram's Recorder: a writer brackets its recording with an increment of a
+ * shared start epoch and of the end epoch of its phase; the reader flips the phase and
+ * waits for the old phase's end epoch to catch up with its start value. Writers pay two
+ * atomic increments and never wait; only the reader spins, briefly.
+ */
+public class IntervalRecorder {
+    
+    private final AtomicLong startEpoch = new AtomicLong(0);
+    private final AtomicLong evenEndEpoch = new AtomicLong(0);
+    private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+    private volatile Interval active = new Interval();
+    private Interval inactive = new Interval();
+    
+    /**
+     * Records one completed request.
+     */
+    public void record(long responseTimeNanos, boolean success) {
+        long epoch = startEpoch.getAndIncrement();
+        try {
+            active.record(responseTimeNanos, success);
+        } finally {
+            (epoch < 0 ? oddEndEpoch : evenEndEpoch).getAndIncrement();
+        }
+    }
+    
+    /**
+     * Ends the current interval and returns it; it stays valid until the next call. Must be
+     * called from one reader thread at a time.
+     */
+    public synchronized Interval nextInterval() {
+        inactive.reset();
+        Interval finished = active;
+        active = inactive;
+        inactive = finished;
+        flipPhase();
+        return finished;
+    }
+    
+    private void flipPhase() {
+        boolean nextPhaseIsEven = startEpoch.get() < 0;
+        long initialStartValue = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+        (nextPhaseIsEven ? evenEndEpoch : oddEndEpoch).set(initialStartValue);
+        long startValueAtFlip = startEpoch.getAndSet(initialStartValue);
+        AtomicLong previousEndEpoch = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+        // Writers that started in the old phase are at most one recording away from done
+        while (previousEndEpoch.get() != startValueAtFlip) {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+    
+    /**
+     * The requests completed in one interval.
+     */
+    public static class Interval {
+        private final LatencyHistogram responseTime = new LatencyHistogram();
+        private final LongAdder ok = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        
+        void record(long responseTimeNanos, boolean success) {
+            responseTime.record(responseTimeNanos);
+            if (success) {
+                ok.increment();
+            } else {
+                errors.increment();
+            }
+        }
+        
+        void reset() {
+            responseTime.reset();
+            ok.reset();
+            errors.reset();
+        }
+        
+        public LatencyHistogram responseTime() {
+            return responseTime;
+        }
+        
+        public long ok() {
+            return ok.sum();
+        }
+        
+        public long errors() {
+            return errors.sum();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,207 @@
+package com.example.app.virtualthreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Turns an {@link IntervalRecorder} into a time series: a reporter thread closes an interval
+ * every period (1s by default), logs a live line with its throughput, error rate, p50 and
+ * p99, and keeps the row. On close the rows are written next to the scenario's results, as
+ * &lt;name&gt;-intervals-&lt;UTC timestamp&gt;.csv and .json.
+ *
+ * Totals over a whole run hide how it got there: a slow warmup, a GC pause or a throughput
+ * collapse halfway through all average out. The series shows them, and intervals that overlap
+ * the warmup are marked, so the measured ones can be told apart.
+ */
+public final class IntervalReporter implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(IntervalReporter.class);
+    
+    private final String name;
+    private final IntervalRecorder recorder;
+    private final long periodNanos;
+    private final long startNanos;
+    private final long measureStartNanos;
+    private final Instant startTime = Instant.now();
+    private final List<Row> rows = new ArrayList<>();
+    private final Thread thread;
+    private volatile boolean stopped;
+    private long intervalStartNanos;
+    
+    /**
+     * Starts reporting; the recorder should start receiving requests now.
+     *
+     * @param warmup intervals starting before this much time has passed are marked as warmup
+     */
+    public IntervalReporter(String name, IntervalRecorder recorder, Duration period, Duration warmup) {
+        if (period.isZero() || period.isNegative()) {
+            throw new IllegalArgumentException("interval must be positive: " + period);
+        }
+        this.name = name;
+        this.recorder = recorder;
+        this.periodNanos = period.toNanos();
+        this.startNanos = System.nanoTime();
+        this.measureStartNanos = startNanos + warmup.toNanos();
+        this.intervalStartNanos = startNanos;
+        recorder.nextInterval();
+        this.thread = Thread.ofPlatform().name("interval-reporter").daemon().start(this::run);
+    }
+    
+    public IntervalRecorder recorder() {
+        return recorder;
+    }
+    
+    private void run() {
+        long next = startNanos + periodNanos;
+        while (!stopped) {
+            long remaining = next - System.nanoTime();
+            if (remaining > 0) {
+                LockSupport.parkNanos(this, remaining);
+                continue;
+            }
+            report(System.nanoTime());
+            next += periodNanos;
+        }
+    }
+    
+    private synchronized void report(long now) {
+        IntervalRecorder.Interval interval = recorder.nextInterval();
+        LatencyHistogram responseTime = interval.responseTime();
+        Row row = new Row((intervalStartNanos - startNanos) / 1e9, (now - intervalStartNanos) / 1e9,
+                interval.ok(), interval.errors(), responseTime.valueAtPercentile(50) / 1e6,
+                responseTime.valueAtPercentile(99) / 1e6, responseTime.maxNanos() / 1e6, intervalStartNanos < measureStartNanos);
+        intervalStartNanos = now;
+        rows.add(row);
+        logger.info(String.format("[%s %6.1fs] %8.1f req/s  err %5.2f%%  p50 %8.2f ms  p99 %8.2f ms  max %8.2f ms%s",
+                name, row.start + row.seconds, row.throughput(), row.errorRate() * 100, row.p50Ms, row.p99Ms,
+                row.maxMs, row.warmup ? "  (warmup)" : ""));
+    }
+    
+    /**
+     * Stops the reporter thread, reports the last, partial interval and writes the files.
+     */
+    @Override
+    public void close() {
+        stopped = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long now = System.nanoTime();
+        // A sliver of an interval says nothing about throughput
+        if (now - intervalStartNanos > periodNanos / 10) {
+            report(now);
+        }
+        write();
+    }
+    
+    public synchronized List<Row> rows() {
+        return List.copyOf(rows);
+    }
+    
+    /**
+     * Adds the throughput of every full measured interval as the samples of one metric, so a
+     * comparison sees the run-to-run spread rather than a single total.
+     */
+    public void addTo(BenchmarkReport report, String prefix) {
+        double fullInterval = periodNanos / 1e9 * 0.9;
+        double[] throughput = rows().stream()
+                .filter(row -> !row.warmup && row.seconds >= fullInterval && row.requests() > 0)
+                .mapToDouble(Row::throughput)
+                .toArray();
+        if (throughput.length > 0) {
+            report.samples(prefix + "throughput.interval", "req/s", false, throughput);
+        }
+    }
+    
+    private void write() {
+        List<Row> snapshot = rows();
+        if (snapshot.isEmpty()) {
+            return;
+        }
+        StringBuilder csv = new StringBuilder("start_s,seconds,ok,errors,throughput,error_rate,p50_ms,p99_ms,max_ms,warmup\n");
+        StringBuilder json = new StringBuilder("{\n  \"name\": ");
+        Json.quote(json, name).append(",\n  \"start\": ");
+        Json.quote(json, startTime.toString()).append(",\n  \"intervals\": [");
+        String separator = "\n";
+        for (Row row : snapshot) {
+            csv.append(String.format("%.3f,%.3f,%d,%d,%.1f,%.4f,%.3f,%.3f,%.3f,%s%n", row.start, row.seconds, row.ok,
+                    row.errors, row.throughput(), row.errorRate(), row.p50Ms, row.p99Ms, row.maxMs, row.warmup));
+            json.append(separator).append("    {\"start\": ");
+            Json.number(json, row.start).append(", \"seconds\": ");
+            Json.number(json, row.seconds).append(", \"ok\": ").append(row.ok);
+            json.append(", \"errors\": ").append(row.errors).append(", \"throughput\": ");
+            Json.number(json, row.throughput()).append(", \"p50\": ");
+            Json.number(json, row.p50Ms).append(", \"p99\": ");
+            Json.number(json, row.p99Ms).append(", \"max\": ");
+            Json.number(json, row.maxMs).append(", \"warmup\": ").append(row.warmup).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+        
+        Path csvFile = BenchmarkReport.resultsFile(name + "-intervals", startTime, ".csv");
+        Path jsonFile = BenchmarkReport.resultsFile(name + "-intervals", startTime, ".json");
+        try {
+            Files.createDirectories(csvFile.getParent());
+            Files.writeString(csvFile, csv, StandardCharsets.UTF_8);
+            Files.writeString(jsonFile, json, StandardCharsets.UTF_8);
+            logger.info("Wrote {} intervals to {}", snapshot.size(), csvFile.toAbsolutePath());
+        } catch (IOException e) {
+            logger.warn("Could not write intervals to {}: {}", csvFile, e.toString());
+        }
+    }
+    
+    /**
+     * One closed interval. Latencies are in milliseconds, times in seconds from the start.
+     */
+    public static class Row {
+        final double start;
+        final double seconds;
+        final long ok;
+        final long errors;
+        final double p50Ms;
+        final double p99Ms;
+        final double maxMs;
+        final boolean warmup;
+        
+        Row(double start, double seconds, long ok, long errors, double p50Ms, double p99Ms, double maxMs,
+                boolean warmup) {
+            this.start = start;
+            this.seconds = seconds;
+            this.ok = ok;
+            this.errors = errors;
+            this.p50Ms = p50Ms;
+            this.p99Ms = p99Ms;
+            this.maxMs = maxMs;
+            this.warmup = warmup;
+        }
+        
+        public long requests() {
+            return ok + errors;
+        }
+        
+        public double throughput() {
+            return seconds > 0 ? requests() / seconds : 0;
+        }
+        
+        public double errorRate() {
+            return requests() > 0 ? (double) errors / requests() : 0;
+        }
+        
+        public boolean warmup() {
+            return warmup;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.example.app.virtualthreads;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Load client backed by java.net.http.HttpClient, with response handling on virtual threads
+ * or on a given executor.
+ *
+ * Requests are built once per {@link LoadRequest} and reused, and bodies are discarded unread, so the
+ * client spends as little as possible per request. Every request has a timeout, so that a
+ * stalled server fails requests, which the generators count as errors, instead of leaving
+ * a closed-loop user waiting forever.
+ */
+public class JdkLoadClient implements LoadClient {
+    
+    private final String baseUrl;
+    private final String name;
+    private final ExecutorService executor;
+    private final Duration timeout;
+    private final HttpClient client;
+    private final Map<LoadRequest, HttpRequest> requests = new ConcurrentHashMap<>();
+    
+    public JdkLoadClient(String baseUrl, Duration timeout) {
+        this(baseUrl, "jdk", Executors.newVirtualThreadPerTaskExecutor(), timeout);
+    }
+    
+    /**
+     * Creates a client whose HttpClient runs on the executor, which it shuts down on close.
+     *
+     * @param timeout time a request may take until it fails with an HttpTimeoutException
+     */
+    public JdkLoadClient(String baseUrl, String name, ExecutorService executor, Duration timeout) {
+        this.baseUrl = baseUrl;
+        this.name = name;
+        this.executor = executor;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+    
+    @Override
+    public CompletableFuture<Integer> send(LoadRequest request) {
+        HttpRequest httpRequest = requests.computeIfAbsent(request, this::build);
+        return client.sendAsync(httpRequest, HttpResponse.BodyHandlers.discarding())
+                .thenApply(HttpResponse::statusCode);
+    }
+    
+    private HttpRequest build(LoadRequest request) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + request.path()))
+                .timeout(timeout);
+        if (request.contentType() != null) {
+            builder.header("Content-Type", request.contentType());
+        }
+        return builder.method(request.method(), request.hasBody()
+                ? HttpRequest.BodyPublishers.ofByteArray(request.body())
+                : HttpRequest.BodyPublishers.noBody()).build();
+    }
+    
+    @Override
+    public String name() {
+        return name;
+    }
+    
+    @Override
+    public void close() {
+        client.close();
+        executor.close();
+    }
+}
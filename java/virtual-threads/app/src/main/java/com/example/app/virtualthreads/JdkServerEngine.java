@@ -0,0 +1,52 @@
+package com.example.app.virtualthreads;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+/**
+ * Server engine backed by the JDK's built-in com.sun.net.httpserver.HttpServer.
+ *
+ * The JDK server accepts and parses every connection on a single dispatcher thread
+ * and only hands the finished exchange to the executor.
+ */
+public class JdkServerEngine implements ServerEngine {
+    
+    private final HttpServer server;
+    
+    public JdkServerEngine() {
+        try {
+            // Create unbound so contexts can be registered before start()
+            this.server = HttpServer.create();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    @Override
+    public HttpContext createContext(String path, HttpHandler handler) {
+        return server.createContext(path, handler);
+    }
+    
+    @Override
+    public void start(InetSocketAddress address, Executor executor) throws IOException {
+        server.bind(address, 0);
+        server.setExecutor(executor);
+        server.start();
+    }
+    
+    @Override
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+    }
+    
+    @Override
+    public String name() {
+        return "jdk";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,420 @@
+package com.example.app.virtualthreads;
+
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Samples what the JVM itself is doing while a benchmark runs: allocation rate, GC count,
+ * time and pauses, heap use, how busy the virtual-thread carriers are and process CPU, once
+ * per interval.
+ *
+ * A throughput number says little without these: a run that allocates a gigabyte per second
+ * or spends a tenth of its time in GC pauses measures the collector as much as the code,
+ * and carriers that are busy all the time mean the CPU, not the threading model, was the
+ * limit. The counters come from the management beans; GC pauses come from a JFR stream of
+ * jdk.GarbageCollection events, since the beans only report total collection time, which
+ * for concurrent collectors is not pause time. Without JFR the pause columns stay empty.
+ *
+ * Carriers are the scheduler's CarrierThreads; their CPU time includes the virtual threads
+ * mounted on them, so their utilisation is that CPU time over the interval times the
+ * scheduler's parallelism.
+ */
+public final class JvmTelemetry implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(JvmTelemetry.class);
+    private static final String CARRIER_CLASS = "jdk.internal.misc.CarrierThread";
+    
+    private final long periodNanos;
+    private final int maxSamples;
+    private final ArrayDeque<Sample> samples = new ArrayDeque<>();
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .toList();
+    private final int parallelism = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+            Runtime.getRuntime().availableProcessors());
+    private final Map<Long, Long> carrierCpuNanos = new HashMap<>();
+    private final RecordingStream gcEvents;
+    private final Thread thread;
+    private volatile boolean stopped;
+    
+    // Sampler thread state: the counters at the start of the current interval
+    private long lastNanos;
+    private long lastAllocated;
+    private long lastGcCount;
+    private long lastGcMillis;
+    
+    // Accumulated by the JFR stream's thread, taken by the sampler
+    private double pauseMillis;
+    private double maxPauseMillis;
+    
+    /**
+     * Starts sampling every period and keeps the most recent maxSamples samples.
+     */
+    public JvmTelemetry(Duration period, int maxSamples) {
+        if (period.isZero() || period.isNegative()) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        this.periodNanos = period.toNanos();
+        this.maxSamples = maxSamples;
+        this.gcEvents = startGcEvents();
+        lastNanos = System.nanoTime();
+        lastAllocated = threads.getTotalThreadAllocatedBytes();
+        lastGcCount = gcCount();
+        lastGcMillis = gcMillis();
+        carrierCpuDelta();
+        // The first call returns the load since an unspecified time
+        os.getProcessCpuLoad();
+        this.thread = Thread.ofPlatform().name("jvm-telemetry").daemon().start(this::run);
+    }
+    
+    /**
+     * Starts sampling every second, keeping the last ten minutes.
+     */
+    public static JvmTelemetry start() {
+        return new JvmTelemetry(Duration.ofSeconds(1), 600);
+    }
+    
+    private RecordingStream startGcEvents() {
+        try {
+            RecordingStream stream = new RecordingStream();
+            stream.enable("jdk.GarbageCollection");
+            stream.setMaxAge(Duration.ofSeconds(10));
+            stream.onEvent("jdk.GarbageCollection", event -> {
+                double sum = event.getDuration("sumOfPauses").toNanos() / 1e6;
+                double longest = event.getDuration("longestPause").toNanos() / 1e6;
+                synchronized (this) {
+                    pauseMillis += sum;
+                    maxPauseMillis = Math.max(maxPauseMillis, longest);
+                }
+            });
+            stream.startAsync();
+            return stream;
+        } catch (RuntimeException e) {
+            logger.warn("JFR streaming unavailable, GC pauses will not be reported: {}", e.toString());
+            return null;
+        }
+    }
+    
+    private void run() {
+        long next = lastNanos + periodNanos;
+        while (!stopped) {
+            long remaining = next - System.nanoTime();
+            if (remaining > 0) {
+                LockSupport.parkNanos(this, remaining);
+                continue;
+            }
+            sample();
+            next += periodNanos;
+        }
+    }
+    
+    private void sample() {
+        long now = System.nanoTime();
+        double seconds = (now - lastNanos) / 1e9;
+        long allocated = threads.getTotalThreadAllocatedBytes();
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long carrierCpu = carrierCpuDelta();
+        double pauses;
+        double maxPause;
+        synchronized (this) {
+            pauses = gcEvents == null ? Double.NaN : pauseMillis;
+            maxPause = gcEvents == null ? Double.NaN : maxPauseMillis;
+            pauseMillis = 0;
+            maxPauseMillis = 0;
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long liveAfterGc = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null) {
+                liveAfterGc += usage.getUsed();
+            }
+        }
+        
+        Sample sample = new Sample(System.currentTimeMillis(), seconds,
+                (allocated - lastAllocated) / seconds / (1024 * 1024), gcCount - lastGcCount, gcMillis - lastGcMillis,
+                pauses, maxPause, heap.getUsed() / (1024.0 * 1024), heap.getCommitted() / (1024.0 * 1024),
+                liveAfterGc / (1024.0 * 1024), carrierCount(), carrierCpu / (seconds * 1e9 * parallelism),
+                os.getProcessCpuLoad());
+        lastNanos = now;
+        lastAllocated = allocated;
+        lastGcCount = gcCount;
+        lastGcMillis = gcMillis;
+        synchronized (samples) {
+            samples.addLast(sample);
+            if (samples.size() > maxSamples) {
+                samples.removeFirst();
+            }
+        }
+        logger.debug("{}", sample);
+    }
+    
+    private long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+    
+    private long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+    
+    /**
+     * CPU time the carriers used since the last call; carriers that have appeared since
+     * count from zero, and those that have gone are forgotten.
+     */
+    private long carrierCpuDelta() {
+        long delta = 0;
+        Map<Long, Long> current = new HashMap<>();
+        for (Thread carrier : carriers()) {
+            long cpu = threads.getThreadCpuTime(carrier.threadId());
+            if (cpu < 0) {
+                continue;
+            }
+            current.put(carrier.threadId(), cpu);
+            delta += cpu - carrierCpuNanos.getOrDefault(carrier.threadId(), 0L);
+        }
+        carrierCpuNanos.clear();
+        carrierCpuNanos.putAll(current);
+        return delta;
+    }
+    
+    private int carrierCount() {
+        return carrierCpuNanos.size();
+    }
+    
+    private static List<Thread> carriers() {
+        List<Thread> carriers = new ArrayList<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getClass().getName().equals(CARRIER_CLASS)) {
+                carriers.add(thread);
+            }
+        }
+        return carriers;
+    }
+    
+    /**
+     * The samples taken so far, oldest first.
+     */
+    public List<Sample> samples() {
+        synchronized (samples) {
+            return List.copyOf(samples);
+        }
+    }
+    
+    /**
+     * The samples taken at or after the given epoch milliseconds.
+     */
+    public List<Sample> samplesSince(long epochMillis) {
+        return samples().stream().filter(sample -> sample.epochMillis >= epochMillis).toList();
+    }
+    
+    /**
+     * Takes a last sample of the current interval and stops sampling.
+     */
+    @Override
+    public void close() {
+        stopped = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (gcEvents != null) {
+            // Waits until the stream has delivered the events recorded so far
+            gcEvents.stop();
+        }
+        if (System.nanoTime() - lastNanos > periodNanos / 10) {
+            sample();
+        }
+        if (gcEvents != null) {
+            gcEvents.close();
+        }
+    }
+    
+    /**
+     * Adds the samples to the report under the given prefix: per-interval allocation rate,
+     * heap use, carrier utilisation and process CPU as samples, GC totals as single values.
+     */
+    public static void addTo(BenchmarkReport report, String prefix, List<Sample> samples) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        report.samples(prefix + "jvm.allocationRate", "MB/s", true,
+                samples.stream().mapToDouble(sample -> sample.allocationMbPerSecond).toArray());
+        report.samples(prefix + "jvm.heap.used", "MB", true,
+                samples.stream().mapToDouble(sample -> sample.heapUsedMb).toArray());
+        report.value(prefix + "jvm.heap.liveAfterGc.max", "MB", true,
+                samples.stream().mapToDouble(sample -> sample.liveAfterGcMb).max().orElse(0));
+        report.value(prefix + "jvm.gc.count", "collections", true,
+                samples.stream().mapToLong(sample -> sample.gcCount).sum());
+        report.value(prefix + "jvm.gc.time", "ms", true, samples.stream().mapToLong(sample -> sample.gcMillis).sum());
+        if (!Double.isNaN(samples.get(0).pauseMillis)) {
+            report.value(prefix + "jvm.gc.pause.total", "ms", true,
+                    samples.stream().mapToDouble(sample -> sample.pauseMillis).sum());
+            report.value(prefix + "jvm.gc.pause.max", "ms", true,
+                    samples.stream().mapToDouble(sample -> sample.maxPauseMillis).max().orElse(0));
+        }
+        report.samples(prefix + "jvm.carrier.utilization", "fraction", true,
+                samples.stream().mapToDouble(sample -> sample.carrierUtilization).toArray());
+        report.samples(prefix + "jvm.cpu.process", "fraction", true,
+                samples.stream().mapToDouble(sample -> sample.processCpu).toArray());
+    }
+    
+    /**
+     * Appends a one-line summary of the samples.
+     */
+    public static void appendTo(StringBuilder sb, String label, List<Sample> samples) {
+        if (samples.isEmpty()) {
+            sb.append(label).append(": no telemetry samples\n");
+            return;
+        }
+        double seconds = 0;
+        double allocatedMb = 0;
+        double carrierBusy = 0;
+        double cpu = 0;
+        double pauses = 0;
+        double maxPause = 0;
+        double maxHeap = 0;
+        long gcs = 0;
+        for (Sample sample : samples) {
+            seconds += sample.seconds;
+            allocatedMb += sample.allocationMbPerSecond * sample.seconds;
+            carrierBusy += sample.carrierUtilization * sample.seconds;
+            cpu += sample.processCpu * sample.seconds;
+            pauses += sample.pauseMillis;
+            maxPause = Math.max(maxPause, sample.maxPauseMillis);
+            maxHeap = Math.max(maxHeap, sample.heapUsedMb);
+            gcs += sample.gcCount;
+        }
+        String pauseSummary = Double.isNaN(pauses) ? "pauses n/a"
+                : String.format("pauses %.1f ms total / %.1f ms max", pauses, maxPause);
+        sb.append(String.format("%s: alloc %.1f MB/s, %d GCs, %s, heap %.0f MB peak, carriers %.0f%% busy, "
+                        + "process CPU %.0f%%%n", label, allocatedMb / seconds, gcs, pauseSummary, maxHeap,
+                carrierBusy / seconds * 100, cpu / seconds * 100));
+    }
+    
+    /**
+     * Writes the samples as a JSON object with a "samples" array.
+     */
+    public static String toJson(List<Sample> samples) {
+        StringBuilder sb = new StringBuilder("{\"samples\": [");
+        String separator = "\n";
+        for (Sample sample : samples) {
+            sb.append(separator).append("  {\"time\": ").append(sample.epochMillis);
+            Json.number(sb.append(", \"seconds\": "), sample.seconds);
+            Json.number(sb.append(", \"allocationMbPerSecond\": "), sample.allocationMbPerSecond);
+            sb.append(", \"gcCount\": ").append(sample.gcCount);
+            sb.append(", \"gcMillis\": ").append(sample.gcMillis);
+            Json.number(sb.append(", \"pauseMillis\": "), sample.pauseMillis);
+            Json.number(sb.append(", \"maxPauseMillis\": "), sample.maxPauseMillis);
+            Json.number(sb.append(", \"heapUsedMb\": "), sample.heapUsedMb);
+            Json.number(sb.append(", \"heapCommittedMb\": "), sample.heapCommittedMb);
+            Json.number(sb.append(", \"liveAfterGcMb\": "), sample.liveAfterGcMb);
+            sb.append(", \"carriers\": ").append(sample.carriers);
+            Json.number(sb.append(", \"carrierUtilization\": "), sample.carrierUtilization);
+            Json.number(sb.append(", \"processCpu\": "), sample.processCpu);
+            sb.append('}');
+            separator = ",\n";
+        }
+        return sb.append("\n]}\n").toString();
+    }
+    
+    /**
+     * Reads samples written by {@link #toJson}.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Sample> fromJson(String json) {
+        Map<String, Object> root = (Map<String, Object>) Json.parse(json);
+        List<Sample> samples = new ArrayList<>();
+        for (Object item : (List<Object>) root.getOrDefault("samples", List.of())) {
+            Map<String, Object> fields = (Map<String, Object>) item;
+            samples.add(new Sample((long) number(fields, "time"), number(fields, "seconds"),
+                    number(fields, "allocationMbPerSecond"), (long) number(fields, "gcCount"),
+                    (long) number(fields, "gcMillis"), number(fields, "pauseMillis"),
+                    number(fields, "maxPauseMillis"), number(fields, "heapUsedMb"),
+                    number(fields, "heapCommittedMb"), number(fields, "liveAfterGcMb"),
+                    (int) number(fields, "carriers"), number(fields, "carrierUtilization"),
+                    number(fields, "processCpu")));
+        }
+        return samples;
+    }
+    
+    private static double number(Map<String, Object> fields, String name) {
+        Object value = fields.get(name);
+        return value instanceof Double ? (Double) value : Double.NaN;
+    }
+    
+    /**
+     * What the JVM did during one interval. Rates are per second of the interval, sizes in
+     * MB, utilisation and CPU as fractions of 1.
+     */
+    public static class Sample {
+        final long epochMillis;
+        final double seconds;
+        final double allocationMbPerSecond;
+        final long gcCount;
+        final long gcMillis;
+        final double pauseMillis;
+        final double maxPauseMillis;
+        final double heapUsedMb;
+        final double heapCommittedMb;
+        final double liveAfterGcMb;
+        final int carriers;
+        final double carrierUtilization;
+        final double processCpu;
+        
+        Sample(long epochMillis, double seconds, double allocationMbPerSecond, long gcCount, long gcMillis,
+                double pauseMillis, double maxPauseMillis, double heapUsedMb, double heapCommittedMb,
+                double liveAfterGcMb, int carriers, double carrierUtilization, double processCpu) {
+            this.epochMillis = epochMillis;
+            this.seconds = seconds;
+            this.allocationMbPerSecond = allocationMbPerSecond;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+            this.pauseMillis = pauseMillis;
+            this.maxPauseMillis = maxPauseMillis;
+            this.heapUsedMb = heapUsedMb;
+            this.heapCommittedMb = heapCommittedMb;
+            this.liveAfterGcMb = liveAfterGcMb;
+            this.carriers = carriers;
+            this.carrierUtilization = carrierUtilization;
+            this.processCpu = processCpu;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("alloc %.1f MB/s, %d GCs (%d ms, pauses %.1f ms, max %.1f ms), heap %.0f/%.0f MB "
+                            + "(%.0f MB after GC), %d carriers %.0f%% busy, process CPU %.0f%%",
+                    allocationMbPerSecond, gcCount, gcMillis, pauseMillis, maxPauseMillis, heapUsedMb, heapCommittedMb,
+                    liveAfterGcMb, carriers, carrierUtilization * 100, processCpu * 100);
+        }
+    }
+}
\ No newline at end of file
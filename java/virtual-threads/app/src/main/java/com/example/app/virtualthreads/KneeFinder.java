@@ -0,0 +1,173 @@
+package com.example.app.virtualthreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleFunction;
+
+/**
+ * Steps the load on a server upward, holding each level for a full generator run, and finds
+ * where it saturates.
+ *
+ * Each step is checked against a service-level objective: p99 response time within the
+ * target, error rate within the budget and, for an arrival rate, at least 90% of the offered
+ * rate answered successfully. Throughput here is always goodput (successful responses). The
+ * highest passing level is the maximum sustainable load. The knee is reported separately, as
+ * the first step where adding load stopped paying off: throughput grew by less than half of
+ * the added load (per user, for user counts, relative to the first step), or p99 more than
+ * doubled over the best p99 seen so far and passed half the target. The ramp stops at the
+ * first step that fails the objective.
+ */
+public class KneeFinder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(KneeFinder.class);
+    private static final double MIN_ANSWERED_RATIO = 0.9;
+    
+    private final String unit;
+    private final boolean openLoop;
+    private final long sloP99Nanos;
+    private final double maxErrorRate;
+    private final List<Step> steps = new ArrayList<>();
+    
+    /**
+     * Creates a finder.
+     *
+     * @param openLoop true if the load levels are arrival rates, false if they are user counts
+     */
+    public KneeFinder(boolean openLoop, Duration sloP99, double maxErrorRate) {
+        this.openLoop = openLoop;
+        this.unit = openLoop ? "req/s" : "users";
+        this.sloP99Nanos = sloP99.toNanos();
+        this.maxErrorRate = maxErrorRate;
+    }
+    
+    /**
+     * Runs one step per level until a step misses the objective or the levels run out.
+     *
+     * @param runStep runs the generator at a level and returns its result
+     */
+    public List<Step> ramp(double[] levels, DoubleFunction<LoadResult> runStep) {
+        for (double level : levels) {
+            LoadResult result = runStep.apply(level);
+            Step step = new Step(level, result);
+            steps.add(step);
+            logger.info("Step {} {}: {} ok req/s, p99 {}ms, errors {}% -> {}", String.format("%.0f", level), unit,
+                    String.format("%.1f", step.throughput), String.format("%.2f", step.p99Nanos / 1e6),
+                    String.format("%.2f", step.errorRate * 100), step.passed ? "within SLO" : "SLO missed");
+            if (!step.passed) {
+                break;
+            }
+        }
+        return steps;
+    }
+    
+    /**
+     * Highest step within the objective, or null if even the first step missed it.
+     */
+    public Step maxSustainable() {
+        Step best = null;
+        for (Step step : steps) {
+            if (step.passed) {
+                best = step;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * First step past which more load stopped paying off, or null if there was none.
+     */
+    public Step knee() {
+        if (steps.size() < 2) {
+            return null;
+        }
+        Step first = steps.get(0);
+        double baselineEfficiency = first.throughput / first.level;
+        long bestP99 = first.p99Nanos;
+        for (int i = 1; i < steps.size(); i++) {
+            Step previous = steps.get(i - 1);
+            Step step = steps.get(i);
+            double gain = (step.throughput - previous.throughput) / (step.level - previous.level);
+            // An arrival rate should be answered one for one; a user adds one user's worth
+            double expected = openLoop ? 1.0 : baselineEfficiency;
+            // Doubling from a sub-millisecond p99 is noise, so latency only counts once it nears the SLO
+            boolean latencyBlewUp = step.p99Nanos > 2 * bestP99 && step.p99Nanos > sloP99Nanos / 2;
+            if (gain < expected / 2 || latencyBlewUp) {
+                return previous;
+            }
+            bestP99 = Math.min(bestP99, step.p99Nanos);
+        }
+        return null;
+    }
+    
+    /**
+     * Appends the step table and the verdict.
+     */
+    public void appendTo(StringBuilder sb) {
+        sb.append(String.format("%n=== RAMP (SLO p99 <= %.0fms, errors <= %.1f%%) ===%n%10s %10s %10s %10s %9s  %s%n",
+                sloP99Nanos / 1e6, maxErrorRate * 100, unit, "ok req/s", "p50 ms", "p99 ms", "errors", "SLO"));
+        for (Step step : steps) {
+            sb.append(String.format("%10.0f %10.1f %10.2f %10.2f %8.2f%%  %s%n", step.level, step.throughput,
+                    step.p50Nanos / 1e6, step.p99Nanos / 1e6, step.errorRate * 100, step.passed ? "ok" : "missed"));
+        }
+        Step knee = knee();
+        Step max = maxSustainable();
+        sb.append("Knee: ").append(knee == null ? "not reached" : String.format("%.0f %s (%.1f req/s)",
+                knee.level, unit, knee.throughput)).append("\n");
+        sb.append("Max sustainable under SLO: ").append(max == null ? "none" : String.format("%.0f %s (%.1f req/s)",
+                max.level, unit, max.throughput)).append("\n");
+    }
+    
+    /**
+     * Load levels from start to max, adding step each time, or multiplying by factor if it
+     * is greater than 1.
+     *
+     * @throws IllegalArgumentException if start is below 1, or the chosen increment
+     *                                  (step, or factor) would not make the levels grow
+     */
+    public static double[] levels(double start, double max, double step, double factor) {
+        // Levels are rounded down, and a level of 0 would divide by zero in knee()
+        if (!(start >= 1)) {
+            throw new IllegalArgumentException("start must be at least 1 but was " + start);
+        }
+        if (factor <= 1 && !(step > 0)) {
+            throw new IllegalArgumentException("step must be positive (or factor above 1) but was " + step);
+        }
+        if (Double.isNaN(factor) || Double.isInfinite(factor) || Double.isInfinite(max)) {
+            throw new IllegalArgumentException("factor and max must be finite");
+        }
+        List<Double> levels = new ArrayList<>();
+        for (double level = start; level <= max; level = factor > 1 ? level * factor : level + step) {
+            levels.add(Math.floor(level));
+        }
+        return levels.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+    
+    /**
+     * The outcome of one load level.
+     */
+    public class Step {
+        public final double level;
+        public final double throughput;
+        public final long p50Nanos;
+        public final long p99Nanos;
+        public final double errorRate;
+        public final boolean passed;
+        
+        Step(double level, LoadResult result) {
+            LoadResult.Endpoint total = result.total();
+            long requests = total.ok() + total.errors();
+            this.level = level;
+            this.errorRate = requests == 0 ? 1.0 : (double) total.errors() / requests;
+            // Goodput: fast error responses must not look like extra capacity
+            this.throughput = result.throughput() * (1 - errorRate);
+            this.p50Nanos = total.responseTime().valueAtPercentile(50);
+            this.p99Nanos = total.responseTime().valueAtPercentile(99);
+            this.passed = p99Nanos <= sloP99Nanos && errorRate <= maxErrorRate
+                    && (!openLoop || throughput >= level * MIN_ANSWERED_RATIO);
+        }
+    }
+}
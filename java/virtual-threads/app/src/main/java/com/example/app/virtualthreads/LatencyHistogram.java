@@ -0,0 +1,231 @@
+package com.example.app.virtualthreads;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free, allocation-free latency histogram with HDR-style log-linear buckets.
+ *
+ * Values (nanoseconds) below 128 get their own bucket; above that, every power-of-two range
+ * is split into 64 linear sub-buckets, so any recorded value is reported with a relative
+ * error below 1/64 (~1.6%). Recording is a single atomic increment on a precomputed index,
+ * and readers never block writers: a read taken while recording continues is simply a
+ * slightly stale view. Values larger than the trackable maximum are clamped to it.
+ */
+public class LatencyHistogram {
+    
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    // 2^42 ns is about 73 minutes, far beyond any latency this project produces
+    private static final long DEFAULT_MAX_VALUE = 1L << 42;
+    
+    private final long maxValue;
+    private final AtomicLongArray counts;
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+    
+    public LatencyHistogram() {
+        this(DEFAULT_MAX_VALUE);
+    }
+    
+    public LatencyHistogram(long maxValue) {
+        if (maxValue < SUB_BUCKET_COUNT) {
+            throw new IllegalArgumentException("maxValue must be at least " + SUB_BUCKET_COUNT);
+        }
+        this.maxValue = maxValue;
+        this.counts = new AtomicLongArray(indexFor(maxValue) + 1);
+    }
+    
+    /**
+     * Records one value, in nanoseconds.
+     */
+    public void record(long valueNanos) {
+        recordCount(valueNanos, 1);
+    }
+    
+    /**
+     * Records the same value several times.
+     */
+    public void recordCount(long valueNanos, long count) {
+        long value = Math.max(0, Math.min(valueNanos, maxValue));
+        counts.addAndGet(indexFor(value), count);
+        sum.add(value * count);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+    
+    /**
+     * Adds all counts of another histogram with the same maximum into this one.
+     */
+    public void add(LatencyHistogram other) {
+        if (other.counts.length() != counts.length()) {
+            throw new IllegalArgumentException("Histograms have different ranges");
+        }
+        for (int i = 0; i < counts.length(); i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        sum.add(other.sum.sum());
+        long otherMax = other.max.get();
+        long currentMax = max.get();
+        while (otherMax > currentMax && !max.compareAndSet(currentMax, otherMax)) {
+            currentMax = max.get();
+        }
+    }
+    
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+        max.set(0);
+    }
+    
+    public long totalCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+    
+    public long maxNanos() {
+        return max.get();
+    }
+    
+    public long sumNanos() {
+        return sum.sum();
+    }
+    
+    public double meanNanos() {
+        long total = totalCount();
+        return total == 0 ? 0.0 : (double) sum.sum() / total;
+    }
+    
+    /**
+     * Standard deviation of the recorded values, taking each value as the middle of its bucket.
+     */
+    public double stdDevNanos() {
+        long total = totalCount();
+        if (total < 2) {
+            return 0.0;
+        }
+        double mean = meanNanos();
+        double squares = 0;
+        long lowest = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long highest = highestEquivalentValue(i);
+            long count = counts.get(i);
+            if (count != 0) {
+                double deviation = (lowest + highest) / 2.0 - mean;
+                squares += deviation * deviation * count;
+            }
+            lowest = highest + 1;
+        }
+        return Math.sqrt(squares / (total - 1));
+    }
+    
+    /**
+     * Returns the value at the given percentile (0-100), as the highest value equivalent
+     * to the bucket the percentile falls into.
+     */
+    public long valueAtPercentile(double percentile) {
+        long total = totalCount();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    /**
+     * Returns the number of recorded values less than or equal to the given value.
+     *
+     * Counts are resolved at bucket granularity, which is all a Prometheus "le" bucket needs.
+     */
+    public long countAtOrBelow(long valueNanos) {
+        int lastIndex = indexFor(Math.max(0, Math.min(valueNanos, maxValue)));
+        long total = 0;
+        for (int i = 0; i <= lastIndex; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+    
+    /**
+     * Encodes the histogram as one line of text: the maximum trackable value, sum and largest
+     * recorded value, then index:count for each non-empty bucket. Used to ship histograms
+     * between processes, see {@link #decode}.
+     */
+    public String encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(maxValue).append(' ').append(sum.sum()).append(' ').append(max.get()).append(' ');
+        boolean first = true;
+        for (int i = 0; i < counts.length(); i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                sb.append(first ? "" : ",").append(i).append(':').append(count);
+                first = false;
+            }
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Rebuilds a histogram from the output of {@link #encode}.
+     */
+    public static LatencyHistogram decode(String text) {
+        String[] parts = text.trim().split(" ");
+        if (parts.length < 3) {
+            throw new IllegalArgumentException("Not an encoded histogram: " + text);
+        }
+        LatencyHistogram histogram = new LatencyHistogram(Long.parseLong(parts[0]));
+        histogram.sum.add(Long.parseLong(parts[1]));
+        histogram.max.set(Long.parseLong(parts[2]));
+        if (parts.length > 3) {
+            for (String bucket : parts[3].split(",")) {
+                int colon = bucket.indexOf(':');
+                histogram.counts.set(Integer.parseInt(bucket.substring(0, colon)),
+                        Long.parseLong(bucket.substring(colon + 1)));
+            }
+        }
+        return histogram;
+    }
+    
+    /**
+     * Returns the highest value that maps to the same bucket as the given bucket index.
+     */
+    public static long highestEquivalentValue(int index) {
+        int shift = shiftForIndex(index);
+        long subBucket = index - (long) SUB_BUCKET_HALF_COUNT * shift;
+        return ((subBucket + 1) << shift) - 1;
+    }
+    
+    static int indexFor(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_HALF_COUNT * shift + (int) (value >>> shift);
+    }
+    
+    private static int shiftForIndex(int index) {
+        return index < SUB_BUCKET_COUNT ? 0 : index / SUB_BUCKET_HALF_COUNT - 1;
+    }
+}
\ No newline at end of file
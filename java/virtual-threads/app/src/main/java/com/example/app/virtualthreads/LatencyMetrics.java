@@ -0,0 +1,112 @@
+package com.example.app.virtualthreads;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Per-endpoint, per-status-code latency histograms for the HTTP server.
+ *
+ * Each endpoint's histograms are resolved once, when its context is registered; at request
+ * time the status code indexes straight into an array, so the hot path does no map lookups,
+ * boxing or allocation once a status code has been seen. Rendering walks the histograms
+ * without locking, so scraping under load never blocks request threads.
+ */
+public class LatencyMetrics {
+    
+    private static final int MAX_STATUS_CODE = 599;
+    // Upper bounds of the exported Prometheus buckets, in seconds
+    private static final double[] PROMETHEUS_BUCKETS = {
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+    
+    private final Map<String, Endpoint> endpoints = new ConcurrentSkipListMap<>();
+    
+    /**
+     * Returns the histograms for the given endpoint, creating them on first use.
+     */
+    public Endpoint endpoint(String path) {
+        return endpoints.computeIfAbsent(path, Endpoint::new);
+    }
+    
+    /**
+     * Latency histograms of one endpoint, one per status code.
+     */
+    public static class Endpoint {
+        private final String path;
+        private final AtomicReferenceArray<LatencyHistogram> byStatus =
+                new AtomicReferenceArray<>(MAX_STATUS_CODE + 1);
+        
+        Endpoint(String path) {
+            this.path = path;
+        }
+        
+        /**
+         * Records a request latency for the given status code.
+         */
+        public void record(int statusCode, long latencyNanos) {
+            int status = statusCode < 0 || statusCode > MAX_STATUS_CODE ? 0 : statusCode;
+            LatencyHistogram histogram = byStatus.get(status);
+            if (histogram == null) {
+                byStatus.compareAndSet(status, null, new LatencyHistogram());
+                histogram = byStatus.get(status);
+            }
+            histogram.record(latencyNanos);
+        }
+    }
+    
+    /**
+     * Appends a human-readable percentile table to the builder.
+     */
+    public void appendTo(StringBuilder sb) {
+        for (Endpoint endpoint : endpoints.values()) {
+            for (int status = 0; status <= MAX_STATUS_CODE; status++) {
+                LatencyHistogram histogram = endpoint.byStatus.get(status);
+                if (histogram == null) {
+                    continue;
+                }
+                sb.append(String.format("%-14s %3d  count %8d  p50 %9.2fms  p99 %9.2fms  p999 %9.2fms  max %9.2fms%n",
+                        endpoint.path, status, histogram.totalCount(),
+                        toMillis(histogram.valueAtPercentile(50.0)),
+                        toMillis(histogram.valueAtPercentile(99.0)),
+                        toMillis(histogram.valueAtPercentile(99.9)),
+                        toMillis(histogram.maxNanos())));
+            }
+        }
+    }
+    
+    /**
+     * Appends all histograms in Prometheus text exposition format (version 0.0.4).
+     */
+    public void appendPrometheus(StringBuilder sb) {
+        String name = "http_server_request_duration_seconds";
+        sb.append("# HELP ").append(name).append(" HTTP request latency by endpoint and status.\n");
+        sb.append("# TYPE ").append(name).append(" histogram\n");
+        for (Endpoint endpoint : endpoints.values()) {
+            for (int status = 0; status <= MAX_STATUS_CODE; status++) {
+                LatencyHistogram histogram = endpoint.byStatus.get(status);
+                if (histogram == null) {
+                    continue;
+                }
+                String labels = "endpoint=\"" + endpoint.path + "\",status=\"" + status + "\"";
+                for (double bound : PROMETHEUS_BUCKETS) {
+                    long boundNanos = (long) (bound * TimeUnit.SECONDS.toNanos(1));
+                    sb.append(name).append("_bucket{").append(labels)
+                      .append(",le=\"").append(bound).append("\"} ")
+                      .append(histogram.countAtOrBelow(boundNanos)).append('\n');
+                }
+                long count = histogram.totalCount();
+                sb.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ")
+                  .append(count).append('\n');
+                sb.append(name).append("_sum{").append(labels).append("} ")
+                  .append(histogram.sumNanos() / 1e9).append('\n');
+                sb.append(name).append("_count{").append(labels).append("} ")
+                  .append(count).append('\n');
+            }
+        }
+    }
+    
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
\ No newline at end of file
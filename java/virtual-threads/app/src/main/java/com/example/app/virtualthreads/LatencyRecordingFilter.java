@@ -0,0 +1,39 @@
+package com.example.app.virtualthreads;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * Filter that records the latency of every exchange into its endpoint's histograms,
+ * keyed by the response status code.
+ *
+ * Exchanges that fail before sending headers are recorded as status 500.
+ */
+public class LatencyRecordingFilter extends Filter {
+    
+    private final LatencyMetrics.Endpoint endpoint;
+    
+    public LatencyRecordingFilter(LatencyMetrics.Endpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+    
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(exchange);
+            failed = false;
+        } finally {
+            int status = exchange.getResponseCode();
+            endpoint.record(failed && status == -1 ? 500 : status, System.nanoTime() - start);
+        }
+    }
+    
+    @Override
+    public String description() {
+        return "Records request latency per endpoint and status code";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,59 @@
+package com.example.app.virtualthreads;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Abstraction over the HTTP client used by {@link HttpLoadTester} to generate load.
+ *
+ * Sends are asynchronous so that an open-loop generator can keep its schedule no matter
+ * how slowly the server answers.
+ */
+public interface LoadClient extends AutoCloseable {
+    
+    /**
+     * Sends the request and completes with the response status code, or exceptionally if
+     * the request failed.
+     */
+    CompletableFuture<Integer> send(LoadRequest request);
+    
+    /**
+     * Short name of the client used in logs and reports.
+     */
+    String name();
+    
+    @Override
+    void close();
+    
+    /**
+     * Creates a client by name with default settings.
+     */
+    static LoadClient create(String name, String baseUrl) {
+        return create(name, baseUrl, LoadOptions.parse(new String[0], 0));
+    }
+    
+    /**
+     * Creates a client by name: "jdk" is java.net.http.HttpClient on virtual threads, "nio"
+     * is {@link NioLoadClient}, sized by the connections (default 256) and pipeline
+     * (default 1) options. Both use the timeout option as their request timeout (default 30s).
+     */
+    static LoadClient create(String name, String baseUrl, LoadOptions options) {
+        switch (name.toLowerCase()) {
+            case "jdk":
+                return new JdkLoadClient(baseUrl, requestTimeout(options));
+            case "nio":
+                return new NioLoadClient(baseUrl, options.getInt("connections", 256), options.getInt("pipeline", 1),
+                        requestTimeout(options));
+            default:
+                throw new IllegalArgumentException("Unknown load client: " + name);
+        }
+    }
+    
+    /**
+     * The request timeout option, default 30s: well above /api/slow's 2s, short enough that
+     * a stalled server ends the run.
+     */
+    static Duration requestTimeout(LoadOptions options) {
+        return options.getDuration("timeout", Duration.ofSeconds(30));
+    }
+}
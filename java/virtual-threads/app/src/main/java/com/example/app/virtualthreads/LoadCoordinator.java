@@ -0,0 +1,258 @@
+package com.example.app.virtualthreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs an open-loop test from several worker JVMs on this host and merges their results.
+ *
+ * A generator that shares a JVM with its own measurements also shares its GC and JIT
+ * pauses, and one process can only push so many requests. The coordinator forks N workers
+ * (HttpLoadTester worker mode, via {@link ChildJvm}), gives each rate / N, waits until all
+ * of them are ready, then tells them all to start at the same wall-clock instant. Each
+ * worker offsets its schedule by its index / rate so that constant-rate workers interleave
+ * instead of sending in lockstep. When they finish, every worker writes its
+ * {@link LoadResult}, histograms included, to standard output, and the coordinator adds
+ * them up, so percentiles are computed over all requests rather than averaged. Each worker
+ * also reports its own {@link JvmTelemetry}, which goes into the results next to the
+ * server's.
+ *
+ * The protocol is line based: a worker prints {@value #READY}, reads "go &lt;epoch micros&gt;"
+ * from standard input, and prints {@value #RESULT}, the encoded result, a telemetry line and
+ * {@value #END}.
+ * Everything else a worker prints is logged at debug level.
+ */
+public class LoadCoordinator {
+    
+    private static final Logger logger = LoggerFactory.getLogger(LoadCoordinator.class);
+    
+    static final String READY = "@@ready";
+    static final String RESULT = "@@result";
+    static final String END = "@@end";
+    private static final String GO = "go ";
+    private static final String TELEMETRY = "telemetry\t";
+    private static final long START_DELAY_MILLIS = 1000;
+    private static final long READY_TIMEOUT_SECONDS = 60;
+    
+    private final String baseUrl;
+    private final int workerCount;
+    private final LoadOptions options;
+    
+    /**
+     * Creates a coordinator.
+     *
+     * @param options the open-loop options, passed on to every worker; rate is the total
+     */
+    public LoadCoordinator(String baseUrl, int workerCount, LoadOptions options) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workers must be positive");
+        }
+        this.baseUrl = baseUrl;
+        this.workerCount = workerCount;
+        this.options = options;
+    }
+    
+    /**
+     * Forks the workers, runs the test and returns the merged result.
+     */
+    public LoadResult run() throws IOException, InterruptedException {
+        double rate = options.getDouble("rate", 200);
+        Duration duration = options.getDuration("duration", Duration.ofSeconds(30));
+        Duration warmup = options.getDuration("warmup", Duration.ofSeconds(5));
+        List<Worker> workers = new ArrayList<>();
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                ChildJvm jvm = new ChildJvm(HttpLoadTester.class);
+                for (String option : options.get("workerJvmOptions", "").split(",")) {
+                    if (!option.isBlank()) {
+                        jvm.jvmOption(option.trim());
+                    }
+                }
+                jvm.argument("worker");
+                options.toArguments().forEach(jvm::argument);
+                jvm.argument("url=" + baseUrl)
+                   .argument("rate=" + rate / workerCount)
+                   .argument("phaseNanos=" + (long) (i * 1e9 / rate));
+                workers.add(new Worker("worker-" + i, jvm.start()));
+            }
+            
+            for (Worker worker : workers) {
+                await(worker, worker.ready, READY_TIMEOUT_SECONDS);
+            }
+            Instant start = Instant.now().plusMillis(START_DELAY_MILLIS);
+            long startMicros = ChronoUnit.MICROS.between(Instant.EPOCH, start);
+            for (Worker worker : workers) {
+                worker.go(startMicros);
+            }
+            logger.info("{} workers ready; starting {} req/s ({} each) at {}", workerCount, rate, rate / workerCount, start);
+            
+            long resultTimeout = TimeUnit.MILLISECONDS.toSeconds(START_DELAY_MILLIS) + warmup.toSeconds()
+                    + duration.toSeconds() + 60;
+            LoadResult merged = new LoadResult(String.format("open loop %.0f req/s from %d workers (%s client)",
+                    rate, workerCount, options.get("client", "jdk")));
+            StringBuilder perWorker = new StringBuilder("\nPer worker:\n");
+            for (Worker worker : workers) {
+                LoadResult result = await(worker, worker.result, resultTimeout);
+                merged.add(result);
+                LoadResult.Endpoint total = result.total();
+                perWorker.append(String.format("%-10s %10.1f req/s  p99 %8.2fms  late %d%n", worker.name,
+                        result.throughput(), total.responseTime().valueAtPercentile(99) / 1e6, total.late()));
+            }
+            return report(merged, perWorker, workers, start.toEpochMilli() + warmup.toMillis());
+        } finally {
+            for (Worker worker : workers) {
+                worker.process.destroy();
+            }
+        }
+    }
+    
+    private LoadResult report(LoadResult merged, StringBuilder perWorker, List<Worker> workers,
+            long measureStartMillis) {
+        BenchmarkReport report = new BenchmarkReport("loadtest-coordinated").parameters(options)
+                .parameter("workers", workerCount);
+        StringBuilder sb = new StringBuilder();
+        merged.appendTo(sb);
+        sb.append(perWorker);
+        sb.append("A worker with many late requests could not keep up with its share; add workers.\n");
+        List<JvmTelemetry.Sample> server = HttpLoadTester.fetchServerTelemetry(baseUrl, measureStartMillis);
+        JvmTelemetry.addTo(report, "server.", server);
+        JvmTelemetry.appendTo(sb, "Server JVM", server);
+        for (Worker worker : workers) {
+            JvmTelemetry.addTo(report, worker.name + ".", worker.telemetry);
+            JvmTelemetry.appendTo(sb, worker.name + " JVM", worker.telemetry);
+        }
+        logger.info(sb.toString());
+        
+        merged.addTo(report, "");
+        report.write();
+        return merged;
+    }
+    
+    private static <T> T await(Worker worker, CompletableFuture<T> future, long timeoutSeconds)
+            throws IOException, InterruptedException {
+        try {
+            return future.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw new IOException(worker.name + " failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException(worker.name + " did not respond within " + timeoutSeconds + "s");
+        }
+    }
+    
+    /**
+     * Worker side: builds the generator, reports ready, waits for the start instant, runs
+     * and prints the encoded result and the telemetry of its measured period.
+     *
+     * Options: as for {@link HttpLoadTester#runOpenLoop}, plus url (required) and phaseNanos
+     * (offset of this worker's schedule).
+     */
+    static void runWorker(LoadOptions options) throws IOException {
+        PrintStream out = System.out;
+        WorkloadProfile workload = HttpLoadTester.workloadFor(options);
+        try (LoadClient client = LoadClient.create(options.get("client", "jdk"), options.get("url", null), options);
+                JvmTelemetry telemetry = JvmTelemetry.start()) {
+            Duration warmup = options.getDuration("warmup", Duration.ofSeconds(5));
+            OpenLoopGenerator generator = new OpenLoopGenerator(client, options.getDouble("rate", 200),
+                    options.getDuration("duration", Duration.ofSeconds(30)),
+                    warmup, options.getInt("maxInFlight", 10_000));
+            out.println(READY);
+            out.flush();
+            
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String line = in.readLine();
+            if (line == null || !line.startsWith(GO)) {
+                throw new IOException("Expected '" + GO + "<epoch micros>' but got " + line);
+            }
+            long startMicros = Long.parseLong(line.substring(GO.length()).trim());
+            long untilStartNanos = TimeUnit.MICROSECONDS.toNanos(
+                    startMicros - ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now()));
+            long startNanos = System.nanoTime() + untilStartNanos + Long.parseLong(options.get("phaseNanos", "0"));
+            LoadResult result = generator.run(workload, startNanos);
+            
+            out.println(RESULT);
+            result.encode().forEach(out::println);
+            List<JvmTelemetry.Sample> samples = telemetry.samplesSince(
+                    TimeUnit.MICROSECONDS.toMillis(startMicros) + warmup.toMillis());
+            out.println(TELEMETRY + JvmTelemetry.toJson(samples).replace("\n", ""));
+            out.println(END);
+            out.flush();
+        }
+    }
+    
+    /**
+     * A forked worker and the lines it has reported so far.
+     */
+    private static final class Worker {
+        final String name;
+        final Process process;
+        final CompletableFuture<Void> ready = new CompletableFuture<>();
+        final CompletableFuture<LoadResult> result = new CompletableFuture<>();
+        volatile List<JvmTelemetry.Sample> telemetry = List.of();
+        
+        Worker(String name, Process process) {
+            this.name = name;
+            this.process = process;
+            Thread.ofVirtual().name(name + "-reader").start(this::readOutput);
+        }
+        
+        void go(long startMicros) throws IOException {
+            Writer stdin = process.outputWriter(StandardCharsets.UTF_8);
+            stdin.write(GO + startMicros + "\n");
+            stdin.flush();
+        }
+        
+        private void readOutput() {
+            List<String> lines = null;
+            try (BufferedReader reader = process.inputReader(StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.equals(READY)) {
+                        ready.complete(null);
+                    } else if (line.equals(RESULT)) {
+                        lines = new ArrayList<>();
+                    } else if (line.equals(END) && lines != null) {
+                        result.complete(LoadResult.decode(name, lines));
+                    } else if (lines != null && line.startsWith(TELEMETRY)) {
+                        telemetry = JvmTelemetry.fromJson(line.substring(TELEMETRY.length()));
+                    } else if (lines != null && (line.startsWith("result\t") || line.startsWith("endpoint\t"))) {
+                        lines.add(line);
+                    } else {
+                        logger.debug("[{}] {}", name, line);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                ready.completeExceptionally(e);
+                result.completeExceptionally(e);
+                return;
+            }
+            IOException exited = new IOException(name + " exited early with status " + exitValue());
+            ready.completeExceptionally(exited);
+            result.completeExceptionally(exited);
+        }
+        
+        private String exitValue() {
+            try {
+                return String.valueOf(process.waitFor());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "unknown";
+            }
+        }
+    }
+}
\ No newline at end of file
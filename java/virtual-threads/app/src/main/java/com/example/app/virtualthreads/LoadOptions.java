@@ -0,0 +1,92 @@
+package com.example.app.virtualthreads;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * key=value command-line options for the load generator modes of {@link HttpLoadTester},
+ * e.g. {@code open rate=500 duration=30s warmup=5s}.
+ *
+ * Durations accept a us, ms, s or m suffix; a bare number means seconds.
+ */
+public class LoadOptions {
+    
+    private final Map<String, String> values;
+    
+    private LoadOptions(Map<String, String> values) {
+        this.values = values;
+    }
+    
+    /**
+     * Parses the arguments from the given index on.
+     */
+    public static LoadOptions parse(String[] args, int from) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = from; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value but was '" + args[i] + "'");
+            }
+            values.put(args[i].substring(0, eq), args[i].substring(eq + 1));
+        }
+        return new LoadOptions(values);
+    }
+    
+    public boolean has(String key) {
+        return values.containsKey(key);
+    }
+    
+    public String get(String key, String defaultValue) {
+        return values.getOrDefault(key, defaultValue);
+    }
+    
+    public int getInt(String key, int defaultValue) {
+        String value = values.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+    
+    public double getDouble(String key, double defaultValue) {
+        String value = values.get(key);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+    
+    public Duration getDuration(String key, Duration defaultValue) {
+        String value = values.get(key);
+        return value == null ? defaultValue : parseDuration(value.trim());
+    }
+    
+    static Duration parseDuration(String value) {
+        if (value.endsWith("us")) {
+            return Duration.ofNanos(Long.parseLong(value.substring(0, value.length() - 2)) * 1000);
+        }
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofMillis(Math.round(Double.parseDouble(value.substring(0, value.length() - 1)) * 1000));
+        }
+        if (value.endsWith("m")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)) * 60);
+        }
+        return Duration.ofMillis(Math.round(Double.parseDouble(value) * 1000));
+    }
+    
+    /**
+     * The options as key=value arguments, in the order given, for passing on to another process.
+     */
+    public List<String> toArguments() {
+        List<String> arguments = new ArrayList<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            arguments.add(entry.getKey() + "=" + entry.getValue());
+        }
+        return arguments;
+    }
+    
+    @Override
+    public String toString() {
+        return values.toString();
+    }
+}
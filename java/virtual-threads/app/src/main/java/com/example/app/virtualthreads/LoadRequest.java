@@ -0,0 +1,92 @@
+package com.example.app.virtualthreads;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One kind of request in a {@link WorkloadProfile}: method, path and optional body, plus
+ * the think time a closed-loop user spends after it.
+ *
+ * Instances are immutable and shared by every request of that kind, so a {@link LoadClient}
+ * can build its native request once per instance and reuse it.
+ */
+public class LoadRequest {
+    
+    private final String name;
+    private final String method;
+    private final String path;
+    private final byte[] body;
+    private final String contentType;
+    private final long thinkNanos;
+    
+    /**
+     * Creates a request.
+     *
+     * @param body        the body bytes, or null for none
+     * @param contentType the Content-Type of the body, or null
+     * @param thinkNanos  think time after this request, or -1 to use the generator's
+     */
+    public LoadRequest(String method, String path, byte[] body, String contentType, long thinkNanos) {
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException("Path must start with '/': " + path);
+        }
+        this.method = method.toUpperCase();
+        this.path = path;
+        this.body = body;
+        this.contentType = contentType;
+        this.thinkNanos = thinkNanos;
+        this.name = this.method.equals("GET") ? path : this.method + " " + path;
+    }
+    
+    /**
+     * A GET for the path with the generator's think time.
+     */
+    public static LoadRequest get(String path) {
+        return new LoadRequest("GET", path, null, null, -1);
+    }
+    
+    /**
+     * Name under which the request is reported: the path, prefixed by the method unless GET.
+     */
+    public String name() {
+        return name;
+    }
+    
+    public String method() {
+        return method;
+    }
+    
+    public String path() {
+        return path;
+    }
+    
+    public boolean hasBody() {
+        return body != null;
+    }
+    
+    /**
+     * The body bytes; callers must not modify them.
+     */
+    public byte[] body() {
+        return body;
+    }
+    
+    public String contentType() {
+        return contentType;
+    }
+    
+    /**
+     * Think time after this request in nanoseconds, or the default if none was configured.
+     */
+    public long thinkNanos(long defaultNanos) {
+        return thinkNanos < 0 ? defaultNanos : thinkNanos;
+    }
+    
+    @Override
+    public String toString() {
+        return hasBody() ? name + " (" + body.length + " byte body)" : name;
+    }
+    
+    static byte[] utf8(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,262 @@
+package com.example.app.virtualthreads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-endpoint outcome of a load generator run.
+ *
+ * Every response is recorded twice: the service time, from the moment the request was
+ * actually sent, and the response time, from the moment it was scheduled to be sent. The
+ * two differ when the generator falls behind its schedule; reporting only service time
+ * hides exactly the queueing delay that an overloaded server causes, which is known as
+ * coordinated omission.
+ */
+public class LoadResult {
+    
+    private final String name;
+    private final Map<String, Endpoint> endpoints = new ConcurrentSkipListMap<>();
+    private volatile long elapsedNanos;
+    private volatile long completedInPeriod = -1;
+    
+    public LoadResult(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * Returns the statistics of the endpoint, creating them on first use.
+     */
+    public Endpoint endpoint(String path) {
+        return endpoints.computeIfAbsent(path, Endpoint::new);
+    }
+    
+    public Map<String, Endpoint> endpoints() {
+        return endpoints;
+    }
+    
+    public String name() {
+        return name;
+    }
+    
+    /**
+     * Sets the length of the measured period, used for throughput.
+     */
+    public void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+    
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    /**
+     * Sets the number of responses that arrived within the measured period, for generators
+     * whose recorded requests (those sent within the period) can complete after it.
+     */
+    public void setCompletedInPeriod(long completed) {
+        this.completedInPeriod = completed;
+    }
+    
+    /**
+     * Completed responses (successful or not) per second over the measured period.
+     */
+    public double throughput() {
+        long total = completedInPeriod;
+        if (total < 0) {
+            total = 0;
+            for (Endpoint endpoint : endpoints.values()) {
+                total += endpoint.responseTime.totalCount();
+            }
+        }
+        return elapsedNanos == 0 ? 0 : total / (elapsedNanos / 1e9);
+    }
+    
+    /**
+     * Merges all endpoints into one, for an overall line.
+     */
+    public Endpoint total() {
+        Endpoint total = new Endpoint("total");
+        for (Endpoint endpoint : endpoints.values()) {
+            total.add(endpoint);
+        }
+        return total;
+    }
+    
+    /**
+     * Appends a table with one row per endpoint plus a total row.
+     */
+    public void appendTo(StringBuilder sb) {
+        sb.append(String.format("%n=== %s: %.1f req/s over %.1fs ===%n", name, throughput(), elapsedNanos / 1e9));
+        // Widen the first column for long endpoint names, e.g. "POST /api/user/user-1/summary"
+        int width = 14;
+        for (String endpoint : endpoints.keySet()) {
+            width = Math.max(width, endpoint.length());
+        }
+        sb.append(String.format("%-" + width + "s %8s %7s %7s %10s %10s %10s %10s %10s %12s%n",
+                "endpoint", "ok", "errors", "late", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms",
+                "svc p99 ms"));
+        for (Endpoint endpoint : endpoints.values()) {
+            endpoint.appendTo(sb, width);
+        }
+        if (endpoints.size() > 1) {
+            total().appendTo(sb, width);
+        }
+    }
+    
+    /**
+     * Adds the throughput and the response time and error count of every endpoint (and the
+     * total) to the report, each name prefixed, e.g. "virtual.100users.".
+     */
+    public void addTo(BenchmarkReport report, String prefix) {
+        report.value(prefix + "throughput", "req/s", false, throughput());
+        for (Endpoint endpoint : endpoints.values()) {
+            report.latency(prefix + endpoint.path, endpoint.responseTime);
+            report.value(prefix + endpoint.path + ".errors", "requests", true, endpoint.errors.sum());
+        }
+        if (endpoints.size() > 1) {
+            Endpoint total = total();
+            report.latency(prefix + "total", total.responseTime);
+            report.value(prefix + "total.errors", "requests", true, total.errors.sum());
+        }
+    }
+    
+    /**
+     * Adds the endpoints of another result, e.g. from another generator process, into this
+     * one. The measured period is the longer of the two; completed counts add up.
+     */
+    public void add(LoadResult other) {
+        for (Endpoint endpoint : other.endpoints.values()) {
+            endpoint(endpoint.path).add(endpoint);
+        }
+        elapsedNanos = Math.max(elapsedNanos, other.elapsedNanos);
+        if (other.completedInPeriod >= 0) {
+            completedInPeriod = Math.max(completedInPeriod, 0) + other.completedInPeriod;
+        }
+    }
+    
+    /**
+     * Encodes the result as tab-separated lines, for {@link #decode}.
+     */
+    public List<String> encode() {
+        List<String> lines = new ArrayList<>();
+        lines.add("result\t" + elapsedNanos + "\t" + completedInPeriod);
+        for (Endpoint endpoint : endpoints.values()) {
+            lines.add("endpoint\t" + endpoint.path + "\t" + endpoint.ok.sum() + "\t" + endpoint.errors.sum() + "\t"
+                    + endpoint.late.sum() + "\t" + endpoint.responseTime.encode() + "\t" + endpoint.serviceTime.encode());
+        }
+        return lines;
+    }
+    
+    /**
+     * Rebuilds a result from the lines written by {@link #encode}.
+     */
+    public static LoadResult decode(String name, List<String> lines) {
+        LoadResult result = new LoadResult(name);
+        for (String line : lines) {
+            String[] fields = line.split("\t");
+            if (fields[0].equals("result")) {
+                result.elapsedNanos = Long.parseLong(fields[1]);
+                result.completedInPeriod = Long.parseLong(fields[2]);
+            } else if (fields[0].equals("endpoint") && fields.length == 7) {
+                Endpoint endpoint = result.endpoint(fields[1]);
+                endpoint.ok.add(Long.parseLong(fields[2]));
+                endpoint.errors.add(Long.parseLong(fields[3]));
+                endpoint.late.add(Long.parseLong(fields[4]));
+                endpoint.responseTime.add(LatencyHistogram.decode(fields[5]));
+                endpoint.serviceTime.add(LatencyHistogram.decode(fields[6]));
+            } else {
+                throw new IllegalArgumentException("Not an encoded load result line: " + line);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Latencies and outcome counts of one endpoint.
+     */
+    public static class Endpoint {
+        final String path;
+        final LatencyHistogram responseTime = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        final LongAdder ok = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder late = new LongAdder();
+        
+        Endpoint(String path) {
+            this.path = path;
+        }
+        
+        /**
+         * Records a completed request.
+         *
+         * @param intendedNanos when the request was scheduled to be sent
+         * @param sentNanos     when it was actually sent
+         * @param doneNanos     when the response (or failure) arrived
+         */
+        public void record(long intendedNanos, long sentNanos, long doneNanos, boolean success) {
+            responseTime.record(doneNanos - intendedNanos);
+            serviceTime.record(doneNanos - sentNanos);
+            if (success) {
+                ok.increment();
+            } else {
+                errors.increment();
+            }
+        }
+        
+        /**
+         * Counts a request the generator gave up on without sending it, as an error.
+         */
+        public void recordUnsent() {
+            errors.increment();
+        }
+        
+        /**
+         * Counts a request that was sent noticeably after its scheduled time.
+         */
+        public void recordLate() {
+            late.increment();
+        }
+        
+        public LatencyHistogram responseTime() {
+            return responseTime;
+        }
+        
+        public LatencyHistogram serviceTime() {
+            return serviceTime;
+        }
+        
+        public long ok() {
+            return ok.sum();
+        }
+        
+        public long errors() {
+            return errors.sum();
+        }
+        
+        public long late() {
+            return late.sum();
+        }
+        
+        void add(Endpoint other) {
+            responseTime.add(other.responseTime);
+            serviceTime.add(other.serviceTime);
+            ok.add(other.ok.sum());
+            errors.add(other.errors.sum());
+            late.add(other.late.sum());
+        }
+        
+        void appendTo(StringBuilder sb, int width) {
+            sb.append(String.format("%-" + width + "s %8d %7d %7d %10.2f %10.2f %10.2f %10.2f %10.2f %12.2f%n",
+                    path, ok.sum(), errors.sum(), late.sum(),
+                    responseTime.valueAtPercentile(50) / 1e6,
+                    responseTime.valueAtPercentile(90) / 1e6,
+                    responseTime.valueAtPercentile(99) / 1e6,
+                    responseTime.valueAtPercentile(99.9) / 1e6,
+                    responseTime.maxNanos() / 1e6,
+                    serviceTime.valueAtPercentile(99) / 1e6));
+        }
+    }
+}
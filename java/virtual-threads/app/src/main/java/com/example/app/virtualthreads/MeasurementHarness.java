@@ -0,0 +1,229 @@
+package com.example.app.virtualthreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Times a few variants of the same work, such as virtual against platform threads, well
+ * enough to quote the difference.
+ *
+ * A single cold run of each variant measures class loading, JIT compilation and whatever
+ * the previous variant left behind (a heap to collect, a pool of threads winding down) as
+ * much as the variant itself. The harness first runs every variant for a number of warmup
+ * rounds, then for N measured rounds, shuffling the order of the variants in every round so
+ * that none of them always runs first or always follows the same one. Each variant gets the
+ * mean, standard deviation and 95% confidence interval of its wall-clock times, and the
+ * ratio of two variants comes with an approximate interval too.
+ *
+ * The rounds default to 2 warmup and 5 measured, and can be changed with the
+ * bench.warmupIterations and bench.iterations system properties; bench.seed fixes the order.
+ */
+public class MeasurementHarness {
+    
+    private static final Logger logger = LoggerFactory.getLogger(MeasurementHarness.class);
+    
+    private final int warmupIterations;
+    private final int iterations;
+    private final Random random;
+    private final Map<String, Runnable> variants = new LinkedHashMap<>();
+    
+    public MeasurementHarness(int warmupIterations, int iterations, long seed) {
+        if (warmupIterations < 0 || iterations < 1) {
+            throw new IllegalArgumentException("need at least one measured iteration and no negative warmup");
+        }
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.random = new Random(seed);
+    }
+    
+    /**
+     * Creates a harness configured by the bench.* system properties.
+     */
+    public static MeasurementHarness fromSystemProperties() {
+        return fromSystemProperties(2, 5);
+    }
+    
+    /**
+     * Creates a harness configured by the bench.* system properties, with other defaults
+     * for work that takes too long to repeat seven times.
+     */
+    public static MeasurementHarness fromSystemProperties(int defaultWarmupIterations, int defaultIterations) {
+        return new MeasurementHarness(Integer.getInteger("bench.warmupIterations", defaultWarmupIterations),
+                Integer.getInteger("bench.iterations", defaultIterations), Long.getLong("bench.seed", System.nanoTime()));
+    }
+    
+    /**
+     * Adds a variant; its work runs once per iteration and is timed as a whole.
+     */
+    public MeasurementHarness variant(String name, Runnable work) {
+        variants.put(name, work);
+        return this;
+    }
+    
+    public int warmupIterations() {
+        return warmupIterations;
+    }
+    
+    public int iterations() {
+        return iterations;
+    }
+    
+    /**
+     * Runs the warmup and measured rounds and returns the measured times.
+     */
+    public Result run() {
+        List<String> order = new ArrayList<>(variants.keySet());
+        for (int round = 0; round < warmupIterations; round++) {
+            Collections.shuffle(order, random);
+            logger.info("Warmup round {}/{}: {}", round + 1, warmupIterations, order);
+            for (String name : order) {
+                variants.get(name).run();
+            }
+        }
+        
+        Map<String, double[]> millis = new LinkedHashMap<>();
+        variants.keySet().forEach(name -> millis.put(name, new double[iterations]));
+        for (int round = 0; round < iterations; round++) {
+            Collections.shuffle(order, random);
+            logger.info("Measured round {}/{}: {}", round + 1, iterations, order);
+            for (String name : order) {
+                long start = System.nanoTime();
+                variants.get(name).run();
+                millis.get(name)[round] = (System.nanoTime() - start) / 1e6;
+            }
+        }
+        
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        millis.forEach((name, samples) -> stats.put(name, new Stats(samples)));
+        return new Result(stats);
+    }
+    
+    /**
+     * The half-width of the 95% confidence interval of a mean, using Student's t.
+     */
+    static double confidenceHalfWidth(double stddev, int n) {
+        if (n < 2) {
+            return Double.NaN;
+        }
+        return studentQuantile975(n - 1) * stddev / Math.sqrt(n);
+    }
+    
+    /**
+     * The t value with a two-sided p of 0.05, found by bisection on the distribution.
+     */
+    static double studentQuantile975(double df) {
+        double low = 0;
+        double high = 1000;
+        for (int i = 0; i < 100; i++) {
+            double mid = (low + high) / 2;
+            if (BenchmarkComparison.studentTwoSidedP(mid, df) > 0.05) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return (low + high) / 2;
+    }
+    
+    /**
+     * Mean, spread and 95% confidence interval of one variant's times, in milliseconds.
+     */
+    public static class Stats {
+        final double[] samples;
+        final double mean;
+        final double stddev;
+        final double halfWidth;
+        
+        Stats(double[] samples) {
+            this.samples = samples;
+            double sum = 0;
+            for (double sample : samples) {
+                sum += sample;
+            }
+            mean = sum / samples.length;
+            double squares = 0;
+            for (double sample : samples) {
+                squares += (sample - mean) * (sample - mean);
+            }
+            stddev = samples.length > 1 ? Math.sqrt(squares / (samples.length - 1)) : 0;
+            halfWidth = confidenceHalfWidth(stddev, samples.length);
+        }
+        
+        public double mean() {
+            return mean;
+        }
+        
+        public double stddev() {
+            return stddev;
+        }
+        
+        public double halfWidth() {
+            return halfWidth;
+        }
+    }
+    
+    /**
+     * The measured times of every variant.
+     */
+    public static class Result {
+        private final Map<String, Stats> stats;
+        
+        Result(Map<String, Stats> stats) {
+            this.stats = stats;
+        }
+        
+        public Stats get(String variant) {
+            Stats result = stats.get(variant);
+            if (result == null) {
+                throw new IllegalArgumentException("No such variant: " + variant);
+            }
+            return result;
+        }
+        
+        /**
+         * How many times longer the slower variant took than the faster, as mean over mean,
+         * with an interval from the two relative half-widths added in quadrature.
+         *
+         * @return the ratio and the low and high ends of its approximate 95% interval
+         */
+        public double[] ratio(String slower, String faster) {
+            Stats numerator = get(slower);
+            Stats denominator = get(faster);
+            double ratio = numerator.mean / denominator.mean;
+            double relative = Math.sqrt(Math.pow(numerator.halfWidth / numerator.mean, 2)
+                    + Math.pow(denominator.halfWidth / denominator.mean, 2));
+            return new double[] {ratio, ratio * (1 - relative), ratio * (1 + relative)};
+        }
+        
+        /**
+         * Adds each variant's times as the samples of &lt;prefix&gt;&lt;variant&gt;.durationMs.
+         */
+        public void addTo(BenchmarkReport report, String prefix) {
+            stats.forEach((name, stat) -> report.samples(prefix + name + ".durationMs", "ms", true, stat.samples));
+        }
+        
+        public void appendTo(StringBuilder sb) {
+            int n = stats.values().iterator().next().samples.length;
+            sb.append(String.format("%-16s %10s %10s %22s   (%d iterations)%n", "variant", "mean ms", "stddev",
+                    "95% CI ms", n));
+            stats.forEach((name, stat) -> sb.append(String.format("%-16s %10.1f %10.1f %10.1f .. %.1f%n",
+                    name, stat.mean, stat.stddev, stat.mean - stat.halfWidth, stat.mean + stat.halfWidth)));
+        }
+        
+        /**
+         * Appends "slower takes 2.10x as long as faster (95% CI 1.95x .. 2.25x)".
+         */
+        public void appendRatio(StringBuilder sb, String slower, String faster) {
+            double[] ratio = ratio(slower, faster);
+            sb.append(String.format("%s takes %.2fx as long as %s (95%% CI %.2fx .. %.2fx)%n", slower, ratio[0], faster,
+                    ratio[1], ratio[2]));
+        }
+    }
+}
\ No newline at end of file
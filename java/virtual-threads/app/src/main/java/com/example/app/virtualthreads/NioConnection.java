@@ -0,0 +1,348 @@
+package com.example.app.virtualthreads;
+
+import com.sun.net.httpserver.Headers;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A persistent HTTP/1.1 connection owned by a single selector loop.
+ *
+ * Requests are parsed back-to-back from one read buffer, so pipelined requests are
+ * dispatched to their handlers concurrently. Their responses may complete in any order;
+ * they are held in a per-connection ring indexed by request sequence number and released
+ * strictly in request order. Released responses are queued and written by the loop in a
+ * single gathering write per loop iteration, which batches the flushes of responses that
+ * complete close together.
+ *
+ * Each in-flight request also gets a peer-closed future, completed when the client closes
+ * or resets the connection before its response was written, so that a DeadlineFilter can
+ * cancel the handler. The connection keeps reading after a "Connection: close" request just
+ * to notice that; only pipeline back-pressure stops it from seeing the end of the stream.
+ *
+ * Apart from the reporting getters, every method must be called on the owning loop thread.
+ */
+final class NioConnection {
+    
+    static final int MAX_PIPELINE_DEPTH = 64;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_READ_BUFFER_SIZE =
+            HttpRequestParser.MAX_HEADER_BYTES + HttpRequestParser.MAX_BODY_BYTES;
+    
+    private final NioServerEngine engine;
+    private final NioServerEngine.SelectorLoop loop;
+    private final SocketChannel channel;
+    private final ConnectionMetrics metrics;
+    private final InetSocketAddress remoteAddress;
+    private final InetSocketAddress localAddress;
+    private SelectionKey key;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    
+    // Responses completed out of order, indexed by sequence number modulo the ring size
+    private final ByteBuffer[][] completed = new ByteBuffer[MAX_PIPELINE_DEPTH][];
+    private final boolean[] completedClose = new boolean[MAX_PIPELINE_DEPTH];
+    private final CompletableFuture<?>[] peerClosed = new CompletableFuture<?>[MAX_PIPELINE_DEPTH];
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private long nextRequestSequence;
+    private long nextResponseSequence;
+    private boolean readingStopped;
+    private boolean inputShutdown;
+    private boolean closeAfterWrite;
+    private boolean flushScheduled;
+    private long lastActivityNanos = System.nanoTime();
+    
+    // Written by the loop thread, read by reporting threads
+    private volatile long requestsServed;
+    private volatile long bytesRead;
+    private volatile long bytesWritten;
+    
+    NioConnection(NioServerEngine engine, NioServerEngine.SelectorLoop loop, SocketChannel channel,
+            ConnectionMetrics metrics) throws IOException {
+        this.engine = engine;
+        this.loop = loop;
+        this.channel = channel;
+        this.metrics = metrics;
+        this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+        this.localAddress = (InetSocketAddress) channel.getLocalAddress();
+    }
+    
+    void register(SelectionKey key) {
+        this.key = key;
+        metrics.opened(this);
+    }
+    
+    InetSocketAddress remoteAddress() {
+        return remoteAddress;
+    }
+    
+    InetSocketAddress localAddress() {
+        return localAddress;
+    }
+    
+    long requestsServed() {
+        return requestsServed;
+    }
+    
+    long bytesRead() {
+        return bytesRead;
+    }
+    
+    long bytesWritten() {
+        return bytesWritten;
+    }
+    
+    /**
+     * Number of requests dispatched whose responses have not been released yet.
+     */
+    int outstanding() {
+        return (int) (nextRequestSequence - nextResponseSequence);
+    }
+    
+    boolean isIdle(long nowNanos, long idleTimeoutNanos) {
+        return outstanding() == 0 && writeQueue.isEmpty()
+                && nowNanos - lastActivityNanos > idleTimeoutNanos;
+    }
+    
+    void onReadable() {
+        try {
+            if (readingStopped) {
+                // Nothing more will be parsed; keep reading only to notice the peer closing
+                readBuffer.clear();
+            }
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                onInputShutdown();
+                return;
+            }
+            bytesRead += read;
+            metrics.bytesRead.add(read);
+            lastActivityNanos = System.nanoTime();
+            if (!readingStopped) {
+                parseBufferedRequests();
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+    
+    /**
+     * Parses and dispatches every complete request in the read buffer, up to the pipeline limit.
+     */
+    private void parseBufferedRequests() {
+        readBuffer.flip();
+        try {
+            while (!readingStopped && outstanding() < MAX_PIPELINE_DEPTH) {
+                HttpRequestParser.Request request = HttpRequestParser.parse(readBuffer);
+                if (request == null) {
+                    break;
+                }
+                long sequence = nextRequestSequence++;
+                boolean keepAlive = isKeepAlive(request) && engine.isRunning();
+                if (!keepAlive) {
+                    stopReading();
+                }
+                recordRequest(sequence);
+                CompletableFuture<Void> closed = new CompletableFuture<>();
+                peerClosed[(int) (sequence % MAX_PIPELINE_DEPTH)] = closed;
+                engine.dispatch(this, request, sequence, keepAlive, closed);
+            }
+        } catch (HttpRequestParser.HttpParseException e) {
+            // The stream position is unknown after a malformed request, so answer and close
+            long sequence = nextRequestSequence++;
+            stopReading();
+            complete(sequence, errorResponse(e.statusCode, true), true);
+        } finally {
+            readBuffer.compact();
+        }
+        
+        if (outstanding() >= MAX_PIPELINE_DEPTH) {
+            // Apply back-pressure until responses drain
+            setInterest(SelectionKey.OP_READ, false);
+        } else if (!readingStopped && !readBuffer.hasRemaining()) {
+            growReadBuffer();
+        }
+    }
+    
+    private void recordRequest(long sequence) {
+        requestsServed++;
+        metrics.requests.increment();
+        if (sequence > 0) {
+            metrics.reusedRequests.increment();
+        }
+        int depth = outstanding();
+        if (depth > 1) {
+            metrics.pipelinedRequests.increment();
+        }
+        metrics.maxPipelineDepth.accumulate(depth);
+    }
+    
+    private static boolean isKeepAlive(HttpRequestParser.Request request) {
+        String connection = request.headers.getFirst("Connection");
+        if ("HTTP/1.0".equals(request.protocol)) {
+            return "keep-alive".equalsIgnoreCase(connection);
+        }
+        return !"close".equalsIgnoreCase(connection);
+    }
+    
+    /**
+     * Stops parsing further requests; the connection closes after the pending responses.
+     */
+    private void stopReading() {
+        readingStopped = true;
+    }
+    
+    /**
+     * The peer closed its side. Requests still in flight are treated as abandoned: their
+     * handlers are cancelled, and the connection closes once their responses are flushed.
+     */
+    private void onInputShutdown() {
+        inputShutdown = true;
+        readingStopped = true;
+        setInterest(SelectionKey.OP_READ, false);
+        signalPeerClosed();
+        if (outstanding() == 0 && writeQueue.isEmpty()) {
+            close();
+        }
+    }
+    
+    private void signalPeerClosed() {
+        for (long sequence = nextResponseSequence; sequence < nextRequestSequence; sequence++) {
+            int slot = (int) (sequence % MAX_PIPELINE_DEPTH);
+            CompletableFuture<?> closed = peerClosed[slot];
+            if (closed != null) {
+                peerClosed[slot] = null;
+                closed.complete(null);
+            }
+        }
+    }
+    
+    /**
+     * Queues an empty error response for the given request.
+     */
+    void sendError(long sequence, int code, boolean close) {
+        complete(sequence, errorResponse(code, close), close);
+    }
+    
+    private static ByteBuffer[] errorResponse(int code, boolean close) {
+        return new ByteBuffer[] {ByteBuffer.wrap(NioHttpExchange.encodeHead(code, 0, new Headers(), close))};
+    }
+    
+    /**
+     * Hands over a finished response from any thread.
+     */
+    void send(long sequence, ByteBuffer[] buffers, boolean close) {
+        loop.execute(() -> complete(sequence, buffers, close));
+    }
+    
+    /**
+     * Stores a finished response and releases every response that is now next in order.
+     */
+    private void complete(long sequence, ByteBuffer[] buffers, boolean close) {
+        if (!channel.isOpen()) {
+            return;
+        }
+        int slot = (int) (sequence % MAX_PIPELINE_DEPTH);
+        peerClosed[slot] = null;
+        completed[slot] = buffers;
+        completedClose[slot] = close;
+        
+        while (!closeAfterWrite) {
+            int next = (int) (nextResponseSequence % MAX_PIPELINE_DEPTH);
+            ByteBuffer[] ready = completed[next];
+            if (ready == null) {
+                break;
+            }
+            completed[next] = null;
+            nextResponseSequence++;
+            for (ByteBuffer buffer : ready) {
+                writeQueue.add(buffer);
+            }
+            metrics.responses.increment();
+            closeAfterWrite = completedClose[next];
+        }
+        
+        if (!flushScheduled) {
+            flushScheduled = true;
+            loop.scheduleFlush(this);
+        }
+    }
+    
+    /**
+     * Writes all queued responses in one gathering write; called once per loop iteration.
+     */
+    void flush() {
+        flushScheduled = false;
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            if (!writeQueue.isEmpty()) {
+                ByteBuffer[] buffers = writeQueue.toArray(new ByteBuffer[0]);
+                long written = channel.write(buffers);
+                bytesWritten += written;
+                metrics.bytesWritten.add(written);
+                metrics.flushes.increment();
+                while (!writeQueue.isEmpty() && !writeQueue.peek().hasRemaining()) {
+                    writeQueue.poll();
+                }
+                lastActivityNanos = System.nanoTime();
+            }
+            
+            if (!writeQueue.isEmpty()) {
+                setInterest(SelectionKey.OP_WRITE, true);
+                return;
+            }
+            setInterest(SelectionKey.OP_WRITE, false);
+            
+            if (closeAfterWrite || (inputShutdown && outstanding() == 0)) {
+                close();
+            } else if (!readingStopped && outstanding() < MAX_PIPELINE_DEPTH
+                    && (key.interestOps() & SelectionKey.OP_READ) == 0) {
+                // Resume after back-pressure; requests may already be waiting in the buffer
+                setInterest(SelectionKey.OP_READ, true);
+                parseBufferedRequests();
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+    
+    private void growReadBuffer() {
+        if (readBuffer.capacity() >= MAX_READ_BUFFER_SIZE) {
+            long sequence = nextRequestSequence++;
+            stopReading();
+            complete(sequence, errorResponse(413, true), true);
+            return;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.min(readBuffer.capacity() * 2, MAX_READ_BUFFER_SIZE));
+        readBuffer.flip();
+        larger.put(readBuffer);
+        readBuffer = larger;
+    }
+    
+    private void setInterest(int op, boolean enabled) {
+        if (key.isValid()) {
+            int ops = key.interestOps();
+            key.interestOps(enabled ? ops | op : ops & ~op);
+        }
+    }
+    
+    void close() {
+        // Responses can no longer be delivered, so cancel whatever is still computing them
+        signalPeerClosed();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing useful to do with a failed close
+        }
+        metrics.closed(this);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,271 @@
+package com.example.app.virtualthreads;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * HttpExchange implementation for the NIO server engine.
+ *
+ * The response body is buffered in memory and handed to the connection's selector loop
+ * when the exchange is closed, so handler threads never touch the socket.
+ */
+class NioHttpExchange extends HttpExchange {
+    
+    private final NioConnection connection;
+    private final HttpContext context;
+    private final HttpRequestParser.Request request;
+    private final long sequence;
+    private final boolean keepAlive;
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private InputStream requestBody;
+    private OutputStream responseBody;
+    private final ResponseBuffer buffer = new ResponseBuffer();
+    private int responseCode = -1;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    
+    NioHttpExchange(NioConnection connection, HttpContext context,
+            HttpRequestParser.Request request, long sequence, boolean keepAlive) {
+        this.connection = connection;
+        this.context = context;
+        this.request = request;
+        this.sequence = sequence;
+        this.keepAlive = keepAlive;
+        this.requestBody = new ByteArrayInputStream(request.body);
+        this.responseBody = buffer;
+    }
+    
+    @Override
+    public Headers getRequestHeaders() {
+        return request.headers;
+    }
+    
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+    
+    @Override
+    public URI getRequestURI() {
+        return request.uri;
+    }
+    
+    @Override
+    public String getRequestMethod() {
+        return request.method;
+    }
+    
+    @Override
+    public HttpContext getHttpContext() {
+        return context;
+    }
+    
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+    
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+    
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        if (responseCode != -1) {
+            throw new IOException("Headers already sent");
+        }
+        responseCode = rCode;
+        if (responseLength > 0) {
+            buffer.ensureCapacity((int) Math.min(responseLength, Integer.MAX_VALUE - 8));
+        }
+    }
+    
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return connection.remoteAddress();
+    }
+    
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+    
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return connection.localAddress();
+    }
+    
+    @Override
+    public String getProtocol() {
+        return request.protocol;
+    }
+    
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+    
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            attributes.remove(name);
+        } else {
+            attributes.put(name, value);
+        }
+    }
+    
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) {
+            requestBody = i;
+        }
+        if (o != null) {
+            responseBody = o;
+        }
+    }
+    
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+    
+    /**
+     * Returns true once response headers have been sent.
+     */
+    boolean headersSent() {
+        return responseCode != -1;
+    }
+    
+    /**
+     * Completes the exchange, handing the serialized response to the connection, which
+     * writes it once all earlier pipelined responses have been written.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (responseCode == -1) {
+            // Handler returned without responding
+            responseCode = 500;
+            buffer.reset();
+        }
+        // A handler may ask to close the connection, e.g. while the server drains
+        boolean closeConnection = !keepAlive || "close".equalsIgnoreCase(responseHeaders.getFirst("Connection"));
+        ByteBuffer head = ByteBuffer.wrap(
+                encodeHead(responseCode, buffer.size(), responseHeaders, closeConnection));
+        ByteBuffer body = ByteBuffer.wrap(buffer.array(), 0, buffer.size());
+        connection.send(sequence, new ByteBuffer[] {head, body}, closeConnection);
+    }
+    
+    /**
+     * Serializes a status line and headers, always including Content-Length; the Connection
+     * header is written from closeConnection alone.
+     */
+    static byte[] encodeHead(int code, int contentLength, Headers headers, boolean closeConnection) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("HTTP/1.1 ").append(code).append(' ').append(reasonPhrase(code)).append("\r\n");
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase("Content-Length")
+                    || header.getKey().equalsIgnoreCase("Connection")) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                sb.append(header.getKey()).append(": ").append(value).append("\r\n");
+            }
+        }
+        sb.append("Content-Length: ").append(contentLength).append("\r\n");
+        if (closeConnection) {
+            sb.append("Connection: close\r\n");
+        }
+        sb.append("\r\n");
+        return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+    
+    /**
+     * Returns the standard reason phrase for the status codes this project uses.
+     */
+    static String reasonPhrase(int code) {
+        switch (code) {
+            case 200: return "OK";
+            case 204: return "No Content";
+            case 400: return "Bad Request";
+            case 404: return "Not Found";
+            case 413: return "Content Too Large";
+            case 431: return "Request Header Fields Too Large";
+            case 499: return "Client Closed Request";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 502: return "Bad Gateway";
+            case 503: return "Service Unavailable";
+            case 504: return "Gateway Timeout";
+            default: return "Status " + code;
+        }
+    }
+    
+    /**
+     * Growable byte buffer backing the response body stream.
+     */
+    private final class ResponseBuffer extends OutputStream {
+        private byte[] bytes = new byte[256];
+        private int count;
+        
+        void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, capacity);
+            }
+        }
+        
+        @Override
+        public void write(int b) {
+            if (count == bytes.length) {
+                ensureCapacity(bytes.length * 2);
+            }
+            bytes[count++] = (byte) b;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (count + len > bytes.length) {
+                ensureCapacity(Math.max(count + len, bytes.length * 2));
+            }
+            System.arraycopy(b, off, bytes, count, len);
+            count += len;
+        }
+        
+        byte[] array() {
+            return bytes;
+        }
+        
+        int size() {
+            return count;
+        }
+        
+        void reset() {
+            count = 0;
+        }
+        
+        @Override
+        public void close() {
+            // Closing the response body completes the exchange, as with the JDK server
+            NioHttpExchange.this.close();
+        }
+    }
+}
\ No newline at end of file
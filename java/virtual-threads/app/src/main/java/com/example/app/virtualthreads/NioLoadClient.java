@@ -0,0 +1,643 @@
+package com.example.app.virtualthreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Load client that speaks HTTP/1.1 directly over non-blocking SocketChannels.
+ *
+ * java.net.http.HttpClient builds a request object, a header map and a body subscriber for
+ * every exchange and hops between executor threads to deliver it; at high rates that costs
+ * more CPU than the server being measured. This client does the least a load generator
+ * needs:
+ *
+ * <ul>
+ *   <li>each {@link LoadRequest} is serialized to bytes once and copied into the socket
+ *       buffer as is;</li>
+ *   <li>a fixed pool of keep-alive connections is opened on demand, each carrying up to
+ *       {@code pipelineDepth} outstanding requests, and requests wait in a queue while
+ *       every connection is busy;</li>
+ *   <li>responses are parsed only for the status code and the body framing
+ *       (Content-Length or chunked), and bodies are skipped in place.</li>
+ * </ul>
+ *
+ * A request not answered within the timeout, counted from {@link #send}, fails with an
+ * IOException. If it was already on a connection, that connection is closed along with
+ * the requests pipelined behind it, and the pool opens a new one.
+ *
+ * All socket work runs on one platform selector thread, which also completes the futures,
+ * so callbacks attached to them must be short. Plain http only.
+ */
+public class NioLoadClient implements LoadClient {
+    
+    private static final Logger logger = LoggerFactory.getLogger(NioLoadClient.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEAD_SIZE = 16 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] CRLFCRLF = {'\r', '\n', '\r', '\n'};
+    private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.US_ASCII);
+    // Any Transfer-Encoding on a response means chunked framing in HTTP/1.1
+    private static final byte[] TRANSFER_ENCODING = "transfer-encoding:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONNECTION = "connection:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CLOSE = "close".getBytes(StandardCharsets.US_ASCII);
+    
+    private final InetSocketAddress address;
+    private final String hostHeader;
+    private final int maxConnections;
+    private final int pipelineDepth;
+    private final long timeoutNanos;
+    private final long expiryCheckMillis;
+    private final Map<LoadRequest, byte[]> encoded = new ConcurrentHashMap<>();
+    private final Queue<Pending> submitted = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupRequested = new AtomicBoolean();
+    private final Selector selector;
+    private final Thread thread;
+    
+    // Owned by the selector thread
+    private final ArrayDeque<Pending> waiting = new ArrayDeque<>();
+    private final ArrayDeque<Connection> available = new ArrayDeque<>();
+    private final List<Connection> connections = new ArrayList<>();
+    private final List<Connection> dirty = new ArrayList<>();
+    private long connectionsOpened;
+    private long nextExpiryCheck;
+    private volatile boolean running = true;
+    
+    /**
+     * Creates a client and starts its selector thread.
+     *
+     * @param maxConnections connections to open at most
+     * @param pipelineDepth  requests outstanding per connection; more than 1 pipelines them,
+     *                       which the NIO server engine supports
+     * @param timeout        how long a request may wait for its response
+     */
+    public NioLoadClient(String baseUrl, int maxConnections, int pipelineDepth, Duration timeout) {
+        if (maxConnections < 1 || pipelineDepth < 1) {
+            throw new IllegalArgumentException("maxConnections and pipelineDepth must be positive");
+        }
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout must be positive: " + timeout);
+        }
+        URI uri = URI.create(baseUrl);
+        if (!"http".equalsIgnoreCase(uri.getScheme())) {
+            throw new IllegalArgumentException("The nio load client only supports http URLs: " + baseUrl);
+        }
+        int port = uri.getPort() == -1 ? 80 : uri.getPort();
+        this.address = new InetSocketAddress(uri.getHost(), port);
+        this.hostHeader = uri.getHost() + (uri.getPort() == -1 ? "" : ":" + port);
+        this.maxConnections = maxConnections;
+        this.pipelineDepth = pipelineDepth;
+        this.timeoutNanos = timeout.toNanos();
+        // Expire requests at most a tenth of the timeout late, without waking up more often than every 10ms
+        this.expiryCheckMillis = Math.max(10, Math.min(1000, timeout.toMillis() / 10));
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open selector", e);
+        }
+        this.thread = Thread.ofPlatform().name("nio-load-client").daemon().start(this::run);
+    }
+    
+    @Override
+    public CompletableFuture<Integer> send(LoadRequest request) {
+        Pending pending = new Pending(encoded.computeIfAbsent(request, this::encode), request.method().equals("HEAD"),
+                System.nanoTime() + timeoutNanos);
+        if (!running) {
+            pending.future.completeExceptionally(new IOException("Client is closed"));
+            return pending.future;
+        }
+        submitted.add(pending);
+        // close() may have drained the queue between the check above and the add; if the
+        // request is still queued nobody else will complete it, so fail it here
+        if (!running && submitted.remove(pending)) {
+            pending.future.completeExceptionally(new IOException("Client is closed"));
+            return pending.future;
+        }
+        // One wakeup per batch: the loop clears the flag before draining the queue
+        if (wakeupRequested.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+        return pending.future;
+    }
+    
+    private byte[] encode(LoadRequest request) {
+        StringBuilder head = new StringBuilder(128)
+                .append(request.method()).append(' ').append(request.path()).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(hostHeader).append("\r\n");
+        if (request.contentType() != null) {
+            head.append("Content-Type: ").append(request.contentType()).append("\r\n");
+        }
+        if (request.hasBody()) {
+            head.append("Content-Length: ").append(request.body().length).append("\r\n");
+        }
+        head.append("\r\n");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.writeBytes(head.toString().getBytes(StandardCharsets.US_ASCII));
+        if (request.hasBody()) {
+            bytes.writeBytes(request.body());
+        }
+        return bytes.toByteArray();
+    }
+    
+    @Override
+    public String name() {
+        return "nio";
+    }
+    
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void run() {
+        try {
+            nextExpiryCheck = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(expiryCheckMillis);
+            while (running) {
+                selector.select(expiryCheckMillis);
+                wakeupRequested.set(false);
+                Pending pending;
+                while ((pending = submitted.poll()) != null) {
+                    waiting.add(pending);
+                }
+                dispatch();
+                
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isConnectable()) {
+                            connection.finishConnect();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable();
+                        }
+                    } catch (IOException e) {
+                        connection.fail(e);
+                    }
+                }
+                long now = System.nanoTime();
+                if (now - nextExpiryCheck >= 0) {
+                    nextExpiryCheck = now + TimeUnit.MILLISECONDS.toNanos(expiryCheckMillis);
+                    expire(now);
+                }
+                // Responses freed up connections; hand them the queued requests
+                dispatch();
+                flushDirty();
+            }
+        } catch (IOException e) {
+            logger.warn("Load client selector failed", e);
+        } finally {
+            shutdown();
+        }
+    }
+    
+    /**
+     * Assigns waiting requests to connections with room, opening connections up to the limit.
+     */
+    private void dispatch() {
+        while (!waiting.isEmpty()) {
+            Connection connection = available.poll();
+            if (connection == null) {
+                if (connections.size() >= maxConnections) {
+                    return;
+                }
+                try {
+                    connection = open();
+                } catch (IOException e) {
+                    // Fail what a new connection would have carried, so the caller sees the error
+                    for (int i = 0; i < pipelineDepth && !waiting.isEmpty(); i++) {
+                        waiting.poll().future.completeExceptionally(e);
+                    }
+                    continue;
+                }
+            }
+            if (connection.closed) {
+                continue;
+            }
+            while (connection.inFlight.size() < pipelineDepth && !waiting.isEmpty()) {
+                connection.write(waiting.poll());
+            }
+            connection.queuedAvailable = false;
+            connection.offerIfAvailable();
+        }
+    }
+    
+    /**
+     * Fails the requests whose deadline has passed. Requests are sent and answered in order,
+     * so only the head of the waiting queue and of each connection needs checking.
+     */
+    private void expire(long now) {
+        IOException timedOut = null;
+        while (!waiting.isEmpty() && now - waiting.peek().deadline >= 0) {
+            if (timedOut == null) {
+                timedOut = timeoutException();
+            }
+            waiting.poll().future.completeExceptionally(timedOut);
+        }
+        // fail() removes the connection from the list, so walk it backwards
+        for (int i = connections.size() - 1; i >= 0; i--) {
+            Connection connection = connections.get(i);
+            Pending oldest = connection.inFlight.peek();
+            if (oldest != null && now - oldest.deadline >= 0) {
+                if (timedOut == null) {
+                    timedOut = timeoutException();
+                }
+                // Later responses on this connection would come after the missing one
+                connection.fail(timedOut);
+            }
+        }
+    }
+    
+    private IOException timeoutException() {
+        return new IOException("Request timed out after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms");
+    }
+    
+    private Connection open() throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            boolean connected = channel.connect(address);
+            connection.key = channel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT,
+                    connection);
+            connection.connected = connected;
+            connections.add(connection);
+            connectionsOpened++;
+            return connection;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    private void flushDirty() {
+        for (int i = 0; i < dirty.size(); i++) {
+            Connection connection = dirty.get(i);
+            try {
+                connection.flush();
+            } catch (IOException e) {
+                connection.fail(e);
+            }
+        }
+        dirty.clear();
+    }
+    
+    private void shutdown() {
+        IOException closed = new IOException("Client is closed");
+        for (Connection connection : new ArrayList<>(connections)) {
+            connection.fail(closed);
+        }
+        Pending pending;
+        while ((pending = waiting.poll()) != null || (pending = submitted.poll()) != null) {
+            pending.future.completeExceptionally(closed);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.debug("Error closing selector: {}", e.toString());
+        }
+        logger.debug("nio load client closed after opening {} connections", connectionsOpened);
+    }
+    
+    /**
+     * A request waiting for, or being carried by, a connection.
+     */
+    private static final class Pending {
+        final byte[] bytes;
+        final boolean headRequest;
+        final long deadline;
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+        
+        Pending(byte[] bytes, boolean headRequest, long deadline) {
+            this.bytes = bytes;
+            this.headRequest = headRequest;
+            this.deadline = deadline;
+        }
+    }
+    
+    private enum ParseState { HEAD, BODY, UNTIL_CLOSE, CHUNK_SIZE, CHUNK_DATA, TRAILER }
+    
+    /**
+     * One keep-alive connection with its outstanding requests in send order.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final ArrayDeque<Pending> inFlight = new ArrayDeque<>();
+        private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        private SelectionKey key;
+        private boolean connected;
+        private boolean closed;
+        private boolean queuedAvailable;
+        private boolean markedDirty;
+        private ParseState state = ParseState.HEAD;
+        private long remaining;
+        private int status;
+        private boolean closeAfterResponse;
+        
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+        
+        void write(Pending pending) {
+            if (out.remaining() < pending.bytes.length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + pending.bytes.length));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+            out.put(pending.bytes);
+            inFlight.add(pending);
+            if (!markedDirty) {
+                markedDirty = true;
+                dirty.add(this);
+            }
+        }
+        
+        void offerIfAvailable() {
+            if (!closed && !queuedAvailable && inFlight.size() < pipelineDepth) {
+                queuedAvailable = true;
+                available.add(this);
+            }
+        }
+        
+        void finishConnect() throws IOException {
+            channel.finishConnect();
+            connected = true;
+            key.interestOps(SelectionKey.OP_READ);
+            flush();
+        }
+        
+        void flush() throws IOException {
+            markedDirty = false;
+            if (!connected || closed) {
+                return;
+            }
+            out.flip();
+            channel.write(out);
+            boolean more = out.hasRemaining();
+            out.compact();
+            key.interestOps(more ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+        
+        void onReadable() throws IOException {
+            int read = channel.read(in);
+            if (read < 0) {
+                if (state == ParseState.UNTIL_CLOSE) {
+                    complete();
+                }
+                fail(new IOException("Connection closed by server with " + inFlight.size() + " requests outstanding"));
+                return;
+            }
+            in.flip();
+            try {
+                parse();
+            } finally {
+                in.compact();
+            }
+            if (!closed && closeAfterResponse && inFlight.isEmpty()) {
+                close();
+            }
+        }
+        
+        /**
+         * Consumes as many complete responses, or parts of a body, as the buffer holds.
+         */
+        private void parse() throws IOException {
+            while (!closed && in.hasRemaining()) {
+                switch (state) {
+                    case HEAD: {
+                        int end = indexOf(in, in.position(), CRLFCRLF);
+                        if (end < 0) {
+                            if (in.remaining() > MAX_HEAD_SIZE) {
+                                throw new IOException("Response head larger than " + MAX_HEAD_SIZE + " bytes");
+                            }
+                            return;
+                        }
+                        parseHead(in.position(), end);
+                        in.position(end + CRLFCRLF.length);
+                        break;
+                    }
+                    case BODY:
+                    case CHUNK_DATA: {
+                        int skip = (int) Math.min(remaining, in.remaining());
+                        in.position(in.position() + skip);
+                        remaining -= skip;
+                        if (remaining == 0) {
+                            if (state == ParseState.BODY) {
+                                complete();
+                            } else {
+                                state = ParseState.CHUNK_SIZE;
+                            }
+                        }
+                        break;
+                    }
+                    case UNTIL_CLOSE:
+                        in.position(in.limit());
+                        return;
+                    case CHUNK_SIZE: {
+                        int end = indexOf(in, in.position(), CRLF);
+                        if (end < 0) {
+                            return;
+                        }
+                        long size = parseHex(in, in.position(), end);
+                        in.position(end + CRLF.length);
+                        if (size == 0) {
+                            state = ParseState.TRAILER;
+                        } else {
+                            // The chunk data is followed by its own CRLF
+                            remaining = size + CRLF.length;
+                            state = ParseState.CHUNK_DATA;
+                        }
+                        break;
+                    }
+                    case TRAILER: {
+                        int end = indexOf(in, in.position(), CRLF);
+                        if (end < 0) {
+                            return;
+                        }
+                        boolean last = end == in.position();
+                        in.position(end + CRLF.length);
+                        if (last) {
+                            complete();
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Reads the status code and the body framing from the head between start and end.
+         */
+        private void parseHead(int start, int end) throws IOException {
+            if (inFlight.isEmpty()) {
+                throw new IOException("Response without a request");
+            }
+            // "HTTP/1.1 200 OK": the status code is at a fixed offset
+            if (end - start < 12) {
+                throw new IOException("Malformed status line");
+            }
+            status = (in.get(start + 9) - '0') * 100 + (in.get(start + 10) - '0') * 10 + (in.get(start + 11) - '0');
+            long contentLength = -1;
+            boolean chunked = false;
+            closeAfterResponse = false;
+            int line = indexOf(in, start, CRLF);
+            while (line >= 0 && line < end) {
+                int next = line + CRLF.length;
+                if (startsWithIgnoreCase(in, next, CONTENT_LENGTH)) {
+                    contentLength = parseDecimal(in, next + CONTENT_LENGTH.length, end);
+                } else if (startsWithIgnoreCase(in, next, TRANSFER_ENCODING)) {
+                    chunked = true;
+                } else if (startsWithIgnoreCase(in, next, CONNECTION)) {
+                    int value = next + CONNECTION.length;
+                    while (value < end && in.get(value) == ' ') {
+                        value++;
+                    }
+                    closeAfterResponse = startsWithIgnoreCase(in, value, CLOSE);
+                }
+                line = indexOf(in, next, CRLF);
+            }
+            
+            if (inFlight.peek().headRequest || status == 204 || status == 304) {
+                complete();
+            } else if (chunked) {
+                state = ParseState.CHUNK_SIZE;
+            } else if (contentLength >= 0) {
+                remaining = contentLength;
+                state = ParseState.BODY;
+                if (contentLength == 0) {
+                    complete();
+                }
+            } else {
+                closeAfterResponse = true;
+                state = ParseState.UNTIL_CLOSE;
+            }
+        }
+        
+        private void complete() {
+            state = ParseState.HEAD;
+            inFlight.poll().future.complete(status);
+            offerIfAvailable();
+        }
+        
+        void fail(IOException e) {
+            Pending pending;
+            while ((pending = inFlight.poll()) != null) {
+                pending.future.completeExceptionally(e);
+            }
+            close();
+        }
+        
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connections.remove(this);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Error closing load client connection: {}", e.toString());
+            }
+        }
+    }
+    
+    private static int indexOf(ByteBuffer buffer, int from, byte[] pattern) {
+        int last = buffer.limit() - pattern.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buffer.get(i + j) != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+    
+    private static boolean startsWithIgnoreCase(ByteBuffer buffer, int from, byte[] lowerCasePrefix) {
+        if (buffer.limit() - from < lowerCasePrefix.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCasePrefix.length; i++) {
+            byte b = buffer.get(from + i);
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != lowerCasePrefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static long parseDecimal(ByteBuffer buffer, int from, int end) throws IOException {
+        long value = 0;
+        boolean digits = false;
+        for (int i = from; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                digits = true;
+            } else if (b != ' ' || digits) {
+                break;
+            }
+        }
+        if (!digits) {
+            throw new IOException("Invalid Content-Length");
+        }
+        return value;
+    }
+    
+    private static long parseHex(ByteBuffer buffer, int from, int end) throws IOException {
+        long value = 0;
+        int i = from;
+        for (; i < end; i++) {
+            int digit = Character.digit(buffer.get(i), 16);
+            if (digit < 0) {
+                break;
+            }
+            value = value * 16 + digit;
+        }
+        if (i == from) {
+            throw new IOException("Invalid chunk size");
+        }
+        return value;
+    }
+}
\ No newline at end of file
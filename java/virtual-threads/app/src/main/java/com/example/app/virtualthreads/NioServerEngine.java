@@ -0,0 +1,451 @@
+package com.example.app.virtualthreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP/1.1 server engine built on NIO selectors.
+ *
+ * One acceptor thread hands new connections round-robin to a set of selector loops, each
+ * running on its own platform thread. The loops only do non-blocking socket I/O and request
+ * parsing; every parsed request is handed to the executor (one virtual thread per request)
+ * where the registered filters and handler run. Connections are kept alive and may pipeline
+ * requests, see {@link NioConnection}.
+ */
+public class NioServerEngine implements ServerEngine {
+    
+    private static final Logger logger = LoggerFactory.getLogger(NioServerEngine.class);
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final long IDLE_CHECK_INTERVAL_MS = 1000;
+    
+    private final int selectorCount;
+    private final List<Context> contexts = new CopyOnWriteArrayList<>();
+    private final ConnectionMetrics connectionMetrics = new ConnectionMetrics();
+    private final AtomicInteger inFlightExchanges = new AtomicInteger(0);
+    private ServerSocketChannel serverChannel;
+    private SelectorLoop[] loops;
+    private Thread acceptorThread;
+    private Executor executor;
+    private volatile boolean running;
+    
+    public NioServerEngine(int selectorCount) {
+        if (selectorCount < 1) {
+            throw new IllegalArgumentException("selectorCount must be positive");
+        }
+        this.selectorCount = selectorCount;
+    }
+    
+    @Override
+    public HttpContext createContext(String path, HttpHandler handler) {
+        Context context = new Context(path, handler);
+        contexts.add(context);
+        return context;
+    }
+    
+    @Override
+    public void start(InetSocketAddress address, Executor executor) throws IOException {
+        this.executor = executor;
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(address, 1024);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+        serverChannel = channel;
+        
+        running = true;
+        loops = new SelectorLoop[selectorCount];
+        try {
+            for (int i = 0; i < selectorCount; i++) {
+                loops[i] = new SelectorLoop(Selector.open(), "nio-selector-" + i);
+                loops[i].thread.start();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Undo the bind and the loops already running
+            stop(0);
+            throw e;
+        }
+        acceptorThread = Thread.ofPlatform().name("nio-acceptor").start(this::acceptLoop);
+        
+        logger.info("NIO engine started with {} selector loops", selectorCount);
+    }
+    
+    @Override
+    public void stop(int delaySeconds) {
+        running = false;
+        // start() may have failed, or never run, before the channel or the loops existed
+        if (serverChannel == null) {
+            return;
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            logger.warn("Error closing server channel", e);
+        }
+        
+        // Give in-flight exchanges a chance to finish before tearing down the loops
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(delaySeconds);
+        while (inFlightExchanges.get() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        
+        for (SelectorLoop loop : loops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+        if (acceptorThread == null) {
+            return;
+        }
+        try {
+            acceptorThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    @Override
+    public String name() {
+        return "nio";
+    }
+    
+    @Override
+    public Optional<ConnectionMetrics> connectionMetrics() {
+        return Optional.of(connectionMetrics);
+    }
+    
+    boolean isRunning() {
+        return running;
+    }
+    
+    /**
+     * Accepts connections and distributes them over the selector loops.
+     */
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                SelectorLoop loop = loops[next];
+                next = (next + 1) % loops.length;
+                loop.execute(() -> loop.register(channel));
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("Error accepting connection", e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Finds the context with the longest path prefix matching the request path.
+     */
+    private Context findContext(String path) {
+        Context match = null;
+        for (Context context : contexts) {
+            if (path.startsWith(context.path)
+                    && (match == null || context.path.length() > match.path.length())) {
+                match = context;
+            }
+        }
+        return match;
+    }
+    
+    /**
+     * Runs the filter chain and handler for a parsed request on the executor.
+     *
+     * @param peerClosed completed by the connection if the client goes away first
+     */
+    void dispatch(NioConnection connection, HttpRequestParser.Request request, long sequence,
+            boolean keepAlive, CompletableFuture<Void> peerClosed) {
+        Context context = findContext(request.uri.getPath() == null ? "/" : request.uri.getPath());
+        if (context == null) {
+            connection.sendError(sequence, 404, !keepAlive);
+            return;
+        }
+        
+        inFlightExchanges.incrementAndGet();
+        NioHttpExchange exchange = new NioHttpExchange(connection, context, request, sequence, keepAlive);
+        exchange.setAttribute(DeadlineFilter.PEER_CLOSED_ATTRIBUTE, peerClosed);
+        try {
+            executor.execute(() -> {
+                try {
+                    new Filter.Chain(context.getFilters(), context.getHandler()).doFilter(exchange);
+                } catch (Throwable t) {
+                    logger.warn("Handler for {} failed", context.path, t);
+                } finally {
+                    exchange.close();
+                    inFlightExchanges.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlightExchanges.decrementAndGet();
+            connection.sendError(sequence, 503, !keepAlive);
+        }
+    }
+    
+    /**
+     * An event loop owning a selector and the connections registered with it.
+     *
+     * All channel and selection-key operations happen on the loop's own thread; other
+     * threads submit work through {@link #execute(Runnable)}.
+     */
+    final class SelectorLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final List<NioConnection> pendingFlushes = new ArrayList<>();
+        private final Thread thread;
+        private long lastIdleCheckNanos = System.nanoTime();
+        
+        SelectorLoop(Selector selector, String name) {
+            this.selector = selector;
+            this.thread = Thread.ofPlatform().name(name).unstarted(this);
+        }
+        
+        void execute(Runnable task) {
+            if (Thread.currentThread() == thread) {
+                task.run();
+                return;
+            }
+            tasks.add(task);
+            selector.wakeup();
+        }
+        
+        /**
+         * Flushes the connection at the end of the current loop iteration.
+         */
+        void scheduleFlush(NioConnection connection) {
+            pendingFlushes.add(connection);
+        }
+        
+        void register(SocketChannel channel) {
+            try {
+                NioConnection connection = new NioConnection(NioServerEngine.this, this, channel,
+                        connectionMetrics);
+                connection.register(channel.register(selector, SelectionKey.OP_READ, connection));
+            } catch (IOException e) {
+                logger.warn("Error registering connection", e);
+                closeQuietly(channel);
+            }
+        }
+        
+        void shutdown() {
+            execute(() -> {
+                // Responses handed over just before the stop are still queued; write them first
+                flushPending();
+                for (SelectionKey key : selector.keys()) {
+                    ((NioConnection) key.attachment()).close();
+                }
+                closeQuietly(selector);
+            });
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        /**
+         * Runs until the selector is closed. A failure is confined to what it came from: a
+         * RuntimeException from a task is logged, one from a connection's callbacks (including
+         * a CancelledKeyException) closes that connection, and the loop carries on serving the
+         * others.
+         */
+        @Override
+        public void run() {
+            while (selector.isOpen()) {
+                try {
+                    selector.select(IDLE_CHECK_INTERVAL_MS);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            logger.warn("Selector loop task failed", e);
+                        }
+                    }
+                    if (!selector.isOpen()) {
+                        break;
+                    }
+                    
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        try {
+                            if (key.isWritable()) {
+                                connection.flush();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.onReadable();
+                            }
+                        } catch (RuntimeException e) {
+                            closeAfterError(connection, e);
+                        }
+                    }
+                    
+                    flushPending();
+                    closeIdleConnections();
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Selector loop error", e);
+                }
+            }
+        }
+        
+        private void closeAfterError(NioConnection connection, RuntimeException e) {
+            logger.warn("Closing connection after an error in the selector loop", e);
+            try {
+                connection.close();
+            } catch (RuntimeException closeError) {
+                logger.debug("Error closing connection: {}", closeError.toString());
+            }
+        }
+        
+        /**
+         * One gathering write per connection for everything completed this iteration.
+         */
+        private void flushPending() {
+            // Index loop: a flush can resume reading and complete further responses
+            for (int i = 0; i < pendingFlushes.size(); i++) {
+                NioConnection connection = pendingFlushes.get(i);
+                try {
+                    connection.flush();
+                } catch (RuntimeException e) {
+                    closeAfterError(connection, e);
+                }
+            }
+            pendingFlushes.clear();
+        }
+        
+        private void closeIdleConnections() {
+            long now = System.nanoTime();
+            if (now - lastIdleCheckNanos < TimeUnit.MILLISECONDS.toNanos(IDLE_CHECK_INTERVAL_MS)) {
+                return;
+            }
+            lastIdleCheckNanos = now;
+            for (SelectionKey key : selector.keys()) {
+                NioConnection connection = (NioConnection) key.attachment();
+                try {
+                    if (key.isValid() && connection.isIdle(now, IDLE_TIMEOUT_NANOS)) {
+                        connection.close();
+                    }
+                } catch (RuntimeException e) {
+                    closeAfterError(connection, e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * A registered path prefix with its handler and filters.
+     */
+    static final class Context extends HttpContext {
+        private final String path;
+        private final List<Filter> filters = new CopyOnWriteArrayList<>();
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        private volatile HttpHandler handler;
+        private volatile Authenticator authenticator;
+        
+        Context(String path, HttpHandler handler) {
+            this.path = path;
+            this.handler = handler;
+        }
+        
+        @Override
+        public HttpHandler getHandler() {
+            return handler;
+        }
+        
+        @Override
+        public void setHandler(HttpHandler handler) {
+            this.handler = handler;
+        }
+        
+        @Override
+        public String getPath() {
+            return path;
+        }
+        
+        /**
+         * The NIO engine is not a com.sun.net.httpserver.HttpServer, so there is none to return.
+         */
+        @Override
+        public HttpServer getServer() {
+            return null;
+        }
+        
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+        
+        @Override
+        public List<Filter> getFilters() {
+            return filters;
+        }
+        
+        @Override
+        public Authenticator setAuthenticator(Authenticator auth) {
+            Authenticator previous = authenticator;
+            authenticator = auth;
+            return previous;
+        }
+        
+        @Override
+        public Authenticator getAuthenticator() {
+            return authenticator;
+        }
+    }
+    
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Nothing useful to do while shutting down
+        }
+    }
+}
\ No newline at end of file
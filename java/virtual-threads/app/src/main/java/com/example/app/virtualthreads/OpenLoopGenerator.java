@@ -0,0 +1,155 @@
+package com.example.app.virtualthreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator: sends requests at a given average arrival rate, on a schedule
+ * fixed in advance, whether or not earlier requests have been answered.
+ *
+ * A closed loop (send, wait, send again) slows down together with the server, so the
+ * requests that would have been sent during a stall are never sent and their latency is
+ * never measured. Here the n-th request is due at the time the profile's
+ * {@link ArrivalProcess} gives it (start + n / rate for constant arrivals). Latency is measured
+ * from that intended time, so time spent queued behind a stall, in the server or in this
+ * generator, counts against the response time (see {@link LoadResult}).
+ *
+ * The schedule runs on the calling thread, which parks until each send time and spins for
+ * the last few microseconds. Responses are handled asynchronously by the {@link LoadClient}.
+ */
+public class OpenLoopGenerator {
+    
+    private static final Logger logger = LoggerFactory.getLogger(OpenLoopGenerator.class);
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long LATE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long COMPLETION_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    
+    private final LoadClient client;
+    private final double ratePerSecond;
+    private final Duration duration;
+    private final Duration warmup;
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private IntervalRecorder intervals;
+    
+    /**
+     * Creates a generator.
+     *
+     * @param maxInFlight requests outstanding beyond this are not sent but counted as errors,
+     *                    so a dead server cannot make the generator exhaust memory
+     */
+    public OpenLoopGenerator(LoadClient client, double ratePerSecond, Duration duration, Duration warmup,
+            int maxInFlight) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        this.client = client;
+        this.ratePerSecond = ratePerSecond;
+        this.duration = duration;
+        this.warmup = warmup;
+        this.maxInFlight = maxInFlight;
+    }
+    
+    /**
+     * Also records every request, warmup included, into the recorder, for a time series of
+     * the run (see {@link IntervalReporter}).
+     */
+    public void setIntervalRecorder(IntervalRecorder intervals) {
+        this.intervals = intervals;
+    }
+    
+    /**
+     * Runs the warmup and the measured period, then waits for outstanding responses.
+     *
+     * @param workload the request mix and the arrival process
+     */
+    public LoadResult run(WorkloadProfile workload) {
+        return run(workload, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10));
+    }
+    
+    /**
+     * Runs with the schedule starting at the given System.nanoTime value, so that several
+     * generators can start together.
+     */
+    public LoadResult run(WorkloadProfile workload, long startNanos) {
+        LoadResult result = new LoadResult(String.format("open loop %.0f req/s (%s client)", ratePerSecond, client.name()));
+        ArrivalProcess arrivals = workload.arrivals(ratePerSecond);
+        long start = startNanos;
+        long measureStart = start + warmup.toNanos();
+        long end = measureStart + duration.toNanos();
+        int unsent = 0;
+        IntervalRecorder intervals = this.intervals;
+        
+        while (true) {
+            long intended = start + arrivals.nextArrivalNanos();
+            if (intended >= end) {
+                break;
+            }
+            waitUntil(intended);
+            
+            LoadRequest request = workload.next();
+            LoadResult.Endpoint endpoint = intended >= measureStart ? result.endpoint(request.name()) : null;
+            long sent = System.nanoTime();
+            if (endpoint != null && sent - intended > LATE_NANOS) {
+                endpoint.recordLate();
+            }
+            if (inFlight.get() >= maxInFlight) {
+                unsent++;
+                if (intervals != null) {
+                    intervals.record(sent - intended, false);
+                }
+                if (endpoint != null) {
+                    endpoint.recordUnsent();
+                }
+                continue;
+            }
+            
+            inFlight.incrementAndGet();
+            client.send(request).whenComplete((status, failure) -> {
+                long done = System.nanoTime();
+                boolean success = failure == null && status == 200;
+                if (intervals != null) {
+                    intervals.record(done - intended, success);
+                }
+                if (endpoint != null) {
+                    endpoint.record(intended, sent, done, success);
+                }
+                inFlight.decrementAndGet();
+            });
+        }
+        
+        awaitOutstanding();
+        result.setElapsedNanos(end - measureStart);
+        if (unsent > 0) {
+            logger.warn("{} requests were not sent because {} were already in flight", unsent, maxInFlight);
+        }
+        return result;
+    }
+    
+    private static void waitUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+    
+    private void awaitOutstanding() {
+        long deadline = System.nanoTime() + COMPLETION_TIMEOUT_NANOS;
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        if (inFlight.get() > 0) {
+            logger.warn("{} requests still outstanding after {}s; they are not in the results",
+                    inFlight.get(), TimeUnit.NANOSECONDS.toSeconds(COMPLETION_TIMEOUT_NANOS));
+        }
+    }
+}
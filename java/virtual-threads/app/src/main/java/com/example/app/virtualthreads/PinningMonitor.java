@@ -0,0 +1,254 @@
+package com.example.app.virtualthreads;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Watches for virtual threads that block while pinned to their carrier, in production, and
+ * ranks the code responsible.
+ *
+ * A JFR stream subscribes to jdk.VirtualThreadPinned (a virtual thread parked, slept or
+ * waited while it could not unmount, typically inside synchronized, for at least the
+ * threshold) and jdk.VirtualThreadSubmitFailed (the scheduler could not take a virtual
+ * thread at all). Events are grouped by the top frames of their stack, starting at the
+ * first frame outside the JDK so that the group names the caller rather than Thread.sleep,
+ * and every group keeps its count and its total and longest pinned time. Unlike
+ * -Djdk.tracePinnedThreads this needs no restart and prints nothing per event.
+ */
+public class PinningMonitor implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PinningMonitor.class);
+    private static final String PINNED = "jdk.VirtualThreadPinned";
+    private static final String SUBMIT_FAILED = "jdk.VirtualThreadSubmitFailed";
+    
+    private final int stackDepth;
+    private final Map<String, Site> sites = new ConcurrentHashMap<>();
+    private final LongAdder submitFailures = new LongAdder();
+    private final AtomicLong flushes = new AtomicLong();
+    private final RecordingStream stream;
+    
+    /**
+     * Starts monitoring.
+     *
+     * @param threshold  pins shorter than this are not recorded (JFR's own default is 20ms)
+     * @param stackDepth number of frames that identify a pinning site
+     */
+    public PinningMonitor(Duration threshold, int stackDepth) {
+        this.stackDepth = stackDepth;
+        RecordingStream started = null;
+        try {
+            started = new RecordingStream();
+            started.enable(PINNED).withThreshold(threshold).withStackTrace();
+            started.enable(SUBMIT_FAILED).withStackTrace();
+            started.setMaxAge(Duration.ofSeconds(10));
+            started.onEvent(PINNED, event -> site(event).record(event.getDuration().toNanos()));
+            started.onEvent(SUBMIT_FAILED, event -> {
+                submitFailures.increment();
+                site(event).submitFailures.increment();
+            });
+            started.onFlush(flushes::incrementAndGet);
+            started.startAsync();
+        } catch (RuntimeException e) {
+            logger.warn("JFR streaming unavailable, pinning will not be monitored: {}", e.toString());
+            if (started != null) {
+                started.close();
+            }
+            started = null;
+        }
+        this.stream = started;
+    }
+    
+    /**
+     * Starts monitoring pins of 1ms or more, with sites told apart by their top 5 frames.
+     * The threshold can be changed with the pinning.threshold system property, e.g. 20ms.
+     */
+    public static PinningMonitor start() {
+        return new PinningMonitor(LoadOptions.parseDuration(System.getProperty("pinning.threshold", "1ms")), 5);
+    }
+    
+    private Site site(RecordedEvent event) {
+        String stack = describe(event.getStackTrace());
+        return sites.computeIfAbsent(stack, Site::new);
+    }
+    
+    /**
+     * The top frames of the stack from the first frame outside the JDK, one per line.
+     */
+    private String describe(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "(no stack trace)";
+        }
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        int first = 0;
+        while (first < frames.size() - 1 && isJdk(frames.get(first))) {
+            first++;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = first; i < Math.min(frames.size(), first + stackDepth); i++) {
+            RecordedFrame frame = frames.get(i);
+            if (i > first) {
+                sb.append('\n');
+            }
+            sb.append(frame.getMethod().getType().getName()).append('.').append(frame.getMethod().getName());
+            if (frame.getLineNumber() > 0) {
+                sb.append(':').append(frame.getLineNumber());
+            }
+        }
+        return sb.toString();
+    }
+    
+    private static boolean isJdk(RecordedFrame frame) {
+        String type = frame.getMethod().getType().getName();
+        return type.startsWith("java.") || type.startsWith("jdk.") || type.startsWith("sun.");
+    }
+    
+    /**
+     * Waits until the events recorded so far have been counted. Call before reading the
+     * results of a run that has just finished; JFR delivers events about once a second.
+     */
+    public void flush() {
+        if (stream == null) {
+            return;
+        }
+        // The second flush after now is certain to cover every event committed before it
+        long target = flushes.get() + 2;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flushes.get() < target && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+    
+    /**
+     * The pinning sites seen so far, the longest total pinned time first.
+     */
+    public List<Site> topSites(int limit) {
+        List<Site> sorted = new ArrayList<>(sites.values());
+        sorted.sort(Comparator.comparingLong(Site::totalNanos).reversed()
+                .thenComparing(Comparator.comparingLong(Site::submitFailures).reversed()));
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+    
+    public long pinnedCount() {
+        return sites.values().stream().mapToLong(Site::count).sum();
+    }
+    
+    public long pinnedNanos() {
+        return sites.values().stream().mapToLong(Site::totalNanos).sum();
+    }
+    
+    public long submitFailures() {
+        return submitFailures.sum();
+    }
+    
+    /**
+     * Adds the totals to the report: pinned events, total and longest pinned time, and
+     * failed submits.
+     */
+    public void addTo(BenchmarkReport report, String prefix) {
+        report.value(prefix + "pinning.events", "events", true, pinnedCount());
+        report.value(prefix + "pinning.total", "ms", true, pinnedNanos() / 1e6);
+        report.value(prefix + "pinning.max", "ms", true,
+                sites.values().stream().mapToLong(Site::maxNanos).max().orElse(0) / 1e6);
+        report.value(prefix + "pinning.submitFailed", "events", true, submitFailures());
+    }
+    
+    /**
+     * Appends the top sites as a table, each followed by its frames.
+     */
+    public void appendTo(StringBuilder sb, int limit) {
+        sb.append(String.format("Pinned: %d events, %.1f ms in total; %d failed submits%n", pinnedCount(),
+                pinnedNanos() / 1e6, submitFailures()));
+        for (Site site : topSites(limit)) {
+            sb.append(String.format("%8d pins %10.1f ms total %8.1f ms max %6d failed submits%n", site.count(),
+                    site.totalNanos() / 1e6, site.maxNanos() / 1e6, site.submitFailures()));
+            site.stack.lines().forEach(frame -> sb.append("        at ").append(frame).append('\n'));
+        }
+    }
+    
+    /**
+     * The top sites as JSON, with each stack as an array of frames.
+     */
+    public String toJson(int limit) {
+        StringBuilder sb = new StringBuilder("{\"events\": ").append(pinnedCount());
+        Json.number(sb.append(", \"totalMillis\": "), pinnedNanos() / 1e6);
+        sb.append(", \"submitFailed\": ").append(submitFailures()).append(", \"sites\": [");
+        String separator = "\n";
+        for (Site site : topSites(limit)) {
+            sb.append(separator).append("  {\"count\": ").append(site.count());
+            Json.number(sb.append(", \"totalMillis\": "), site.totalNanos() / 1e6);
+            Json.number(sb.append(", \"maxMillis\": "), site.maxNanos() / 1e6);
+            sb.append(", \"submitFailed\": ").append(site.submitFailures()).append(", \"stack\": [");
+            String frameSeparator = "";
+            for (String frame : site.stack.split("\n")) {
+                Json.quote(sb.append(frameSeparator), frame);
+                frameSeparator = ", ";
+            }
+            sb.append("]}");
+            separator = ",\n";
+        }
+        return sb.append("\n]}\n").toString();
+    }
+    
+    @Override
+    public void close() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+    
+    /**
+     * One place in the code where virtual threads were pinned.
+     */
+    public static class Site {
+        final String stack;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder submitFailures = new LongAdder();
+        
+        Site(String stack) {
+            this.stack = stack;
+        }
+        
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+        
+        public String stack() {
+            return stack;
+        }
+        
+        public long count() {
+            return count.sum();
+        }
+        
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+        
+        public long maxNanos() {
+            return maxNanos.get();
+        }
+        
+        public long submitFailures() {
+            return submitFailures.sum();
+        }
+    }
+}
\ No newline at end of file
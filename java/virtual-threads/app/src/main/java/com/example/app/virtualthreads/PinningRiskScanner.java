@@ -0,0 +1,494 @@
+package com.example.app.virtualthreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Finds synchronized code in compiled classes that can block, and so pin a virtual thread's
+ * carrier, before it reaches production.
+ *
+ * The scanner reads every class file under the given directories with
+ * {@link ClassFileReader} and builds a call graph between their methods. A call on a scanned
+ * type also leads to every override in its scanned subtypes, since the receiver could be any
+ * of them. A method blocks if it calls a known blocking JDK method (Thread.sleep,
+ * Object.wait, lock and condition waits, futures, blocking queues, stream, socket, file and
+ * JDBC I/O) or calls a method that blocks. javac names the receiver's static type as the
+ * owner of a call, e.g. FileInputStream rather than InputStream, so the JDK methods are
+ * matched against every supertype of the owner, looked up through the platform class loader;
+ * in-memory streams such as ByteArrayInputStream are exempt. A monitor region is the body of a synchronized
+ * method, or the bytecode between a monitorenter and its monitorexit. Every region with a
+ * call that blocks is a finding, reported with the call chain that leads to the blocking
+ * call.
+ *
+ * Calls the scanner cannot follow are not reported: calls into libraries other than the
+ * listed JDK methods, lambdas and other code reached only through JDK interfaces such as
+ * Runnable, and reflection. A finding is a risk, not proof: the blocking call may sit
+ * behind a condition that never holds inside the region.
+ *
+ * Usage: PinningRiskScanner &lt;classes dir&gt;... [threshold=0] [allow=&lt;file&gt;]
+ * [report=&lt;file&gt;]. The allow file lists methods whose regions are known and accepted,
+ * one per line as com.example.Outer$Inner.method, with # comments. The exit status is 1 when
+ * more findings than the threshold are not allowed, so a build can fail on them.
+ */
+public class PinningRiskScanner {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PinningRiskScanner.class);
+    
+    /**
+     * Known blocking JDK methods: owner type, method names, and an optional descriptor
+     * fragment for methods that only block in some overloads (e.g. poll with a timeout).
+     */
+    private static final List<BlockingRule> BLOCKING = List.of(
+            new BlockingRule("java/lang/Thread", null, "sleep", "join"),
+            new BlockingRule("java/lang/Object", null, "wait"),
+            new BlockingRule("java/util/concurrent/locks/LockSupport", null, "park", "parkNanos", "parkUntil"),
+            new BlockingRule("java/util/concurrent/locks/Lock", null, "lock", "lockInterruptibly"),
+            new BlockingRule("java/util/concurrent/locks/ReentrantLock", null, "lock", "lockInterruptibly"),
+            new BlockingRule("java/util/concurrent/locks/ReentrantReadWriteLock$ReadLock", null, "lock",
+                    "lockInterruptibly"),
+            new BlockingRule("java/util/concurrent/locks/ReentrantReadWriteLock$WriteLock", null, "lock",
+                    "lockInterruptibly"),
+            new BlockingRule("java/util/concurrent/locks/StampedLock", null, "writeLock", "readLock",
+                    "writeLockInterruptibly", "readLockInterruptibly"),
+            new BlockingRule("java/util/concurrent/locks/Condition", null, "await", "awaitNanos", "awaitUntil",
+                    "awaitUninterruptibly"),
+            new BlockingRule("java/util/concurrent/Semaphore", null, "acquire", "acquireUninterruptibly"),
+            new BlockingRule("java/util/concurrent/Semaphore", "Ljava/util/concurrent/TimeUnit;", "tryAcquire"),
+            new BlockingRule("java/util/concurrent/CountDownLatch", null, "await"),
+            new BlockingRule("java/util/concurrent/CyclicBarrier", null, "await"),
+            new BlockingRule("java/util/concurrent/Phaser", null, "awaitAdvance", "awaitAdvanceInterruptibly",
+                    "arriveAndAwaitAdvance"),
+            new BlockingRule("java/util/concurrent/Future", null, "get"),
+            new BlockingRule("java/util/concurrent/FutureTask", null, "get"),
+            new BlockingRule("java/util/concurrent/CompletableFuture", null, "get", "join"),
+            new BlockingRule("java/util/concurrent/ExecutorService", null, "awaitTermination", "invokeAll",
+                    "invokeAny", "close"),
+            new BlockingRule("java/util/concurrent/BlockingQueue", null, "take", "put"),
+            new BlockingRule("java/util/concurrent/BlockingQueue", "Ljava/util/concurrent/TimeUnit;", "poll", "offer"),
+            new BlockingRule("java/util/concurrent/LinkedBlockingQueue", null, "take", "put"),
+            new BlockingRule("java/util/concurrent/ArrayBlockingQueue", null, "take", "put"),
+            new BlockingRule("java/util/concurrent/StructuredTaskScope", null, "join", "joinUntil"),
+            new BlockingRule("java/util/concurrent/StructuredTaskScope$ShutdownOnFailure", null, "join", "joinUntil"),
+            new BlockingRule("java/io/InputStream", null, "read", "readAllBytes", "readNBytes", "transferTo"),
+            new BlockingRule("java/io/OutputStream", null, "write", "flush"),
+            new BlockingRule("java/io/Reader", null, "read"),
+            new BlockingRule("java/io/BufferedReader", null, "read", "readLine"),
+            new BlockingRule("java/io/Writer", null, "write", "flush"),
+            new BlockingRule("java/io/RandomAccessFile", null, "read", "readFully", "write", "seek"),
+            new BlockingRule("java/net/Socket", null, "connect"),
+            new BlockingRule("java/net/ServerSocket", null, "accept"),
+            new BlockingRule("java/net/http/HttpClient", null, "send"),
+            new BlockingRule("java/nio/channels/SocketChannel", null, "read", "write", "connect"),
+            new BlockingRule("java/nio/channels/ServerSocketChannel", null, "accept"),
+            new BlockingRule("java/nio/channels/Selector", null, "select"),
+            new BlockingRule("java/nio/file/Files", null, "readAllBytes", "readString", "readAllLines", "write",
+                    "writeString", "copy", "lines", "newInputStream", "newOutputStream", "newBufferedReader",
+                    "newBufferedWriter"),
+            new BlockingRule("java/sql/DriverManager", null, "getConnection"),
+            new BlockingRule("java/sql/Connection", null, "*"),
+            new BlockingRule("java/sql/Statement", null, "*"),
+            new BlockingRule("java/sql/PreparedStatement", null, "*"),
+            new BlockingRule("java/sql/ResultSet", null, "next"));
+    
+    /**
+     * In-memory streams, whose reads and writes never block even though those of their
+     * supertypes can.
+     */
+    private static final Set<String> NON_BLOCKING = Set.of("java/io/ByteArrayInputStream",
+            "java/io/ByteArrayOutputStream", "java/io/StringReader", "java/io/StringWriter", "java/io/CharArrayReader",
+            "java/io/CharArrayWriter");
+    
+    private final Map<String, ClassFileReader.ClassInfo> classes = new LinkedHashMap<>();
+    private final Map<String, List<String>> subtypes = new HashMap<>();
+    private final Map<String, ClassFileReader.MethodInfo> methods = new HashMap<>();
+    /** Per method key that blocks, the call chain to a blocking call; see propagateBlocking. */
+    private final Map<String, List<String>> blockingPaths = new HashMap<>();
+    private boolean propagated;
+    private final Map<String, List<String>> jdkSupertypes = new HashMap<>();
+    
+    /**
+     * Reads every .class file under the given directories.
+     */
+    public static PinningRiskScanner scan(List<Path> directories) throws IOException {
+        PinningRiskScanner scanner = new PinningRiskScanner();
+        for (Path directory : directories) {
+            if (!Files.isDirectory(directory)) {
+                continue;
+            }
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(directory)) {
+                files = walk.filter(file -> file.toString().endsWith(".class")).toList();
+            }
+            for (Path file : files) {
+                try {
+                    scanner.add(ClassFileReader.read(Files.readAllBytes(file)));
+                } catch (IOException | RuntimeException e) {
+                    throw new IOException("Could not read " + file + ": " + e, e);
+                }
+            }
+        }
+        return scanner;
+    }
+    
+    private void add(ClassFileReader.ClassInfo info) {
+        classes.put(info.name, info);
+        if (info.superName != null) {
+            subtypes.computeIfAbsent(info.superName, k -> new ArrayList<>()).add(info.name);
+        }
+        for (String implemented : info.interfaces) {
+            subtypes.computeIfAbsent(implemented, k -> new ArrayList<>()).add(info.name);
+        }
+        for (ClassFileReader.MethodInfo method : info.methods) {
+            methods.put(method.key(), method);
+        }
+    }
+    
+    public int classCount() {
+        return classes.size();
+    }
+    
+    /**
+     * The monitor regions that can reach a blocking call, in class order.
+     */
+    public List<Finding> findings() {
+        propagateBlocking();
+        List<Finding> findings = new ArrayList<>();
+        for (ClassFileReader.ClassInfo info : classes.values()) {
+            for (ClassFileReader.MethodInfo method : info.methods) {
+                findings.addAll(findingsIn(method));
+            }
+        }
+        return findings;
+    }
+    
+    private List<Finding> findingsIn(ClassFileReader.MethodInfo method) {
+        List<Finding> findings = new ArrayList<>();
+        if (method.isSynchronized()) {
+            List<String> path = firstBlockingCall(method, method.instructions);
+            if (path != null) {
+                findings.add(new Finding(method, "synchronized method", method.line(0), path));
+            }
+            return findings;
+        }
+        // A synchronized block: from monitorenter to the monitorexit that balances it. The
+        // exception handler javac adds after the block only holds more monitorexits, so a depth
+        // that drops below zero is clamped rather than taken as a new region.
+        int depth = 0;
+        int regionStart = -1;
+        List<ClassFileReader.Instruction> region = new ArrayList<>();
+        for (ClassFileReader.Instruction instruction : method.instructions) {
+            if (instruction.opcode == ClassFileReader.MONITORENTER) {
+                if (depth++ == 0) {
+                    regionStart = instruction.pc;
+                    region.clear();
+                }
+            } else if (instruction.opcode == ClassFileReader.MONITOREXIT) {
+                depth = Math.max(0, depth - 1);
+                if (depth == 0 && regionStart >= 0) {
+                    List<String> path = firstBlockingCall(method, region);
+                    if (path != null) {
+                        findings.add(new Finding(method, "synchronized block", method.line(regionStart), path));
+                    }
+                    regionStart = -1;
+                }
+            } else if (depth > 0) {
+                region.add(instruction);
+            }
+        }
+        return findings;
+    }
+    
+    /**
+     * The chain from the first call among the instructions known to block, or null if none is.
+     */
+    private List<String> firstBlockingCall(ClassFileReader.MethodInfo method,
+            List<ClassFileReader.Instruction> instructions) {
+        for (ClassFileReader.Instruction call : instructions) {
+            if (!call.isCall()) {
+                continue;
+            }
+            String site = call + " (line " + method.line(call.pc) + ")";
+            if (isBlocking(call)) {
+                return List.of(site);
+            }
+            for (ClassFileReader.MethodInfo target : targets(call)) {
+                List<String> path = blockingPaths.get(target.key());
+                if (path != null) {
+                    List<String> chain = new ArrayList<>();
+                    chain.add(site);
+                    chain.addAll(path);
+                    return chain;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Finds every method that blocks, with a call chain to the blocking call: first those that
+     * make a blocking call themselves, then, pass after pass, those that call a method already
+     * known to block, until a pass finds no more. Computing it as a fixpoint rather than by
+     * depth-first search with memoization keeps methods on a call cycle from being settled
+     * as not blocking while the cycle is still being explored.
+     */
+    private void propagateBlocking() {
+        if (propagated) {
+            return;
+        }
+        propagated = true;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (ClassFileReader.MethodInfo method : methods.values()) {
+                if (blockingPaths.containsKey(method.key())) {
+                    continue;
+                }
+                List<String> path = firstBlockingCall(method, method.instructions);
+                if (path != null) {
+                    blockingPaths.put(method.key(), path);
+                    changed = true;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Whether the call is to a known blocking JDK method, on the owner named in the call or
+     * any JDK type it extends or implements. Methods declared in a scanned class are left to
+     * the call graph.
+     */
+    private boolean isBlocking(ClassFileReader.Instruction call) {
+        Set<String> types = new LinkedHashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.add(call.owner);
+        while (!pending.isEmpty()) {
+            String type = pending.pop();
+            ClassFileReader.ClassInfo info = classes.get(type);
+            if (info == null) {
+                types.addAll(jdkSupertypes(type));
+                continue;
+            }
+            if (methods.containsKey(type + "." + call.name + call.descriptor)) {
+                return false;
+            }
+            if (info.superName != null) {
+                pending.add(info.superName);
+            }
+            pending.addAll(info.interfaces);
+        }
+        for (String type : types) {
+            if (NON_BLOCKING.contains(type)) {
+                return false;
+            }
+        }
+        for (String type : types) {
+            for (BlockingRule rule : BLOCKING) {
+                if (rule.matches(type, call)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * The type and all its superclasses and interfaces, as internal names; just the type if
+     * the platform class loader does not know it.
+     */
+    private List<String> jdkSupertypes(String type) {
+        return jdkSupertypes.computeIfAbsent(type, name -> {
+            Class<?> loaded;
+            try {
+                loaded = Class.forName(name.replace('/', '.'), false, ClassLoader.getPlatformClassLoader());
+            } catch (ClassNotFoundException | LinkageError e) {
+                return List.of(name);
+            }
+            Set<String> supertypes = new LinkedHashSet<>();
+            Deque<Class<?>> pending = new ArrayDeque<>();
+            pending.add(loaded);
+            while (!pending.isEmpty()) {
+                Class<?> current = pending.pop();
+                if (supertypes.add(current.getName().replace('.', '/'))) {
+                    if (current.getSuperclass() != null) {
+                        pending.add(current.getSuperclass());
+                    }
+                    pending.addAll(List.of(current.getInterfaces()));
+                }
+            }
+            return List.copyOf(supertypes);
+        });
+    }
+    
+    /**
+     * The scanned methods a call can run: the declaration it resolves to, found by walking up
+     * from the named owner, and for virtual calls every override in a scanned subtype.
+     */
+    private List<ClassFileReader.MethodInfo> targets(ClassFileReader.Instruction call) {
+        List<ClassFileReader.MethodInfo> targets = new ArrayList<>();
+        String signature = call.name + call.descriptor;
+        for (String type = call.owner; type != null && classes.containsKey(type); type = classes.get(type).superName) {
+            ClassFileReader.MethodInfo declared = methods.get(type + "." + signature);
+            if (declared != null) {
+                targets.add(declared);
+                break;
+            }
+        }
+        if (call.isVirtual()) {
+            Deque<String> pending = new ArrayDeque<>(subtypes.getOrDefault(call.owner, List.of()));
+            Set<String> seen = new HashSet<>();
+            while (!pending.isEmpty()) {
+                String type = pending.pop();
+                if (!seen.add(type)) {
+                    continue;
+                }
+                ClassFileReader.MethodInfo override = methods.get(type + "." + signature);
+                if (override != null && !targets.contains(override)) {
+                    targets.add(override);
+                }
+                pending.addAll(subtypes.getOrDefault(type, List.of()));
+            }
+        }
+        return targets;
+    }
+    
+    /**
+     * Scans the directories, logs the findings that are not allowed, writes all of them to the
+     * report file if one is given, and returns the number of findings that are neither allowed nor within the
+     * threshold.
+     */
+    public static int run(String[] args) throws IOException {
+        List<Path> directories = new ArrayList<>();
+        int from = 0;
+        while (from < args.length && !args[from].contains("=")) {
+            directories.add(Path.of(args[from++]));
+        }
+        if (directories.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "Usage: PinningRiskScanner <classes dir>... [threshold=0] [allow=<file>] [report=<file>]");
+        }
+        LoadOptions options = LoadOptions.parse(args, from);
+        int threshold = options.getInt("threshold", 0);
+        Set<String> allowed = new HashSet<>();
+        if (options.has("allow")) {
+            for (String line : Files.readAllLines(Path.of(options.get("allow", "")))) {
+                String entry = line.replaceFirst("#.*", "").trim();
+                if (!entry.isEmpty()) {
+                    allowed.add(entry);
+                }
+            }
+        }
+        
+        PinningRiskScanner scanner = scan(directories);
+        List<Finding> findings = scanner.findings();
+        long failing = findings.stream().filter(finding -> !allowed.contains(finding.method())).count();
+        
+        // The log gets the findings to act on, the report all of them
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Pinning risk: %d classes scanned, %d synchronized regions can block "
+                + "(%d allowed), threshold %d%n", scanner.classCount(), findings.size(), findings.size() - failing,
+                threshold));
+        StringBuilder all = new StringBuilder(sb);
+        for (Finding finding : findings) {
+            boolean isAllowed = allowed.contains(finding.method());
+            finding.appendTo(all, isAllowed);
+            if (!isAllowed) {
+                finding.appendTo(sb, false);
+            }
+        }
+        sb.toString().lines().forEach(failing > threshold ? logger::error : logger::info);
+        if (options.has("report")) {
+            Path report = Path.of(options.get("report", ""));
+            if (report.getParent() != null) {
+                Files.createDirectories(report.getParent());
+            }
+            Files.writeString(report, all);
+        }
+        return failing > threshold ? (int) failing : 0;
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (run(args) > 0) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * A monitor region that can reach a blocking call.
+     */
+    public static class Finding {
+        private final ClassFileReader.MethodInfo method;
+        private final String kind;
+        private final int line;
+        private final List<String> path;
+        
+        Finding(ClassFileReader.MethodInfo method, String kind, int line, List<String> path) {
+            this.method = method;
+            this.kind = kind;
+            this.line = line;
+            this.path = path;
+        }
+        
+        /**
+         * The method holding the region, as com.example.Outer$Inner.method.
+         */
+        public String method() {
+            return method.toString();
+        }
+        
+        public String kind() {
+            return kind;
+        }
+        
+        public int line() {
+            return line;
+        }
+        
+        /**
+         * The calls from inside the region to the blocking call, each with its line.
+         */
+        public List<String> path() {
+            return path;
+        }
+        
+        void appendTo(StringBuilder sb, boolean allowed) {
+            sb.append("  ").append(method()).append(": ").append(kind).append(" at line ").append(line)
+              .append(allowed ? " (allowed)" : "").append('\n');
+            for (String call : path) {
+                sb.append("      -> ").append(call).append('\n');
+            }
+        }
+    }
+    
+    private static final class BlockingRule {
+        private final String owner;
+        private final String descriptorPart;
+        private final Set<String> names;
+        
+        BlockingRule(String owner, String descriptorPart, String... names) {
+            this.owner = owner;
+            this.descriptorPart = descriptorPart;
+            this.names = Set.of(names);
+        }
+        
+        boolean matches(String type, ClassFileReader.Instruction call) {
+            return type.equals(owner)
+                    && (names.contains("*") || names.contains(call.name))
+                    && (descriptorPart == null || call.descriptor.contains(descriptorPart));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+package com.example.app.virtualthreads;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The deadline of one request, and the means to cancel the virtual thread handling it.
+ *
+ * A {@link DeadlineFilter} attaches one to every exchange it passes through. Cancelling
+ * interrupts the handling thread, which unparks it from sleeps, lock waits, socket reads
+ * and joins, so a parked continuation is released instead of running to completion for
+ * a client that is no longer waiting.
+ */
+public class RequestDeadline {
+    
+    /**
+     * Exchange attribute under which the deadline is stored.
+     */
+    public static final String ATTRIBUTE = RequestDeadline.class.getName();
+    
+    /**
+     * Why a request stopped before its handler finished.
+     */
+    public enum CancelReason {
+        DEADLINE_EXCEEDED,
+        CLIENT_CLOSED
+    }
+    
+    private enum State {
+        ACTIVE,
+        COMPLETED,
+        /** Cancel has won; the reason is set and the interrupt is on its way. */
+        CANCELLING,
+        CANCELLED
+    }
+    
+    private final long deadlineNanos;
+    private final Thread thread;
+    private final AtomicReference<State> state = new AtomicReference<>(State.ACTIVE);
+    private volatile CancelReason reason;
+    
+    RequestDeadline(long deadlineNanos, Thread thread) {
+        this.deadlineNanos = deadlineNanos;
+        this.thread = thread;
+    }
+    
+    /**
+     * Returns the deadline of the exchange, or null if it has none.
+     */
+    public static RequestDeadline of(HttpExchange exchange) {
+        return (RequestDeadline) exchange.getAttribute(ATTRIBUTE);
+    }
+    
+    /**
+     * Time left until the deadline, in nanoseconds; zero or negative once it has passed.
+     */
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+    
+    /**
+     * The deadline as a wall-clock instant, e.g. for StructuredTaskScope.joinUntil.
+     */
+    public Instant toInstant() {
+        return Instant.now().plusNanos(remainingNanos());
+    }
+    
+    public boolean isCancelled() {
+        State current = state.get();
+        return current == State.CANCELLING || current == State.CANCELLED;
+    }
+    
+    /**
+     * The cancellation reason, or null if the request was not cancelled.
+     */
+    public CancelReason reason() {
+        return reason;
+    }
+    
+    /**
+     * Cancels the request and interrupts its thread, unless it has already completed or been
+     * cancelled; only the first cancel sets the reason.
+     *
+     * @return true if this call cancelled the request
+     */
+    boolean cancel(CancelReason cancelReason) {
+        if (!state.compareAndSet(State.ACTIVE, State.CANCELLING)) {
+            return false;
+        }
+        reason = cancelReason;
+        thread.interrupt();
+        state.set(State.CANCELLED);
+        return true;
+    }
+    
+    /**
+     * Marks the request completed so a racing cancel no longer interrupts the thread.
+     *
+     * If a cancel won instead, this waits the few instructions until it has interrupted the
+     * thread, so that the caller can clear the interrupt knowing that none is still to come
+     * and read the reason.
+     *
+     * @return false if the request had been cancelled before completing
+     */
+    boolean complete() {
+        if (state.compareAndSet(State.ACTIVE, State.COMPLETED)) {
+            return true;
+        }
+        while (state.get() == State.CANCELLING) {
+            Thread.onSpinWait();
+        }
+        return false;
+    }
+    
+    @Override
+    public String toString() {
+        return "RequestDeadline[remaining=" + TimeUnit.NANOSECONDS.toMillis(remainingNanos())
+                + "ms, state=" + state.get() + "]";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+package com.example.app.virtualthreads;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A response body of the form prefix + number + suffix, written without allocating.
+ *
+ * The prefix and suffix are encoded to UTF-8 once, up front. Each response copies them into
+ * a pooled byte[] and formats the number into it in place, so the fast path creates no
+ * String, StringBuilder or byte[] per request, and the Content-Length is the exact byte
+ * count rather than a character count.
+ *
+ * The pool is a fixed array of slots picked by thread id. Virtual thread ids are handed
+ * out sequentially, so concurrent requests spread over the slots; a request that finds its
+ * slot empty (taken by a concurrent request) simply allocates a buffer, which later
+ * replaces the pooled one.
+ */
+public class ResponseTemplate {
+    
+    private static final int POOL_SLOTS = 64;
+    // "-9223372036854775808"
+    private static final int MAX_LONG_LENGTH = 20;
+    
+    private final byte[] prefix;
+    private final byte[] suffix;
+    private final AtomicReferenceArray<byte[]> pool = new AtomicReferenceArray<>(POOL_SLOTS);
+    
+    public ResponseTemplate(String prefix, String suffix) {
+        this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+        this.suffix = suffix.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Sends the response headers with the exact length, then the body, and closes the stream.
+     */
+    public void send(HttpExchange exchange, int status, long value) throws IOException {
+        exchange.sendResponseHeaders(status, length(value));
+        try (OutputStream os = exchange.getResponseBody()) {
+            writeTo(os, value);
+        }
+    }
+    
+    /**
+     * Number of bytes the body for the value takes.
+     */
+    public int length(long value) {
+        return prefix.length + stringSize(value) + suffix.length;
+    }
+    
+    /**
+     * Writes the body for the value to the stream in a single write.
+     */
+    public void writeTo(OutputStream os, long value) throws IOException {
+        int slot = (int) Thread.currentThread().threadId() & (POOL_SLOTS - 1);
+        byte[] buffer = pool.getAndSet(slot, null);
+        if (buffer == null) {
+            buffer = new byte[prefix.length + MAX_LONG_LENGTH + suffix.length];
+        }
+        try {
+            os.write(buffer, 0, encode(value, buffer));
+        } finally {
+            pool.set(slot, buffer);
+        }
+    }
+    
+    /**
+     * Encodes the body into the buffer and returns its length.
+     */
+    int encode(long value, byte[] buffer) {
+        System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+        int end = prefix.length + stringSize(value);
+        writeDigits(value, buffer, end);
+        System.arraycopy(suffix, 0, buffer, end, suffix.length);
+        return end + suffix.length;
+    }
+    
+    /**
+     * Writes the decimal digits of the value backwards, ending just before the end index.
+     * Works on the negated value so that Long.MIN_VALUE needs no special case.
+     */
+    private static void writeDigits(long value, byte[] buffer, int end) {
+        long negative = value < 0 ? value : -value;
+        int pos = end;
+        do {
+            buffer[--pos] = (byte) ('0' - (negative % 10));
+            negative /= 10;
+        } while (negative != 0);
+        if (value < 0) {
+            buffer[--pos] = '-';
+        }
+    }
+    
+    /**
+     * Number of characters in the decimal representation of the value.
+     */
+    static int stringSize(long value) {
+        int sign = 0;
+        long negative = value;
+        if (value >= 0) {
+            negative = -value;
+        } else {
+            sign = 1;
+        }
+        long threshold = -10;
+        for (int digits = 1; digits < 19; digits++) {
+            if (negative > threshold) {
+                return digits + sign;
+            }
+            threshold *= 10;
+        }
+        return 19 + sign;
+    }
+}
\ No newline at end of file
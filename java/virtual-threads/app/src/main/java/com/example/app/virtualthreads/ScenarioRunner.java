@@ -0,0 +1,227 @@
+package com.example.app.virtualthreads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs scenarios such as pinning or basic each in a fresh JVM, with the virtual-thread
+ * scheduler, GC and heap set on the command line, and collects their results.
+ *
+ * The scheduler reads jdk.virtualThreadScheduler.parallelism once, when the first virtual
+ * thread starts; setting it later from inside the process does nothing. A scenario that
+ * depends on the carrier count therefore has to get it as a JVM flag, and a sweep over
+ * carrier counts needs one JVM per value. Each child writes its usual JSON results into a
+ * directory of its own, which the runner reads back; it then prints the metrics of every
+ * scenario side by side per parallelism and writes them together as sweep-&lt;scenario&gt;.
+ *
+ * Usage: scenarios &lt;name&gt;[,&lt;name&gt;...] [parallelism=1,2,4] [maxPoolSize=256] [gc=G1]
+ * [heap=512m] [jvmOptions=-Dx=y,...] [scenarioArgs=a,b,...] [timeout=30m]. parallelism
+ * defaults to the powers of two up to the number of cores; the other flags are left to the
+ * JVM unless given. scenarioArgs follow the scenario name on the child's command line, and
+ * the bench.* system properties of this process are passed on.
+ */
+public class ScenarioRunner {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ScenarioRunner.class);
+    
+    private final Class<?> mainClass;
+    private final LoadOptions options;
+    private final Path resultsDir;
+    
+    /**
+     * Creates a runner.
+     *
+     * @param mainClass the class each child runs, given the scenario name as its argument
+     */
+    public ScenarioRunner(Class<?> mainClass, LoadOptions options) {
+        this.mainClass = mainClass;
+        this.options = options;
+        this.resultsDir = BenchmarkReport.resultsFile("sweep", Instant.now(), "");
+    }
+    
+    /**
+     * Runs every scenario at every parallelism and returns the number of runs that failed.
+     */
+    public int run(List<String> scenarios) throws IOException, InterruptedException {
+        int[] parallelisms = parallelisms();
+        int failed = 0;
+        for (String scenario : scenarios) {
+            Map<Integer, BenchmarkReport> results = new LinkedHashMap<>();
+            for (int parallelism : parallelisms) {
+                BenchmarkReport report = runChild(scenario, parallelism);
+                if (report == null) {
+                    failed++;
+                } else {
+                    results.put(parallelism, report);
+                }
+            }
+            report(scenario, results);
+        }
+        return failed;
+    }
+    
+    private int[] parallelisms() {
+        if (options.has("parallelism")) {
+            return Stream.of(options.get("parallelism", "").split(","))
+                    .mapToInt(value -> Integer.parseInt(value.trim()))
+                    .toArray();
+        }
+        List<Integer> values = new ArrayList<>();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int value = 1; value < cores; value *= 2) {
+            values.add(value);
+        }
+        values.add(cores);
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+    
+    /**
+     * The JVM that runs one scenario at one parallelism, writing into the given directory.
+     */
+    ChildJvm child(String scenario, int parallelism, Path dir) {
+        ChildJvm jvm = new ChildJvm(mainClass)
+                .jvmOption("-Djdk.virtualThreadScheduler.parallelism=" + parallelism)
+                .jvmOption("-D" + BenchmarkReport.RESULTS_DIR_PROPERTY + "=" + dir.toAbsolutePath());
+        if (options.has("maxPoolSize")) {
+            jvm.jvmOption("-Djdk.virtualThreadScheduler.maxPoolSize=" + options.getInt("maxPoolSize", 256));
+        }
+        if (options.has("gc")) {
+            jvm.jvmOption("-XX:+Use" + options.get("gc", "G1") + "GC");
+        }
+        if (options.has("heap")) {
+            // A fixed heap size keeps heap resizing out of the measurement
+            jvm.jvmOption("-Xms" + options.get("heap", "")).jvmOption("-Xmx" + options.get("heap", ""));
+        }
+        for (String option : options.get("jvmOptions", "").split(",")) {
+            if (!option.isBlank()) {
+                jvm.jvmOption(option.trim());
+            }
+        }
+        for (String property : System.getProperties().stringPropertyNames()) {
+            if (property.startsWith("bench.") && !property.equals(BenchmarkReport.RESULTS_DIR_PROPERTY)) {
+                jvm.jvmOption("-D" + property + "=" + System.getProperty(property));
+            }
+        }
+        jvm.argument(scenario);
+        for (String argument : scenarioArguments()) {
+            jvm.argument(argument);
+        }
+        return jvm;
+    }
+    
+    /**
+     * The scenarioArgs, split at commas. A piece without '=' after a key=value piece
+     * continues that value, so that list options pass through: scenarioArgs=tasks=10,100
+     * gives the child tasks=10,100.
+     */
+    private List<String> scenarioArguments() {
+        List<String> arguments = new ArrayList<>();
+        for (String piece : options.get("scenarioArgs", "").split(",")) {
+            if (piece.isBlank()) {
+                continue;
+            }
+            int last = arguments.size() - 1;
+            if (!piece.contains("=") && last >= 0 && arguments.get(last).contains("=")) {
+                arguments.set(last, arguments.get(last) + "," + piece.trim());
+            } else {
+                arguments.add(piece.trim());
+            }
+        }
+        return arguments;
+    }
+    
+    /**
+     * Runs the child and reads back its report, or returns null (logged) if it failed or
+     * wrote none.
+     */
+    private BenchmarkReport runChild(String scenario, int parallelism) throws IOException, InterruptedException {
+        Path dir = resultsDir.resolve(scenario + "-p" + parallelism);
+        Files.createDirectories(dir);
+        ChildJvm jvm = child(scenario, parallelism, dir);
+        logger.info("Running {} with parallelism {}: {}", scenario, parallelism, String.join(" ", jvm.command()));
+        
+        Process process = new ProcessBuilder(jvm.command()).inheritIO().start();
+        long timeoutSeconds = options.getDuration("timeout", Duration.ofMinutes(30)).toSeconds();
+        if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            logger.warn("{} with parallelism {} did not finish within {}s", scenario, parallelism, timeoutSeconds);
+            return null;
+        }
+        if (process.exitValue() != 0) {
+            logger.warn("{} with parallelism {} exited with status {}", scenario, parallelism, process.exitValue());
+            return null;
+        }
+        
+        List<Path> reports;
+        try (Stream<Path> files = Files.list(dir)) {
+            reports = files.filter(file -> file.toString().endsWith(".json") && !file.toString().contains("-intervals-"))
+                    .sorted()
+                    .toList();
+        }
+        if (reports.isEmpty()) {
+            logger.warn("{} with parallelism {} wrote no results to {}", scenario, parallelism, dir);
+            return null;
+        }
+        // A scenario writes one report; the last one is the newest if it wrote several
+        return BenchmarkReport.read(reports.get(reports.size() - 1));
+    }
+    
+    private void report(String scenario, Map<Integer, BenchmarkReport> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        BenchmarkReport sweep = new BenchmarkReport("sweep-" + scenario).parameters(options)
+                .parameter("scenario", scenario);
+        List<String> names = new ArrayList<>();
+        for (BenchmarkReport report : results.values()) {
+            for (String name : report.metrics().keySet()) {
+                if (!names.contains(name) && !name.contains("jvm.")) {
+                    names.add(name);
+                }
+            }
+        }
+        
+        StringBuilder sb = new StringBuilder(String.format("%n=== %s by carrier parallelism ===%n%-36s", scenario, "metric"));
+        results.keySet().forEach(parallelism -> sb.append(String.format(" %12s", "p=" + parallelism)));
+        sb.append('\n');
+        for (String name : names) {
+            sb.append(String.format("%-36s", name));
+            for (BenchmarkReport report : results.values()) {
+                BenchmarkReport.Metric metric = report.metrics().get(name);
+                sb.append(metric == null ? String.format(" %12s", "-") : String.format(" %12.2f", metric.mean()));
+            }
+            sb.append('\n');
+        }
+        logger.info(sb.toString());
+        
+        results.forEach((parallelism, report) -> report.metrics().forEach(
+                (name, metric) -> sweep.metric("p" + parallelism + "." + name, metric)));
+        sweep.write();
+    }
+    
+    /**
+     * Command-line entry: scenarios &lt;name&gt;[,&lt;name&gt;...] [key=value...].
+     *
+     * @return the number of failed runs, for the exit status
+     */
+    public static int run(Class<?> mainClass, String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("Usage: scenarios <name>[,<name>...] [parallelism=1,2,4] "
+                    + "[maxPoolSize=N] [gc=G1] [heap=512m] [jvmOptions=...] [scenarioArgs=...] [timeout=30m]");
+        }
+        List<String> scenarios = List.of(args[0].split(","));
+        return new ScenarioRunner(mainClass, LoadOptions.parse(args, 1)).run(scenarios);
+    }
+}
\ No newline at end of file
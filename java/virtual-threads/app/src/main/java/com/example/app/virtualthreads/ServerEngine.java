@@ -0,0 +1,68 @@
+package com.example.app.virtualthreads;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+/**
+ * Abstraction over the HTTP server implementation used by {@link HttpServerExample}.
+ *
+ * Both engines expose the com.sun.net.httpserver handler API, so the same
+ * {@link HttpHandler}s (and {@link com.sun.net.httpserver.Filter}s registered on the
+ * returned contexts) run unchanged on either of them.
+ */
+public interface ServerEngine {
+    
+    /**
+     * Registers a handler for all request paths starting with the given prefix.
+     */
+    HttpContext createContext(String path, HttpHandler handler);
+    
+    /**
+     * Binds to the given address and starts serving, running handlers on the executor.
+     */
+    void start(InetSocketAddress address, Executor executor) throws IOException;
+    
+    /**
+     * Stops the engine, waiting up to the given number of seconds for exchanges to finish.
+     */
+    void stop(int delaySeconds);
+    
+    /**
+     * Short name of the engine used in logs and reports.
+     */
+    String name();
+    
+    /**
+     * Connection-level metrics, if the engine tracks them.
+     */
+    default Optional<ConnectionMetrics> connectionMetrics() {
+        return Optional.empty();
+    }
+    
+    /**
+     * Creates an engine by name: "jdk" for com.sun.net.httpserver, "nio" for the selector engine.
+     */
+    static ServerEngine create(String name) {
+        switch (name.toLowerCase()) {
+            case "jdk":
+                return new JdkServerEngine();
+            case "nio":
+                return new NioServerEngine(Integer.getInteger("server.selectors",
+                        Runtime.getRuntime().availableProcessors()));
+            default:
+                throw new IllegalArgumentException("Unknown server engine: " + name);
+        }
+    }
+    
+    /**
+     * Creates the engine selected by the "server.engine" system property (default "jdk").
+     */
+    static ServerEngine fromSystemProperties() {
+        return create(System.getProperty("server.engine", "jdk"));
+    }
+}
\ No newline at end of file
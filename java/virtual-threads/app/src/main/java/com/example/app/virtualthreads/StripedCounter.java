@@ -0,0 +1,45 @@
+package com.example.app.virtualthreads;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A metrics counter that stays cheap to update from many threads at once.
+ *
+ * An AtomicInteger shared by every request thread is a single cache line that all cores
+ * fight over: each incrementAndGet invalidates it on every other core. This counter is
+ * backed by a LongAdder, which spreads updates over a set of cells that grows with observed
+ * contention. The cells are annotated with @Contended inside the JDK, so each sits on its
+ * own cache line and concurrent updates never falsely share one.
+ *
+ * The trade-off is on the read side: there is no atomic incrementAndGet, and {@link #sum()}
+ * adds up the cells without a snapshot, so reads taken under concurrent updates are
+ * approximate. That is fine for statistics, not for sequence numbers.
+ */
+public class StripedCounter {
+    
+    private final LongAdder adder = new LongAdder();
+    
+    public void increment() {
+        adder.increment();
+    }
+    
+    public void decrement() {
+        adder.decrement();
+    }
+    
+    public void add(long delta) {
+        adder.add(delta);
+    }
+    
+    /**
+     * Returns the current total; not atomic with respect to concurrent updates.
+     */
+    public long sum() {
+        return adder.sum();
+    }
+    
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
\ No newline at end of file
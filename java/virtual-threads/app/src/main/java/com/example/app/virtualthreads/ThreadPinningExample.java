@@ -5,11 +5,16 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Demonstrates thread pinning issues with virtual threads and how to avoid them.
@@ -31,21 +36,56 @@ public class ThreadPinningExample {
     public static void runExample() {
         logger.info("=== Thread Pinning Example ===");
         
-        // Limit carrier threads to make pinning more evident
-        System.setProperty("jdk.virtualThreadScheduler.parallelism", "4");
-        logger.info("Running with 4 carrier threads to make pinning more evident");
+        // The scheduler reads its parallelism once, at startup, so it has to be a JVM flag;
+        // the scenario runner sets it, e.g. "scenarios pinning parallelism=4"
+        int carrierThreads = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                Runtime.getRuntime().availableProcessors());
+        logger.info("Running with {} carrier threads; fewer make pinning more evident "
+                + "(-Djdk.virtualThreadScheduler.parallelism=N)", carrierThreads);
         
         // Warm-up run to eliminate JIT effects
         warmupRun();
         
-        // Example 1: Demonstrating the pinning problem with synchronized
-        demonstratePinningWithSynchronized();
+        // Watch for pins from here on, so that the report names the code that caused them
+        PinningMonitor pinning = PinningMonitor.start();
+        // and for the carriers running out altogether, which the synchronized version causes
+        CarrierWatchdog watchdog = CarrierWatchdog.start();
         
-        // Example 2: Showing the solution using ReentrantLock
-        demonstrateSolutionWithReentrantLock();
+        // Alternate both versions over several rounds; each one takes close to a minute, so
+        // the short warm-up run stands in for the harness's warmup rounds
+        MeasurementHarness harness = MeasurementHarness.fromSystemProperties(0, 3)
+                .variant("synchronized", ThreadPinningExample::demonstratePinningWithSynchronized)
+                .variant("reentrantLock", ThreadPinningExample::demonstrateSolutionWithReentrantLock);
+        MeasurementHarness.Result result = harness.run();
+        pinning.flush();
+        pinning.close();
+        watchdog.close();
         
-        // Reset system property
-        System.clearProperty("jdk.virtualThreadScheduler.parallelism");
+        StringBuilder sb = new StringBuilder();
+        result.appendTo(sb);
+        result.appendRatio(sb, "synchronized", "reentrantLock");
+        pinning.appendTo(sb, 5);
+        watchdog.appendTo(sb);
+        sb.toString().lines().forEach(logger::info);
+        
+        // Tips for avoiding pinning
+        logger.info("\nBest practices to avoid thread pinning:");
+        logger.info("1. Use java.util.concurrent locks instead of synchronized");
+        logger.info("2. Use Condition instead of Object.wait/notify");
+        logger.info("3. Avoid native methods with virtual threads");
+        logger.info("4. Avoid nested synchronized blocks");
+        logger.info("5. Watch jdk.VirtualThreadPinned with JFR (PinningMonitor, /api/pinning) to find pinning");
+        
+        BenchmarkReport report = new BenchmarkReport("thread-pinning")
+                .parameter("carrierThreads", carrierThreads)
+                .parameter("tasks", NUM_TASKS)
+                .parameter("iterationsPerTask", ITERATIONS_PER_TASK)
+                .parameter("warmupIterations", harness.warmupIterations())
+                .parameter("iterations", harness.iterations());
+        result.addTo(report, "");
+        pinning.addTo(report, "");
+        watchdog.addTo(report, "");
+        report.write();
         
         logger.info("=== End of Thread Pinning Example ===");
     }
@@ -137,14 +177,6 @@ public class ThreadPinningExample {
         double lockDuration = duration.toMillis();
         logger.info("ReentrantLock version completed in {}ms", lockDuration);
         logger.info("Final count: {}", lockCounter.getCount());
-        
-        // Tips for avoiding pinning
-        logger.info("\nBest practices to avoid thread pinning:");
-        logger.info("1. Use java.util.concurrent locks instead of synchronized");
-        logger.info("2. Use Condition instead of Object.wait/notify");
-        logger.info("3. Avoid native methods with virtual threads");
-        logger.info("4. Avoid nested synchronized blocks");
-        logger.info("5. Use JFR events or -Djdk.tracePinnedThreads to detect pinning");
     }
 
     /**
@@ -155,27 +187,106 @@ public class ThreadPinningExample {
         long getCount();
     }
     
+    /**
+     * The counter strategies, by name, for the benchmarks and the contention matrix.
+     */
+    static final List<String> COUNTERS = List.of("synchronized", "reentrantLock", "stampedLock", "semaphore",
+            "atomicCas", "longAdder", "sharded");
+    
+    /**
+     * Creates the named counter with the given critical section.
+     */
+    static Counter newCounter(String name, CriticalSection section) {
+        switch (name) {
+            case "synchronized":
+                return new SynchronizedCounter(section);
+            case "reentrantLock":
+                return new ReentrantLockCounter(section);
+            case "stampedLock":
+                return new StampedLockCounter(section);
+            case "semaphore":
+                return new SemaphoreCounter(section);
+            case "atomicCas":
+                return new AtomicCasCounter(section);
+            case "longAdder":
+                return new LongAdderCounter(section);
+            case "sharded":
+                return new ShardedCounter(section, 16);
+            default:
+                throw new IllegalArgumentException("Unknown counter '" + name + "', expected one of " + COUNTERS);
+        }
+    }
+    
+    /**
+     * The work a counter does while it holds its lock: some arithmetic, then either a sleep,
+     * which parks the virtual thread, or a busy spin of the same length, which keeps the carrier.
+     */
+    static final class CriticalSection {
+        /** The section of the example: a little arithmetic and a 10ms sleep. */
+        static final CriticalSection DEMO = new CriticalSection(100, Duration.ofMillis(BLOCKING_TIME_MS), true);
+        
+        private final int mathIterations;
+        private final long nanos;
+        private final boolean blocking;
+        
+        private CriticalSection(int mathIterations, Duration length, boolean blocking) {
+            this.mathIterations = mathIterations;
+            this.nanos = length.toNanos();
+            this.blocking = blocking;
+        }
+        
+        static CriticalSection of(Duration length, boolean blocking) {
+            return new CriticalSection(0, length, blocking);
+        }
+        
+        /**
+         * Runs the section; the result only keeps the arithmetic from being optimised away.
+         */
+        double run(long count) {
+            double result = 0;
+            for (int i = 0; i < mathIterations; i++) {
+                result += Math.sin(count) * Math.cos(count);
+            }
+            if (nanos == 0) {
+                return result;
+            }
+            if (blocking) {
+                try {
+                    Thread.sleep(Duration.ofNanos(nanos));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                long end = System.nanoTime() + nanos;
+                while (System.nanoTime() - end < 0) {
+                    Thread.onSpinWait();
+                }
+            }
+            return result;
+        }
+    }
+    
     /**
      * Counter that uses synchronized for thread safety - causes pinning.
      */
     static class SynchronizedCounter implements Counter {
+        private final CriticalSection section;
         private long count = 0;
         private double dummy = 0;
         
+        SynchronizedCounter() {
+            this(CriticalSection.DEMO);
+        }
+        
+        SynchronizedCounter(CriticalSection section) {
+            this.section = section;
+        }
+        
         @Override
         public synchronized void increment() {
             count++;
-            // Do some calculations to simulate work
-            for (int i = 0; i < 100; i++) {
-                dummy += Math.sin(count) * Math.cos(count);
-            }
-            
-            // Sleep to simulate blocking I/O or long-running critical section
-            try {
-                Thread.sleep(BLOCKING_TIME_MS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+            // Simulate work, then blocking I/O or a long-running critical section
+            dummy += section.run(count);
         }
         
         @Override
@@ -189,25 +300,25 @@ public class ThreadPinningExample {
      */
     static class ReentrantLockCounter implements Counter {
         private final ReentrantLock lock = new ReentrantLock();
+        private final CriticalSection section;
         private long count = 0;
         private double dummy = 0;
         
+        ReentrantLockCounter() {
+            this(CriticalSection.DEMO);
+        }
+        
+        ReentrantLockCounter(CriticalSection section) {
+            this.section = section;
+        }
+        
         @Override
         public void increment() {
             lock.lock();
             try {
                 count++;
-                // Do the exact same calculations as SynchronizedCounter
-                for (int i = 0; i < 100; i++) {
-                    dummy += Math.sin(count) * Math.cos(count);
-                }
-                
-                // Sleep to simulate blocking I/O
-                try {
-                    Thread.sleep(BLOCKING_TIME_MS);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+                // Do the exact same work as SynchronizedCounter
+                dummy += section.run(count);
             } finally {
                 lock.unlock();
             }
@@ -223,4 +334,186 @@ public class ThreadPinningExample {
             }
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Counter that uses a StampedLock - avoids pinning, and reads without locking when no
+     * write is in progress. Not reentrant.
+     */
+    static class StampedLockCounter implements Counter {
+        private final StampedLock lock = new StampedLock();
+        private final CriticalSection section;
+        private long count = 0;
+        private double dummy = 0;
+        
+        StampedLockCounter(CriticalSection section) {
+            this.section = section;
+        }
+        
+        @Override
+        public void increment() {
+            long stamp = lock.writeLock();
+            try {
+                count++;
+                dummy += section.run(count);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        
+        @Override
+        public long getCount() {
+            long stamp = lock.tryOptimisticRead();
+            long current = count;
+            if (lock.validate(stamp)) {
+                return current;
+            }
+            stamp = lock.readLock();
+            try {
+                return count;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+    
+    /**
+     * Counter that uses a single-permit Semaphore as its lock - avoids pinning, and unlike a
+     * lock may be released by another thread than the one that acquired it.
+     */
+    static class SemaphoreCounter implements Counter {
+        private final Semaphore permit = new Semaphore(1);
+        private final CriticalSection section;
+        private long count = 0;
+        private double dummy = 0;
+        
+        SemaphoreCounter(CriticalSection section) {
+            this.section = section;
+        }
+        
+        @Override
+        public void increment() {
+            permit.acquireUninterruptibly();
+            try {
+                count++;
+                dummy += section.run(count);
+            } finally {
+                permit.release();
+            }
+        }
+        
+        @Override
+        public long getCount() {
+            permit.acquireUninterruptibly();
+            try {
+                return count;
+            } finally {
+                permit.release();
+            }
+        }
+    }
+    
+    /**
+     * Counter that computes the next value optimistically and publishes it with a
+     * compare-and-set, running the critical section again whenever another thread got there
+     * first. Nothing is held, so nothing pins, but long sections under contention mostly retry.
+     */
+    static class AtomicCasCounter implements Counter {
+        private final AtomicLong count = new AtomicLong();
+        private final CriticalSection section;
+        private double dummy = 0;
+        
+        AtomicCasCounter(CriticalSection section) {
+            this.section = section;
+        }
+        
+        @Override
+        public void increment() {
+            while (true) {
+                long current = count.get();
+                double result = section.run(current + 1);
+                if (count.compareAndSet(current, current + 1)) {
+                    dummy += result;
+                    return;
+                }
+            }
+        }
+        
+        @Override
+        public long getCount() {
+            return count.get();
+        }
+    }
+    
+    /**
+     * Counter backed by a LongAdder: the section runs outside any lock and the increments land
+     * on separate cells, so nothing waits. Only valid when the section does not depend on the
+     * current count.
+     */
+    static class LongAdderCounter implements Counter {
+        private final LongAdder count = new LongAdder();
+        private final CriticalSection section;
+        private double dummy = 0;
+        
+        LongAdderCounter(CriticalSection section) {
+            this.section = section;
+        }
+        
+        @Override
+        public void increment() {
+            dummy += section.run(Thread.currentThread().threadId());
+            count.increment();
+        }
+        
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+    }
+    
+    /**
+     * Counter split into shards, each with its own ReentrantLock, picked by thread id; threads
+     * only wait for others on the same shard. Reading locks every shard in turn, so a total
+     * taken under concurrent increments is not a snapshot.
+     */
+    static class ShardedCounter implements Counter {
+        private final ReentrantLock[] locks;
+        private final long[] counts;
+        private final CriticalSection section;
+        private double dummy = 0;
+        
+        ShardedCounter(CriticalSection section, int shards) {
+            this.section = section;
+            this.locks = new ReentrantLock[shards];
+            this.counts = new long[shards];
+            for (int i = 0; i < shards; i++) {
+                locks[i] = new ReentrantLock();
+            }
+        }
+        
+        @Override
+        public void increment() {
+            int shard = (int) (Thread.currentThread().threadId() % locks.length);
+            locks[shard].lock();
+            try {
+                counts[shard]++;
+                dummy += section.run(counts[shard]);
+            } finally {
+                locks[shard].unlock();
+            }
+        }
+        
+        @Override
+        public long getCount() {
+            long total = 0;
+            for (int i = 0; i < locks.length; i++) {
+                locks[i].lock();
+                try {
+                    total += counts[i];
+                } finally {
+                    locks[i].unlock();
+                }
+            }
+            return total;
+        }
+    }
+} 
@@ -0,0 +1,230 @@
+package com.example.app.virtualthreads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The traffic a load generator sends: a weighted mix of {@link LoadRequest}s and, for open
+ * loops, the {@link ArrivalProcess} that spaces them.
+ *
+ * Profiles are properties files, so a mix can be changed without recompiling. As in any
+ * properties file, # starts a comment only at the beginning of a line:
+ *
+ * <pre>
+ * # constant, poisson or bursty
+ * arrival=poisson
+ * # bursty: burst rate as a multiple of the average, and share of each period spent bursting
+ * burst.factor=4
+ * burst.fraction=0.1
+ * burst.period=1s
+ * endpoint.hello.path=/api/hello
+ * endpoint.hello.weight=2
+ * endpoint.order.method=POST
+ * endpoint.order.path=/api/hello
+ * # or bodyFile=, relative to the profile
+ * endpoint.order.body={"item": 42}
+ * endpoint.order.contentType=application/json
+ * # closed loop: think time after this request
+ * endpoint.order.think=500ms
+ * </pre>
+ *
+ * Each request kind is sampled by weight with an {@link AliasSampler}, which takes one
+ * random number and no allocation, so the mix costs the generator thread the same as the
+ * fixed rotation it replaces.
+ */
+public final class WorkloadProfile {
+    
+    private static final String RESOURCE_DIR = "workloads/";
+    
+    private final String name;
+    private final LoadRequest[] requests;
+    private final double[] weights;
+    private final AliasSampler sampler;
+    private final String arrival;
+    private final double burstFactor;
+    private final double burstFraction;
+    private final Duration burstPeriod;
+    
+    public WorkloadProfile(String name, List<LoadRequest> requests, double[] weights, String arrival,
+            double burstFactor, double burstFraction, Duration burstPeriod) {
+        if (requests.size() != weights.length) {
+            throw new IllegalArgumentException("Need one weight per request");
+        }
+        this.name = name;
+        this.requests = requests.toArray(new LoadRequest[0]);
+        this.weights = weights.clone();
+        this.sampler = new AliasSampler(weights);
+        this.arrival = arrival.toLowerCase(Locale.ROOT);
+        this.burstFactor = burstFactor;
+        this.burstFraction = burstFraction;
+        this.burstPeriod = burstPeriod;
+        // Fail on a bad arrival setting now rather than at the start of a run
+        arrivals(1);
+    }
+    
+    /**
+     * The built-in mix: two GETs of /api/hello for every GET of /api/slow, at a constant rate.
+     */
+    public static WorkloadProfile defaultMix() {
+        return new WorkloadProfile("default", List.of(LoadRequest.get("/api/hello"), LoadRequest.get("/api/slow")),
+                new double[] {2, 1}, "constant", 1, 1, Duration.ofSeconds(1));
+    }
+    
+    /**
+     * Every request a GET of the path, at a constant rate.
+     */
+    public static WorkloadProfile singlePath(String path) {
+        return new WorkloadProfile(path, List.of(LoadRequest.get(path)), new double[] {1}, "constant", 1, 1,
+                Duration.ofSeconds(1));
+    }
+    
+    /**
+     * Loads a profile from a properties file, or, if no such file exists, from the bundled
+     * profile of that name (e.g. "mixed" for workloads/mixed.properties on the classpath).
+     */
+    public static WorkloadProfile load(String location) {
+        Path file = Path.of(location);
+        try {
+            if (Files.isRegularFile(file)) {
+                try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    return parse(stripExtension(file.getFileName().toString()), reader, file.toAbsolutePath().getParent());
+                }
+            }
+            String resource = RESOURCE_DIR + (location.endsWith(".properties") ? location : location + ".properties");
+            InputStream in = WorkloadProfile.class.getClassLoader().getResourceAsStream(resource);
+            if (in == null) {
+                throw new IllegalArgumentException("No workload profile file or bundled profile named " + location);
+            }
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                return parse(stripExtension(Path.of(resource).getFileName().toString()), reader, null);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read workload profile " + location, e);
+        }
+    }
+    
+    /**
+     * Parses a profile; bodyFile entries are resolved against baseDir (the working
+     * directory if null).
+     */
+    static WorkloadProfile parse(String name, Reader reader, Path baseDir) throws IOException {
+        Properties properties = new Properties();
+        properties.load(reader);
+        
+        TreeSet<String> keys = new TreeSet<>();
+        for (String property : properties.stringPropertyNames()) {
+            if (property.startsWith("endpoint.")) {
+                int dot = property.indexOf('.', "endpoint.".length());
+                if (dot < 0) {
+                    throw new IllegalArgumentException("Expected endpoint.<name>.<setting> but was " + property);
+                }
+                keys.add(property.substring(0, dot));
+            }
+        }
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("Workload profile " + name + " has no endpoint.* entries");
+        }
+        
+        List<LoadRequest> requests = new ArrayList<>();
+        double[] weights = new double[keys.size()];
+        for (String key : keys) {
+            String path = properties.getProperty(key + ".path");
+            if (path == null) {
+                throw new IllegalArgumentException(key + ".path is required");
+            }
+            byte[] body = LoadRequest.utf8(properties.getProperty(key + ".body"));
+            String bodyFile = properties.getProperty(key + ".bodyFile");
+            if (bodyFile != null) {
+                Path bodyPath = baseDir == null ? Path.of(bodyFile) : baseDir.resolve(bodyFile);
+                body = Files.readAllBytes(bodyPath);
+            }
+            String think = properties.getProperty(key + ".think");
+            weights[requests.size()] = Double.parseDouble(properties.getProperty(key + ".weight", "1").trim());
+            requests.add(new LoadRequest(properties.getProperty(key + ".method", body == null ? "GET" : "POST").trim(),
+                    path.trim(), body, properties.getProperty(key + ".contentType"),
+                    think == null ? -1 : LoadOptions.parseDuration(think.trim()).toNanos()));
+        }
+        return new WorkloadProfile(properties.getProperty("name", name), requests, weights,
+                properties.getProperty("arrival", "constant").trim(),
+                Double.parseDouble(properties.getProperty("burst.factor", "4").trim()),
+                Double.parseDouble(properties.getProperty("burst.fraction", "0.1").trim()),
+                LoadOptions.parseDuration(properties.getProperty("burst.period", "1s").trim()));
+    }
+    
+    private static String stripExtension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+    
+    /**
+     * The same mix with different arrivals.
+     */
+    public WorkloadProfile withArrival(String arrival, double burstFactor, double burstFraction, Duration burstPeriod) {
+        return new WorkloadProfile(name, List.of(requests), weights, arrival, burstFactor, burstFraction, burstPeriod);
+    }
+    
+    /**
+     * Draws the next request from the mix.
+     */
+    public LoadRequest next() {
+        return requests[sampler.sample(ThreadLocalRandom.current())];
+    }
+    
+    /**
+     * A fresh arrival process for an open-loop run at the average rate.
+     */
+    public ArrivalProcess arrivals(double ratePerSecond) {
+        switch (arrival) {
+            case "constant":
+                return ArrivalProcess.constant(ratePerSecond);
+            case "poisson":
+                return ArrivalProcess.poisson(ratePerSecond);
+            case "bursty":
+                return ArrivalProcess.bursty(ratePerSecond, burstFactor, burstFraction, burstPeriod.toNanos());
+            default:
+                throw new IllegalArgumentException("arrival must be constant, poisson or bursty: " + arrival);
+        }
+    }
+    
+    public String name() {
+        return name;
+    }
+    
+    public List<LoadRequest> requests() {
+        return List.of(requests);
+    }
+    
+    /**
+     * One line describing the mix and the arrivals, e.g. for a report header.
+     */
+    public String describe() {
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        StringBuilder sb = new StringBuilder(name).append(": ");
+        for (int i = 0; i < requests.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(String.format(Locale.ROOT, "%.0f%% ", weights[i] * 100 / total))
+              .append(requests[i]);
+        }
+        sb.append("; ").append(arrival).append(" arrivals");
+        if (arrival.equals("bursty")) {
+            sb.append(String.format(Locale.ROOT, " (%.1fx for %.0f%% of every %dms)", burstFactor,
+                    burstFraction * 100, burstPeriod.toMillis()));
+        }
+        return sb.toString();
+    }
+}
\ No newline at end of file